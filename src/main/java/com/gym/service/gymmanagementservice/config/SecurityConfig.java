@@ -54,7 +54,7 @@ public class SecurityConfig {
                         .requestMatchers("/api/auth/**", "/api/auth/verify**", "/api/public/**", "/api/vnpay/ipn", "/api/vnpay/return").permitAll()
                         .requestMatchers("/api/members/qr/gym/**").permitAll()
                         .requestMatchers("/api/members/search").permitAll() // Cho phép tìm kiếm hội viên từ POS
-                        .requestMatchers("/api/check-in/mobile", "/api/check-in/mobile/subscription", "/api/check-in/events").permitAll()
+                        .requestMatchers("/api/check-in/mobile", "/api/check-in/mobile/subscription", "/api/check-in/events", "/api/check-in/occupancy").permitAll()
 
                         .requestMatchers("/api/admin/**").hasRole("ADMIN")
 
@@ -80,6 +80,9 @@ public class SecurityConfig {
                         // Các trang yêu cầu quyền cụ thể
                         .requestMatchers("/admin/**").hasRole("ADMIN")
 
+                        .requestMatchers("/actuator/health").permitAll()
+                        .requestMatchers("/actuator/**").hasRole("ADMIN")
+
                         .requestMatchers("/pt/**").hasRole("PT")
 
                         .requestMatchers("/members/**").hasAnyRole("ADMIN", "STAFF")
@@ -1,17 +1,27 @@
 package com.gym.service.gymmanagementservice.controllers;
 
+import com.gym.service.gymmanagementservice.dtos.CheckInHeatmapDTO;
+import com.gym.service.gymmanagementservice.dtos.LiveMetricsDTO;
+import com.gym.service.gymmanagementservice.models.TransactionKind;
+import com.gym.service.gymmanagementservice.services.AnalyticsCache;
 import com.gym.service.gymmanagementservice.services.AnalyticsService;
+import com.gym.service.gymmanagementservice.services.LiveMetricsStore;
+import com.gym.service.gymmanagementservice.services.LiveMetricsStreamService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.time.OffsetDateTime;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.TreeSet;
 
 @RestController
 @RequiredArgsConstructor
@@ -22,6 +32,9 @@ import java.util.Map;
 public class AnalyticsController {
 
     private final AnalyticsService analyticsService;
+    private final AnalyticsCache analyticsCache;
+    private final LiveMetricsStore liveMetricsStore;
+    private final LiveMetricsStreamService liveMetricsStreamService;
 
     @GetMapping("/check-ins")
     @Operation(summary = "Thống kê số lượt check-in trong khoảng thời gian")
@@ -29,7 +42,18 @@ public class AnalyticsController {
             @RequestParam("start") OffsetDateTime start,
             @RequestParam("end") OffsetDateTime end
     ) {
-        return ResponseEntity.ok(analyticsService.getCheckInsStats(start, end));
+        return ResponseEntity.ok(analyticsCache.get("check-ins", AnalyticsCache.Source.CHECK_INS, start, end, "",
+                () -> analyticsService.getCheckInsStats(start, end)));
+    }
+
+    @GetMapping("/check-ins/heatmap")
+    @Operation(summary = "Bản đồ nhiệt check-in thành công theo thứ × giờ (giờ phòng gym) và số lượt theo từng trạng thái")
+    public ResponseEntity<CheckInHeatmapDTO> checkInHeatmap(
+            @RequestParam("start") OffsetDateTime start,
+            @RequestParam("end") OffsetDateTime end
+    ) {
+        return ResponseEntity.ok(analyticsCache.get("check-ins-heatmap", AnalyticsCache.Source.CHECK_INS, start, end, "",
+                () -> analyticsService.getCheckInHeatmap(start, end)));
     }
 
     @GetMapping("/subscriptions")
@@ -38,26 +62,48 @@ public class AnalyticsController {
             @RequestParam("start") OffsetDateTime start,
             @RequestParam("end") OffsetDateTime end
     ) {
-        return ResponseEntity.ok(analyticsService.getSubscriptionStats(start, end));
+        return ResponseEntity.ok(analyticsCache.get("subscriptions", AnalyticsCache.Source.TRANSACTIONS, start, end, "",
+                () -> analyticsService.getSubscriptionStats(start, end)));
     }
 
     @GetMapping("/top-products")
-    @Operation(summary = "Top sản phẩm bán chạy theo số lượng")
+    @Operation(summary = "Top sản phẩm bán chạy theo số lượng (rankBy=quantity) hoặc doanh thu (rankBy=revenue)")
     public ResponseEntity<List<Map<String, Object>>> topProducts(
             @RequestParam("start") OffsetDateTime start,
             @RequestParam("end") OffsetDateTime end,
-            @RequestParam(value = "limit", defaultValue = "5") int limit
+            @RequestParam(value = "limit", defaultValue = "5") int limit,
+            @RequestParam(value = "rankBy", defaultValue = "quantity") String rankBy
     ) {
-        return ResponseEntity.ok(analyticsService.getTopProducts(start, end, limit));
+        String params = limit + "|" + rankBy.toLowerCase(Locale.ROOT);
+        return ResponseEntity.ok(analyticsCache.get("top-products", AnalyticsCache.Source.SALES, start, end, params,
+                () -> analyticsService.getTopProducts(start, end, limit, rankBy)));
     }
 
     @GetMapping("/revenue-grouped")
-    @Operation(summary = "Doanh thu nhóm theo tuần/tháng")
+    @Operation(summary = "Doanh thu (giao dịch COMPLETED) nhóm theo giờ/ngày/tuần/tháng theo giờ phòng gym")
     public ResponseEntity<List<Map<String, Object>>> revenueGrouped(
             @RequestParam("start") OffsetDateTime start,
             @RequestParam("end") OffsetDateTime end,
-            @RequestParam(value = "granularity", defaultValue = "week") String granularity
+            @RequestParam(value = "granularity", defaultValue = "week") String granularity,
+            @RequestParam(value = "kind", required = false) List<TransactionKind> kinds
     ) {
-        return ResponseEntity.ok(analyticsService.getRevenueGrouped(start, end, granularity));
+        // Khoá cache không phụ thuộc thứ tự/trùng lặp của tham số kind
+        String params = granularity.toLowerCase(Locale.ROOT) + "|" + (kinds == null ? "" : new TreeSet<>(kinds));
+        return ResponseEntity.ok(analyticsCache.get("revenue-grouped", AnalyticsCache.Source.TRANSACTIONS, start, end, params,
+                () -> analyticsService.getRevenueGrouped(start, end, granularity, kinds)));
+    }
+
+    @GetMapping("/live")
+    @Operation(summary = "Số liệu thời gian thực theo phút (check-in, doanh thu, hóa đơn) trong tối đa 24h gần nhất, đọc từ bộ nhớ")
+    public ResponseEntity<LiveMetricsDTO> live(
+            @RequestParam(value = "minutes", defaultValue = "1440") int minutes
+    ) {
+        return ResponseEntity.ok(liveMetricsStore.snapshot(minutes));
+    }
+
+    @GetMapping(value = "/live/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "Luồng SSE số liệu thời gian thực: sự kiện snapshot (24h) khi kết nối, sau đó update định kỳ")
+    public SseEmitter liveStream() {
+        return liveMetricsStreamService.subscribe();
     }
 }
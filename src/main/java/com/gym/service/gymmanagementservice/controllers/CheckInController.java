@@ -2,8 +2,15 @@ package com.gym.service.gymmanagementservice.controllers;
 
 import com.gym.service.gymmanagementservice.dtos.CheckInRequestDTO;
 import com.gym.service.gymmanagementservice.dtos.CheckInResponseDTO;
+import com.gym.service.gymmanagementservice.dtos.OccupancyDTO;
+import com.gym.service.gymmanagementservice.dtos.OfflineCheckInBatchRequestDTO;
+import com.gym.service.gymmanagementservice.dtos.OfflineCheckInBatchResponseDTO;
+import com.gym.service.gymmanagementservice.services.CheckInDebouncer;
+import com.gym.service.gymmanagementservice.services.CheckInEventDispatcher;
 import com.gym.service.gymmanagementservice.services.CheckInService;
 import com.gym.service.gymmanagementservice.services.DailyQrService;
+import com.gym.service.gymmanagementservice.services.OccupancyTracker;
+import com.gym.service.gymmanagementservice.services.OfflineCheckInService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -14,7 +21,6 @@ import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.io.IOException;
 import java.util.*;
 
 @RestController
@@ -26,29 +32,43 @@ public class CheckInController {
 
     private final CheckInService checkInService;
     private final DailyQrService dailyQrService;
-
-    private final List<SseEmitter> emitters = Collections.synchronizedList(new ArrayList<>());
+    private final CheckInEventDispatcher eventDispatcher;
+    private final OfflineCheckInService offlineCheckInService;
+    private final OccupancyTracker occupancyTracker;
+    private final CheckInDebouncer debouncer;
 
     @PostMapping
     @PreAuthorize("hasAnyRole('ADMIN', 'STAFF')")
     @Operation(summary = "Thực hiện check-in bằng mã vạch")
     public ResponseEntity<CheckInResponseDTO> checkIn(@Valid @RequestBody CheckInRequestDTO request) {
-        CheckInResponseDTO response = checkInService.performCheckIn(request);
+        CheckInResponseDTO response = debouncer.debounce(debounceKey(request.getBarcode()),
+                () -> checkInService.performCheckIn(request));
         return ResponseEntity.ok(response);
     }
 
+    // Token QR trong ngày được quy về ID hội viên (chỉ kiểm tra HMAC, không truy vấn DB)
+    private String debounceKey(String barcode) {
+        Long memberId = dailyQrService.verifyAndExtractMemberIdForToday(barcode);
+        return memberId != null ? "M:" + memberId : "B:" + barcode;
+    }
+
+    @PostMapping("/batch")
+    @PreAuthorize("hasAnyRole('ADMIN', 'STAFF')")
+    @Operation(summary = "Cổng gửi bù các lần quét đã lưu tạm khi mất mạng (xử lý theo thời điểm quét)")
+    public ResponseEntity<OfflineCheckInBatchResponseDTO> batchCheckIn(@Valid @RequestBody OfflineCheckInBatchRequestDTO request) {
+        return ResponseEntity.ok(offlineCheckInService.ingest(request));
+    }
+
     @GetMapping(value = "/events")
-    @Operation(summary = "Luồng SSE nhận kết quả check-in từ điện thoại")
-    public SseEmitter subscribeEvents() {
-        SseEmitter emitter = new SseEmitter(30 * 60 * 1000L);
-        emitters.add(emitter);
-        emitter.onCompletion(() -> emitters.remove(emitter));
-        emitter.onTimeout(() -> emitters.remove(emitter));
-        emitter.onError(e -> emitters.remove(emitter));
-        try {
-            emitter.send(SseEmitter.event().name("connected").data("ok"));
-        } catch (IOException ignored) {}
-        return emitter;
+    @Operation(summary = "Luồng SSE nhận kết quả check-in từ điện thoại (hỗ trợ Last-Event-ID để nhận bù khi kết nối lại)")
+    public SseEmitter subscribeEvents(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        return eventDispatcher.subscribe(lastEventId != null && !lastEventId.isBlank() ? lastEventId.trim() : null);
+    }
+
+    @GetMapping("/occupancy")
+    @Operation(summary = "Số người đang có mặt trong phòng tập (đọc từ bộ nhớ, không truy vấn DB)")
+    public ResponseEntity<OccupancyDTO> getOccupancy() {
+        return ResponseEntity.ok(occupancyTracker.snapshot());
     }
 
     @PostMapping("/mobile")
@@ -70,25 +90,17 @@ public class CheckInController {
         }
         CheckInRequestDTO req = new CheckInRequestDTO();
         req.setBarcode(phone);
-        CheckInResponseDTO response = checkInService.performCheckIn(req);
-        broadcast(response);
+        // Lần gửi trùng trong cửa sổ debounce nhận lại kết quả cũ và không phát lại sự kiện cho kiosk
+        CheckInResponseDTO response = debouncer.debounce("P:" + phone.trim(), () -> {
+            CheckInResponseDTO result = checkInService.performCheckIn(req);
+            broadcast(result);
+            return result;
+        });
         return ResponseEntity.ok(response);
     }
 
     private void broadcast(CheckInResponseDTO response) {
-        List<SseEmitter> failed = new ArrayList<>();
-        synchronized (emitters) {
-            for (SseEmitter emitter : emitters) {
-                try {
-                    emitter.send(SseEmitter.event()
-                            .name("check-in")
-                            .data(response));
-                } catch (IOException e) {
-                    failed.add(emitter);
-                }
-            }
-            emitters.removeAll(failed);
-        }
+        eventDispatcher.publish("check-in", response);
     }
 
     @PostMapping("/mobile/subscription")
@@ -2,7 +2,7 @@ package com.gym.service.gymmanagementservice.controllers;
 
 import com.gym.service.gymmanagementservice.dtos.MemberResponseDTO;
 import com.gym.service.gymmanagementservice.dtos.SubscriptionResponseDTO;
-import com.gym.service.gymmanagementservice.dtos.TransactionReportDTO;
+import com.gym.service.gymmanagementservice.dtos.TransactionReportPageDTO;
 import com.gym.service.gymmanagementservice.dtos.CheckInLogResponseDTO;
 import com.gym.service.gymmanagementservice.models.Member;
 import com.gym.service.gymmanagementservice.models.User;
@@ -23,6 +23,7 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import jakarta.validation.Valid;
 import com.gym.service.gymmanagementservice.services.MemberService;
@@ -93,8 +94,10 @@ public class MemberProfileController {
      * Lấy lịch sử giao dịch (thanh toán) của hội viên đang đăng nhập
      */
     @GetMapping("/transactions")
-    @Operation(summary = "Lấy lịch sử giao dịch của tôi (Hội viên)")
-    public ResponseEntity<List<TransactionReportDTO>> getMyTransactions() {
+    @Operation(summary = "Lấy lịch sử giao dịch của tôi (Hội viên), mới nhất trước, phân trang theo con trỏ")
+    public ResponseEntity<TransactionReportPageDTO> getMyTransactions(
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", defaultValue = "50") int limit) {
         User currentUser = authenticationService.getCurrentAuthenticatedUser();
         Member memberProfile = currentUser.getMemberProfile();
 
@@ -102,8 +105,11 @@ public class MemberProfileController {
             return ResponseEntity.status(404).body(null);
         }
 
-        List<TransactionReportDTO> transactions = reportService.getMemberTimeline(memberProfile.getId());
-        return ResponseEntity.ok(transactions);
+        try {
+            return ResponseEntity.ok(reportService.getMemberTimeline(memberProfile.getId(), cursor, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
     }
 
     /**
@@ -2,26 +2,25 @@ package com.gym.service.gymmanagementservice.controllers;
 
 import com.gym.service.gymmanagementservice.services.DailyQrService;
 import com.gym.service.gymmanagementservice.services.MemberService;
-import com.google.zxing.BarcodeFormat;
+import com.gym.service.gymmanagementservice.services.QrImageService;
 import com.google.zxing.WriterException;
-import com.google.zxing.qrcode.QRCodeWriter;
-import com.google.zxing.common.BitMatrix;
-import com.google.zxing.client.j2se.MatrixToImageWriter;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.List;
 import java.util.Map;
-import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
 
 @RestController
 @RequiredArgsConstructor
@@ -32,6 +31,7 @@ public class QrController {
 
     private final DailyQrService dailyQrService;
     private final MemberService memberService;
+    private final QrImageService qrImageService;
 
     @GetMapping("/{memberId}/qr/token/today")
     @Operation(summary = "Lấy token QR hợp lệ trong ngày cho hội viên")
@@ -43,19 +43,31 @@ public class QrController {
         return ResponseEntity.ok(Map.of("token", token));
     }
 
+    @PostMapping("/qr/token/today/bulk")
+    @Operation(summary = "Phát hành token QR trong ngày cho nhiều hội viên một lần (tối đa 500 hội viên)")
+    @PreAuthorize("hasAnyRole('ADMIN', 'STAFF')")
+    public ResponseEntity<Map<Long, String>> getTodayQrTokens(
+            @RequestBody @NotEmpty(message = "Danh sách hội viên không được để trống")
+            @Size(max = 500, message = "Tối đa 500 hội viên mỗi lần") List<@NotNull Long> memberIds) {
+        return ResponseEntity.ok(dailyQrService.generateTodayTokens(memberIds));
+    }
+
     @GetMapping(value = "/{memberId}/qr/image/today", produces = MediaType.IMAGE_PNG_VALUE)
-    @Operation(summary = "Trả về ảnh PNG QR cho token hằng ngày")
+    @Operation(summary = "Trả về ảnh PNG QR cho token hằng ngày (cache tới nửa đêm, hỗ trợ ETag/304)")
     @PreAuthorize("hasAnyRole('ADMIN', 'STAFF')")
-    public @ResponseBody byte[] getTodayQrImage(@PathVariable Long memberId) throws WriterException, IOException {
-        // Đảm bảo member tồn tại
-        memberService.getMemberById(memberId);
+    public ResponseEntity<byte[]> getTodayQrImage(@PathVariable Long memberId) throws WriterException, IOException {
         String token = dailyQrService.generateTodayToken(memberId);
-
-        QRCodeWriter writer = new QRCodeWriter();
-        BitMatrix matrix = writer.encode(token, BarcodeFormat.QR_CODE, 280, 280);
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        MatrixToImageWriter.writeToStream(matrix, "PNG", baos);
-        return baos.toByteArray();
+        QrImageService.RenderedQr qr = qrImageService.getCached(token, QrImageService.MEMBER_QR_SIZE).orElse(null);
+        if (qr == null) {
+            // Đảm bảo member tồn tại (chỉ cần kiểm tra khi render lần đầu trong ngày)
+            memberService.getMemberById(memberId);
+            qr = qrImageService.render(token, QrImageService.MEMBER_QR_SIZE);
+        }
+        // Spring tự trả 304 nếu If-None-Match khớp ETag
+        return ResponseEntity.ok()
+                .eTag(qr.getEtag())
+                .cacheControl(CacheControl.maxAge(qrImageService.timeUntilMidnight()).cachePrivate())
+                .body(qr.getPng());
     }
 
     @GetMapping("/qr/gym/token/today")
@@ -67,17 +79,14 @@ public class QrController {
     }
 
     @GetMapping(value = "/qr/gym/image/today", produces = MediaType.IMAGE_PNG_VALUE)
-    @Operation(summary = "Trả về ảnh PNG QR cho token chung hằng ngày của phòng gym")
+    @Operation(summary = "Trả về ảnh PNG QR cho token chung hằng ngày của phòng gym (cache tới nửa đêm, hỗ trợ ETag/304)")
     @PreAuthorize("permitAll()")
-    public @ResponseBody byte[] getGymTodayQrImage() throws WriterException, IOException {
-        String token = dailyQrService.generateGymTodayToken();
+    public ResponseEntity<byte[]> getGymTodayQrImage() throws WriterException, IOException {
         String baseUrl = ServletUriComponentsBuilder.fromCurrentContextPath().build().toUriString();
-        String scanUrl = baseUrl + "/scan?token=" + URLEncoder.encode(token, StandardCharsets.UTF_8);
-
-        QRCodeWriter writer = new QRCodeWriter();
-        BitMatrix matrix = writer.encode(scanUrl, BarcodeFormat.QR_CODE, 512, 512);
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        MatrixToImageWriter.writeToStream(matrix, "PNG", baos);
-        return baos.toByteArray();
+        QrImageService.RenderedQr qr = qrImageService.renderGymQr(baseUrl);
+        return ResponseEntity.ok()
+                .eTag(qr.getEtag())
+                .cacheControl(CacheControl.maxAge(qrImageService.timeUntilMidnight()).cachePublic())
+                .body(qr.getPng());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,154 @@
+package com.gym.service.gymmanagementservice.controllers;
+
+import com.gym.service.gymmanagementservice.dtos.TransactionReportFilterDTO;
+import com.gym.service.gymmanagementservice.dtos.TransactionReportPageDTO;
+import com.gym.service.gymmanagementservice.models.CheckInStatus;
+import com.gym.service.gymmanagementservice.models.PaymentMethod;
+import com.gym.service.gymmanagementservice.models.SaleStatus;
+import com.gym.service.gymmanagementservice.models.TransactionKind;
+import com.gym.service.gymmanagementservice.models.TransactionStatus;
+import com.gym.service.gymmanagementservice.services.CsvExportService;
+import com.gym.service.gymmanagementservice.services.ReceiptBulkExportService;
+import com.gym.service.gymmanagementservice.services.ReportService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.OffsetDateTime;
+import java.util.EnumSet;
+import java.util.List;
+
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/api/reports")
+@Tag(name = "Report API", description = "API báo cáo và xuất dữ liệu")
+@SecurityRequirement(name = "bearerAuth")
+@PreAuthorize("hasRole('ADMIN')")
+public class ReportController {
+
+    private final ReportService reportService;
+    private final CsvExportService csvExportService;
+    private final ReceiptBulkExportService receiptBulkExportService;
+
+    @GetMapping("/transactions")
+    @Operation(summary = "Báo cáo giao dịch có lọc và phân trang theo con trỏ (mới nhất trước); trang đầu kèm tổng hợp của toàn bộ tập đã lọc")
+    public ResponseEntity<TransactionReportPageDTO> transactions(
+            @RequestParam(value = "start", required = false) OffsetDateTime start,
+            @RequestParam(value = "end", required = false) OffsetDateTime end,
+            @RequestParam(value = "kinds", required = false) List<TransactionKind> kinds,
+            @RequestParam(value = "status", required = false) TransactionStatus status,
+            @RequestParam(value = "method", required = false) PaymentMethod method,
+            @RequestParam(value = "staffId", required = false) Long staffId,
+            @RequestParam(value = "link", required = false) TransactionReportFilterDTO.Link link,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", defaultValue = "50") int limit
+    ) {
+        TransactionReportFilterDTO filter = TransactionReportFilterDTO.builder()
+                .start(start)
+                .end(end)
+                .kinds(kinds == null || kinds.isEmpty() ? null : EnumSet.copyOf(kinds))
+                .status(status)
+                .paymentMethod(method)
+                .staffId(staffId)
+                .link(link)
+                .build();
+        try {
+            return ResponseEntity.ok(reportService.getTransactionReport(filter, cursor, limit, cursor == null || cursor.isBlank()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @GetMapping("/transactions/export")
+    @Operation(summary = "Xuất CSV toàn bộ giao dịch theo bộ lọc (dạng luồng, gzip=true để nén .csv.gz)")
+    public ResponseEntity<StreamingResponseBody> exportTransactions(
+            @RequestParam(value = "start", required = false) OffsetDateTime start,
+            @RequestParam(value = "end", required = false) OffsetDateTime end,
+            @RequestParam(value = "kinds", required = false) List<TransactionKind> kinds,
+            @RequestParam(value = "status", required = false) TransactionStatus status,
+            @RequestParam(value = "method", required = false) PaymentMethod method,
+            @RequestParam(value = "staffId", required = false) Long staffId,
+            @RequestParam(value = "link", required = false) TransactionReportFilterDTO.Link link,
+            @RequestParam(value = "gzip", defaultValue = "false") boolean gzip
+    ) {
+        TransactionReportFilterDTO filter = TransactionReportFilterDTO.builder()
+                .start(start)
+                .end(end)
+                .kinds(kinds == null || kinds.isEmpty() ? null : EnumSet.copyOf(kinds))
+                .status(status)
+                .paymentMethod(method)
+                .staffId(staffId)
+                .link(link)
+                .build();
+        return csvResponse("transactions", gzip, out -> csvExportService.writeTransactions(filter, out, gzip));
+    }
+
+    @GetMapping("/sale-lines/export")
+    @Operation(summary = "Xuất CSV từng dòng sản phẩm của hoá đơn bán lẻ (dạng luồng, gzip=true để nén .csv.gz)")
+    public ResponseEntity<StreamingResponseBody> exportSaleLines(
+            @RequestParam(value = "start", required = false) OffsetDateTime start,
+            @RequestParam(value = "end", required = false) OffsetDateTime end,
+            @RequestParam(value = "status", required = false) SaleStatus status,
+            @RequestParam(value = "gzip", defaultValue = "false") boolean gzip
+    ) {
+        return csvResponse("sale-lines", gzip, out -> csvExportService.writeSaleLines(start, end, status, out, gzip));
+    }
+
+    @GetMapping("/check-ins/export")
+    @Operation(summary = "Xuất CSV lịch sử check-in/check-out (dạng luồng, gzip=true để nén .csv.gz)")
+    public ResponseEntity<StreamingResponseBody> exportCheckIns(
+            @RequestParam(value = "start", required = false) OffsetDateTime start,
+            @RequestParam(value = "end", required = false) OffsetDateTime end,
+            @RequestParam(value = "memberId", required = false) Long memberId,
+            @RequestParam(value = "packageId", required = false) Long packageId,
+            @RequestParam(value = "status", required = false) CheckInStatus status,
+            @RequestParam(value = "gzip", defaultValue = "false") boolean gzip
+    ) {
+        return csvResponse("check-ins", gzip, out -> csvExportService.writeCheckIns(start, end, memberId, packageId, status, out, gzip));
+    }
+
+    @GetMapping("/receipts/export")
+    @Operation(summary = "Xuất hàng loạt biên nhận giao dịch theo bộ lọc: ZIP gồm từng PDF hoặc 1 PDF nhiều trang (dạng luồng, PDF giới hạn số biên nhận)")
+    public ResponseEntity<StreamingResponseBody> exportReceipts(
+            @RequestParam(value = "start", required = false) OffsetDateTime start,
+            @RequestParam(value = "end", required = false) OffsetDateTime end,
+            @RequestParam(value = "kinds", required = false) List<TransactionKind> kinds,
+            @RequestParam(value = "status", required = false) TransactionStatus status,
+            @RequestParam(value = "method", required = false) PaymentMethod method,
+            @RequestParam(value = "staffId", required = false) Long staffId,
+            @RequestParam(value = "link", required = false) TransactionReportFilterDTO.Link link,
+            @RequestParam(value = "format", defaultValue = "ZIP") ReceiptBulkExportService.Format format
+    ) {
+        TransactionReportFilterDTO filter = TransactionReportFilterDTO.builder()
+                .start(start)
+                .end(end)
+                .kinds(kinds == null || kinds.isEmpty() ? null : EnumSet.copyOf(kinds))
+                .status(status)
+                .paymentMethod(method)
+                .staffId(staffId)
+                .link(link)
+                .build();
+        if (format == ReceiptBulkExportService.Format.PDF && !receiptBulkExportService.fitsInOnePdf(filter)) {
+            return ResponseEntity.badRequest().build();
+        }
+        boolean zip = format == ReceiptBulkExportService.Format.ZIP;
+        return ResponseEntity.ok()
+                .contentType(zip ? MediaType.parseMediaType("application/zip") : MediaType.APPLICATION_PDF)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=receipts." + (zip ? "zip" : "pdf"))
+                .body(out -> receiptBulkExportService.export(filter, format, out));
+    }
+
+    private static ResponseEntity<StreamingResponseBody> csvResponse(String name, boolean gzip, StreamingResponseBody body) {
+        return ResponseEntity.ok()
+                .contentType(CsvExportService.contentType(gzip))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + CsvExportService.fileName(name, gzip))
+                .body(body);
+    }
+}
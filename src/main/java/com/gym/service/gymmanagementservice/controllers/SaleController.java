@@ -41,11 +41,19 @@ public class SaleController {
 
     @GetMapping("/{saleId}/receipt")
     @Operation(summary = "Tải PDF biên nhận bán hàng")
-    public ResponseEntity<byte[]> downloadSaleReceipt(@PathVariable Long saleId) throws java.io.IOException {
-        byte[] pdf = receiptService.generateSaleReceipt(saleId);
+    public void downloadSaleReceipt(@PathVariable Long saleId,
+                                    jakarta.servlet.http.HttpServletRequest request,
+                                    jakarta.servlet.http.HttpServletResponse response) throws java.io.IOException {
+        receiptService.getSaleReceipt(saleId).writeTo(request, response, "receipt-" + saleId + ".pdf");
+    }
+
+    @GetMapping("/{saleId}/receipt/escpos")
+    @Operation(summary = "Tải biên nhận bán hàng dạng lệnh ESC/POS cho máy in nhiệt")
+    public ResponseEntity<byte[]> downloadSaleReceiptEscPos(@PathVariable Long saleId) {
+        byte[] commands = receiptService.generateSaleReceiptEscPos(saleId);
         return ResponseEntity.ok()
-                .header("Content-Type", "application/pdf")
-                .header("Content-Disposition", "attachment; filename=receipt-" + saleId + ".pdf")
-                .body(pdf);
+                .header("Content-Type", "application/octet-stream")
+                .header("Content-Disposition", "attachment; filename=receipt-" + saleId + ".bin")
+                .body(commands);
     }
 }
@@ -43,17 +43,20 @@ public class SubscriptionController {
     }
 
     @GetMapping("/search")
-    @Operation(summary = "Tìm kiếm/lọc danh sách đăng ký")
-    public ResponseEntity<List<SubscriptionResponseDTO>> searchSubscriptions(
+    @Operation(summary = "Tìm kiếm/lọc danh sách đăng ký (phân trang: page, size ≤ 200, sort = startDate|endDate|id,asc|desc)")
+    public ResponseEntity<org.springframework.data.web.PagedModel<SubscriptionResponseDTO>> searchSubscriptions(
             @RequestParam(value = "memberId", required = false) Long memberId,
             @RequestParam(value = "status", required = false) String status,
             @RequestParam(value = "packageType", required = false) String packageType,
             @RequestParam(value = "startFrom", required = false) java.time.OffsetDateTime startFrom,
             @RequestParam(value = "endTo", required = false) java.time.OffsetDateTime endTo,
-            @RequestParam(value = "assignedPtId", required = false) Long assignedPtId
+            @RequestParam(value = "assignedPtId", required = false) Long assignedPtId,
+            @org.springframework.data.web.PageableDefault(size = 50, sort = "startDate", direction = org.springframework.data.domain.Sort.Direction.DESC)
+            org.springframework.data.domain.Pageable pageable
     ) {
-        List<SubscriptionResponseDTO> result = subscriptionService.searchSubscriptions(memberId, status, packageType, startFrom, endTo, assignedPtId);
-        return ResponseEntity.ok(result);
+        org.springframework.data.domain.Page<SubscriptionResponseDTO> result =
+                subscriptionService.searchSubscriptions(memberId, status, packageType, startFrom, endTo, assignedPtId, pageable);
+        return ResponseEntity.ok(new org.springframework.data.web.PagedModel<>(result));
     }
 
     @PostMapping("/renew")
@@ -82,12 +85,20 @@ public class SubscriptionController {
 
     @GetMapping("/transaction/{transactionId}/receipt")
     @Operation(summary = "Tải PDF biên nhận giao dịch gói tập")
-    public ResponseEntity<byte[]> downloadSubscriptionTransactionReceipt(@PathVariable Long transactionId) throws java.io.IOException {
-        byte[] pdf = receiptService.generateTransactionReceipt(transactionId);
+    public void downloadSubscriptionTransactionReceipt(@PathVariable Long transactionId,
+                                                       jakarta.servlet.http.HttpServletRequest request,
+                                                       jakarta.servlet.http.HttpServletResponse response) throws java.io.IOException {
+        receiptService.getTransactionReceipt(transactionId).writeTo(request, response, "transaction-" + transactionId + ".pdf");
+    }
+
+    @GetMapping("/transaction/{transactionId}/receipt/escpos")
+    @Operation(summary = "Tải biên nhận giao dịch gói tập dạng lệnh ESC/POS cho máy in nhiệt")
+    public ResponseEntity<byte[]> downloadSubscriptionTransactionReceiptEscPos(@PathVariable Long transactionId) {
+        byte[] commands = receiptService.generateTransactionReceiptEscPos(transactionId);
         return ResponseEntity.ok()
-                .header("Content-Type", "application/pdf")
-                .header("Content-Disposition", "attachment; filename=transaction-" + transactionId + ".pdf")
-                .body(pdf);
+                .header("Content-Type", "application/octet-stream")
+                .header("Content-Disposition", "attachment; filename=transaction-" + transactionId + ".bin")
+                .body(commands);
     }
 
     @PatchMapping("/{subscriptionId}/freeze")
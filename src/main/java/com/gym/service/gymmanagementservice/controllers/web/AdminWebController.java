@@ -37,7 +37,9 @@ public class AdminWebController {
     private final AuthenticationService authenticationService; // <-- THÊM DỊCH VỤ CÒN THIẾU
     private final CloudinaryService cloudinaryService;
     private final ReportService reportService;
+    private final CsvExportService csvExportService;
     private final ReceiptService receiptService;
+    private final ReceiptBulkExportService receiptBulkExportService;
     private final StaffAttendanceService staffAttendanceService;
     private final PromotionService promotionService;
     private final com.gym.service.gymmanagementservice.repositories.PtSessionLogRepository ptSessionLogRepository;
@@ -674,45 +676,27 @@ public class AdminWebController {
             @RequestParam(value = "end", required = false) String end,
             @RequestParam(value = "type", required = false) String type,
             @RequestParam(value = "method", required = false) com.gym.service.gymmanagementservice.models.PaymentMethod method,
-            @RequestParam(value = "status", required = false) com.gym.service.gymmanagementservice.models.TransactionStatus status
+            @RequestParam(value = "status", required = false) com.gym.service.gymmanagementservice.models.TransactionStatus status,
+            @RequestParam(value = "cursor", required = false) String cursor
     ) {
-        java.util.List<com.gym.service.gymmanagementservice.dtos.TransactionReportDTO> all = reportService.getFullTransactionReport();
-
-        java.time.OffsetDateTime startDt = null;
-        java.time.OffsetDateTime endDt = null;
-        if (start != null && !start.isBlank()) {
-            try { startDt = java.time.LocalDate.parse(start).atStartOfDay(java.time.ZoneId.of("Asia/Ho_Chi_Minh")).toOffsetDateTime(); } catch (Exception ignored) {}
-        }
-        if (end != null && !end.isBlank()) {
-            try { endDt = java.time.LocalDate.parse(end).plusDays(1).atStartOfDay(java.time.ZoneId.of("Asia/Ho_Chi_Minh")).toOffsetDateTime(); } catch (Exception ignored) {}
+        com.gym.service.gymmanagementservice.dtos.TransactionReportFilterDTO filter = salesReportFilter(start, end, type, method, status);
+        com.gym.service.gymmanagementservice.dtos.TransactionReportPageDTO page;
+        try {
+            page = reportService.getTransactionReport(filter, cursor, 100, true);
+        } catch (IllegalArgumentException e) {
+            // Con trỏ hỏng (sửa tay URL): quay về trang đầu
+            cursor = null;
+            page = reportService.getTransactionReport(filter, null, 100, true);
         }
-
-        final java.time.OffsetDateTime startDtLocal = startDt;
-        final java.time.OffsetDateTime endDtLocal = endDt;
-
-        java.util.List<com.gym.service.gymmanagementservice.dtos.TransactionReportDTO> reportData = all.stream()
-                .filter(tx -> {
-                    if (type == null || type.isBlank() || "ALL".equalsIgnoreCase(type)) return true;
-                    if ("POS".equalsIgnoreCase(type)) return "Bán lẻ".equals(tx.getTransactionType());
-                    if ("SUBSCRIPTION".equalsIgnoreCase(type)) return "Gói tập".equals(tx.getTransactionType());
-                    return true;
-                })
-                .filter(tx -> method == null || tx.getPaymentMethod() == method)
-                .filter(tx -> status == null || tx.getStatus() == status)
-                .filter(tx -> {
-                    if (startDtLocal != null && tx.getTransactionDate().isBefore(startDtLocal)) return false;
-                    if (endDtLocal != null && !tx.getTransactionDate().isBefore(endDtLocal)) return false;
-                    return true;
-                })
-                .collect(java.util.stream.Collectors.toList());
-
-        java.math.BigDecimal totalRevenue = reportData.stream()
-                .filter(tx -> tx.getStatus() == com.gym.service.gymmanagementservice.models.TransactionStatus.COMPLETED)
-                .map(com.gym.service.gymmanagementservice.dtos.TransactionReportDTO::getAmount)
-                .reduce(java.math.BigDecimal.ZERO, java.math.BigDecimal::add);
+        java.util.List<com.gym.service.gymmanagementservice.dtos.TransactionReportDTO> reportData = page.getItems();
+        java.math.BigDecimal totalRevenue = page.getTotals().getCompletedAmount();
 
         model.addAttribute("reportData", reportData);
         model.addAttribute("totalRevenue", totalRevenue);
+        model.addAttribute("totalCount", page.getTotals().getCount());
+        model.addAttribute("revenueByDay", page.getTotals().getCompletedAmountByDay());
+        model.addAttribute("cursor", cursor);
+        model.addAttribute("nextCursor", page.getNextCursor());
         model.addAttribute("start", start);
         model.addAttribute("end", end);
         model.addAttribute("type", type);
@@ -724,38 +708,121 @@ public class AdminWebController {
         return "fragments/layout";
     }
 
+    @GetMapping("/reports/sales/export")
+    public org.springframework.http.ResponseEntity<org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody> exportSalesReport(
+            @RequestParam(value = "start", required = false) String start,
+            @RequestParam(value = "end", required = false) String end,
+            @RequestParam(value = "type", required = false) String type,
+            @RequestParam(value = "method", required = false) com.gym.service.gymmanagementservice.models.PaymentMethod method,
+            @RequestParam(value = "status", required = false) com.gym.service.gymmanagementservice.models.TransactionStatus status,
+            @RequestParam(value = "gzip", defaultValue = "false") boolean gzip
+    ) {
+        com.gym.service.gymmanagementservice.dtos.TransactionReportFilterDTO filter = salesReportFilter(start, end, type, method, status);
+        return org.springframework.http.ResponseEntity.ok()
+                .contentType(CsvExportService.contentType(gzip))
+                .header("Content-Disposition", "attachment; filename=" + CsvExportService.fileName("transactions", gzip))
+                .body(out -> csvExportService.writeTransactions(filter, out, gzip));
+    }
+
+    @GetMapping("/reports/sales/receipts")
+    public org.springframework.http.ResponseEntity<org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody> exportSalesReceipts(
+            @RequestParam(value = "start", required = false) String start,
+            @RequestParam(value = "end", required = false) String end,
+            @RequestParam(value = "type", required = false) String type,
+            @RequestParam(value = "method", required = false) com.gym.service.gymmanagementservice.models.PaymentMethod method,
+            @RequestParam(value = "status", required = false) com.gym.service.gymmanagementservice.models.TransactionStatus status,
+            @RequestParam(value = "format", defaultValue = "ZIP") ReceiptBulkExportService.Format format
+    ) {
+        com.gym.service.gymmanagementservice.dtos.TransactionReportFilterDTO filter = salesReportFilter(start, end, type, method, status);
+        if (format == ReceiptBulkExportService.Format.PDF && !receiptBulkExportService.fitsInOnePdf(filter)) {
+            return org.springframework.http.ResponseEntity.badRequest().build();
+        }
+        boolean zip = format == ReceiptBulkExportService.Format.ZIP;
+        return org.springframework.http.ResponseEntity.ok()
+                .contentType(zip ? org.springframework.http.MediaType.parseMediaType("application/zip") : org.springframework.http.MediaType.APPLICATION_PDF)
+                .header("Content-Disposition", "attachment; filename=receipts." + (zip ? "zip" : "pdf"))
+                .body(out -> receiptBulkExportService.export(filter, format, out));
+    }
+
+    // Bộ lọc của trang báo cáo doanh thu: ngày theo giờ phòng gym (đến hết ngày end), type = ALL/POS/SUBSCRIPTION
+    private com.gym.service.gymmanagementservice.dtos.TransactionReportFilterDTO salesReportFilter(
+            String start, String end, String type,
+            com.gym.service.gymmanagementservice.models.PaymentMethod method,
+            com.gym.service.gymmanagementservice.models.TransactionStatus status) {
+        java.time.OffsetDateTime startDt = null;
+        java.time.OffsetDateTime endDt = null;
+        if (start != null && !start.isBlank()) {
+            try { startDt = java.time.LocalDate.parse(start).atStartOfDay(java.time.ZoneId.of("Asia/Ho_Chi_Minh")).toOffsetDateTime(); } catch (Exception ignored) {}
+        }
+        if (end != null && !end.isBlank()) {
+            try { endDt = java.time.LocalDate.parse(end).plusDays(1).atStartOfDay(java.time.ZoneId.of("Asia/Ho_Chi_Minh")).toOffsetDateTime(); } catch (Exception ignored) {}
+        }
+
+        // Phân loại theo đối tượng gắn với giao dịch (hoá đơn / gói tập), không theo TransactionKind
+        com.gym.service.gymmanagementservice.dtos.TransactionReportFilterDTO.Link link = null;
+        if ("POS".equalsIgnoreCase(type)) {
+            link = com.gym.service.gymmanagementservice.dtos.TransactionReportFilterDTO.Link.POS;
+        } else if ("SUBSCRIPTION".equalsIgnoreCase(type)) {
+            link = com.gym.service.gymmanagementservice.dtos.TransactionReportFilterDTO.Link.SUBSCRIPTION;
+        }
+
+        return com.gym.service.gymmanagementservice.dtos.TransactionReportFilterDTO.builder()
+                .start(startDt)
+                .end(endDt)
+                .link(link)
+                .status(status)
+                .paymentMethod(method)
+                .build();
+    }
+
     // --- RECEIPTS ---
     @GetMapping("/receipts/transaction/{id}")
-    public org.springframework.http.ResponseEntity<byte[]> downloadTransactionReceipt(@PathVariable("id") Long id) {
+    public void downloadTransactionReceipt(@PathVariable("id") Long id,
+                                           jakarta.servlet.http.HttpServletRequest request,
+                                           jakarta.servlet.http.HttpServletResponse response) throws java.io.IOException {
+        ReceiptCache.Receipt receipt;
         try {
-            byte[] pdf = receiptService.generateTransactionReceipt(id);
-            return org.springframework.http.ResponseEntity.ok()
-                    .contentType(org.springframework.http.MediaType.APPLICATION_PDF)
-                    .header("Content-Disposition", "attachment; filename=receipt-transaction-" + id + ".pdf")
-                    .body(pdf);
+            receipt = receiptService.getTransactionReceipt(id);
         } catch (Exception e) {
             byte[] pdf = receiptService.generateErrorReceipt("BIEN NHAN", "Khong the xuat hoa don: " + e.getMessage());
-            return org.springframework.http.ResponseEntity.ok()
-                    .contentType(org.springframework.http.MediaType.APPLICATION_PDF)
-                    .header("Content-Disposition", "attachment; filename=receipt-transaction-" + id + ".pdf")
-                    .body(pdf);
+            response.setContentType(org.springframework.http.MediaType.APPLICATION_PDF_VALUE);
+            response.setHeader("Content-Disposition", "attachment; filename=receipt-transaction-" + id + ".pdf");
+            response.getOutputStream().write(pdf);
+            return;
         }
+        receipt.writeTo(request, response, "receipt-transaction-" + id + ".pdf");
     }
     @GetMapping("/receipts/sale/{id}")
-    public org.springframework.http.ResponseEntity<byte[]> downloadSaleReceipt(@PathVariable("id") Long id) {
+    public void downloadSaleReceipt(@PathVariable("id") Long id,
+                                    jakarta.servlet.http.HttpServletRequest request,
+                                    jakarta.servlet.http.HttpServletResponse response) throws java.io.IOException {
+        ReceiptCache.Receipt receipt;
         try {
-            byte[] pdf = receiptService.generateSaleReceipt(id);
-            return org.springframework.http.ResponseEntity.ok()
-                    .contentType(org.springframework.http.MediaType.APPLICATION_PDF)
-                    .header("Content-Disposition", "attachment; filename=receipt-sale-" + id + ".pdf")
-                    .body(pdf);
+            receipt = receiptService.getSaleReceipt(id);
         } catch (Exception e) {
             byte[] pdf = receiptService.generateErrorReceipt("BIEN NHAN", "Khong the xuat hoa don: " + e.getMessage());
-            return org.springframework.http.ResponseEntity.ok()
-                    .contentType(org.springframework.http.MediaType.APPLICATION_PDF)
-                    .header("Content-Disposition", "attachment; filename=receipt-sale-" + id + ".pdf")
-                    .body(pdf);
+            response.setContentType(org.springframework.http.MediaType.APPLICATION_PDF_VALUE);
+            response.setHeader("Content-Disposition", "attachment; filename=receipt-sale-" + id + ".pdf");
+            response.getOutputStream().write(pdf);
+            return;
         }
+        receipt.writeTo(request, response, "receipt-sale-" + id + ".pdf");
+    }
+
+    @GetMapping("/receipts/transaction/{id}/escpos")
+    public ResponseEntity<byte[]> downloadTransactionReceiptEscPos(@PathVariable("id") Long id) {
+        return ResponseEntity.ok()
+                .contentType(org.springframework.http.MediaType.APPLICATION_OCTET_STREAM)
+                .header("Content-Disposition", "attachment; filename=receipt-transaction-" + id + ".bin")
+                .body(receiptService.generateTransactionReceiptEscPos(id));
+    }
+
+    @GetMapping("/receipts/sale/{id}/escpos")
+    public ResponseEntity<byte[]> downloadSaleReceiptEscPos(@PathVariable("id") Long id) {
+        return ResponseEntity.ok()
+                .contentType(org.springframework.http.MediaType.APPLICATION_OCTET_STREAM)
+                .header("Content-Disposition", "attachment; filename=receipt-sale-" + id + ".bin")
+                .body(receiptService.generateSaleReceiptEscPos(id));
     }
 
     @GetMapping("/promotions")
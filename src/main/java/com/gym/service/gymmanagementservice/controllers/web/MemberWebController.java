@@ -231,7 +231,9 @@ public class MemberWebController {
     }
 
     @GetMapping("/detail/{memberId}/transactions")
-    public String getMemberTransactionsPage(@PathVariable("memberId") Long memberId, Model model, RedirectAttributes redirectAttributes) {
+    public String getMemberTransactionsPage(@PathVariable("memberId") Long memberId,
+                                            @RequestParam(value = "cursor", required = false) String cursor,
+                                            Model model, RedirectAttributes redirectAttributes) {
         try {
             MemberResponseDTO member = memberService.getMemberById(memberId);
             model.addAttribute("memberProfile", member);
@@ -241,8 +243,10 @@ public class MemberWebController {
         }
 
         try {
-            java.util.List<com.gym.service.gymmanagementservice.dtos.TransactionReportDTO> timeline = reportService.getMemberTimeline(memberId);
-            model.addAttribute("memberTimeline", timeline);
+            com.gym.service.gymmanagementservice.dtos.TransactionReportPageDTO timeline = reportService.getMemberTimeline(memberId, cursor, 100);
+            model.addAttribute("memberTimeline", timeline.getItems());
+            model.addAttribute("cursor", cursor);
+            model.addAttribute("nextCursor", timeline.getNextCursor());
         } catch (Exception e) {
             model.addAttribute("memberTimeline", java.util.Collections.emptyList());
             model.addAttribute("errorMessage", e.getMessage());
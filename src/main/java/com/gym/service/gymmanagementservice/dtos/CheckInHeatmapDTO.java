@@ -0,0 +1,27 @@
+package com.gym.service.gymmanagementservice.dtos;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.Map;
+
+@Data
+@Builder
+@Schema(description = "Bản đồ nhiệt check-in (thứ × giờ, theo giờ phòng gym) và số lượt theo trạng thái")
+public class CheckInHeatmapDTO {
+
+    @Schema(description = "Múi giờ dùng để cắt thứ/giờ")
+    private String timeZone;
+
+    private long total;
+
+    @Schema(description = "Số lượt theo trạng thái (SUCCESS, FAILED_MEMBER_NOT_FOUND, FAILED_NO_ACTIVE_PACKAGE, FAILED_OFF_PEAK_TIME)")
+    private Map<String, Long> byStatus;
+
+    @Schema(description = "Số lượt check-in SUCCESS: heatmap[thứ][giờ], thứ 0 = Thứ 2 ... 6 = Chủ nhật, giờ 0..23")
+    private long[][] heatmap;
+
+    @Schema(description = "Số lượt FAILED_OFF_PEAK_TIME theo cùng lưới thứ × giờ (để xem khung giờ nào bị từ chối nhiều)")
+    private long[][] offPeakHeatmap;
+}
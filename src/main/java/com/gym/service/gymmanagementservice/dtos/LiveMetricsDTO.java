@@ -0,0 +1,30 @@
+package com.gym.service.gymmanagementservice.dtos;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.Map;
+
+@Data
+@Builder
+@Schema(description = "Số liệu thời gian thực theo từng phút (dạng cột: phần tử thứ i ứng với phút from + i)")
+public class LiveMetricsDTO {
+
+    @Schema(description = "Đầu phút đầu tiên")
+    private OffsetDateTime from;
+
+    @Schema(description = "Số phút")
+    private int minutes;
+
+    @Schema(description = "Số lượt check-in mỗi phút theo trạng thái (SUCCESS, FAILED_...)")
+    private Map<String, long[]> checkIns;
+
+    @Schema(description = "Doanh thu (giao dịch COMPLETED) mỗi phút theo loại giao dịch, REFUND mang số âm")
+    private Map<String, BigDecimal[]> revenue;
+
+    @Schema(description = "Số hóa đơn bán hàng PAID mỗi phút")
+    private long[] sales;
+}
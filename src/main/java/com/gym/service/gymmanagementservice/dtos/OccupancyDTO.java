@@ -0,0 +1,21 @@
+package com.gym.service.gymmanagementservice.dtos;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.OffsetDateTime;
+import java.util.Map;
+
+@Data
+@Builder
+@Schema(description = "Số người đang có mặt trong phòng tập")
+public class OccupancyDTO {
+    private int total;
+
+    @Schema(description = "Số người theo loại gói (GYM_ACCESS, PT_SESSION, PER_VISIT, NONE = ca không gắn gói)")
+    private Map<String, Integer> byPackageType;
+
+    @Schema(description = "Thời điểm số liệu thay đổi gần nhất")
+    private OffsetDateTime updatedAt;
+}
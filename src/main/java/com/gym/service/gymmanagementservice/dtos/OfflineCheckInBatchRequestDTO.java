@@ -0,0 +1,23 @@
+package com.gym.service.gymmanagementservice.dtos;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class OfflineCheckInBatchRequestDTO {
+    @NotBlank(message = "Mã thiết bị là bắt buộc")
+    @Size(max = 100, message = "Mã thiết bị tối đa 100 ký tự")
+    @Schema(description = "Mã của cổng/thiết bị quét đã lưu tạm các lần quét khi mất mạng")
+    private String deviceId;
+
+    @NotEmpty(message = "Danh sách lần quét không được để trống")
+    @Size(max = 2000, message = "Tối đa 2000 lần quét mỗi lô")
+    @Valid
+    private List<OfflineScanDTO> scans;
+}
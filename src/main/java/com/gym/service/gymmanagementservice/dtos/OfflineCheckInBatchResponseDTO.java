@@ -0,0 +1,40 @@
+package com.gym.service.gymmanagementservice.dtos;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+@Data
+@Builder
+@Schema(description = "Kết quả xử lý 1 lô quét offline, theo đúng thứ tự gửi lên")
+public class OfflineCheckInBatchResponseDTO {
+    private String deviceId;
+    private int received;
+    private int succeeded;
+    private int rejected;
+
+    @Schema(description = "Số lần quét đã được xử lý ở lần gửi trước (hoặc trùng scanId trong lô), trả lại kết quả cũ")
+    private int duplicates;
+    private List<ScanResult> results;
+
+    @Data
+    @Builder
+    public static class ScanResult {
+        @Schema(description = "Vị trí của lần quét trong danh sách gửi lên")
+        private int index;
+        private String scanId;
+        private OffsetDateTime scannedAt;
+
+        @Schema(description = "Kết quả check-in (null nếu lần quét bị từ chối)")
+        private CheckInResponseDTO result;
+
+        @Schema(description = "Lý do lần quét bị từ chối, không được đánh giá")
+        private String error;
+
+        @Schema(description = "Lần quét đã được xử lý trước đó, kết quả là kết quả đã lưu (không check-in lại)")
+        private boolean duplicate;
+    }
+}
@@ -0,0 +1,24 @@
+package com.gym.service.gymmanagementservice.dtos;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+import java.time.OffsetDateTime;
+
+@Data
+public class OfflineScanDTO {
+    @Size(max = 100, message = "scanId tối đa 100 ký tự")
+    @Schema(description = "ID lần quét do thiết bị tự sinh, duy nhất trên thiết bị (tuỳ chọn nhưng nên có: lần quét gửi lại cùng scanId không bị xử lý 2 lần)")
+    private String scanId;
+
+    @NotBlank(message = "Mã vạch là bắt buộc")
+    @Schema(description = "Mã vạch/QR code đã quét")
+    private String barcode;
+
+    @NotNull(message = "Thời điểm quét là bắt buộc")
+    @Schema(description = "Thời điểm cổng quét mã (theo đồng hồ thiết bị, có múi giờ)")
+    private OffsetDateTime scannedAt;
+}
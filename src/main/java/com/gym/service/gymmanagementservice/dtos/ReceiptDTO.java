@@ -0,0 +1,29 @@
+package com.gym.service.gymmanagementservice.dtos;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Nội dung 1 biên nhận (giao dịch gói tập hoặc hoá đơn bán lẻ), độc lập với định dạng in (PDF, ESC/POS)
+ */
+@Data
+@Builder
+public class ReceiptDTO {
+    private String title;           // "PHIẾU THU" / "PHIẾU THANH TOÁN"
+    private List<String> infoLines; // Ngày, mã, hình thức, khách... đã định dạng sẵn
+    private List<Item> items;
+    private BigDecimal totalAmount;
+    private Long transactionId;     // Mã giao dịch để in QR (null nếu hoá đơn chưa có giao dịch)
+
+    @Data
+    @Builder
+    public static class Item {
+        private String name;
+        private int quantity;
+        private BigDecimal unitPrice;
+        private BigDecimal amount;
+    }
+}
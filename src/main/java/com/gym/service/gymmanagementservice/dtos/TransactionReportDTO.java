@@ -1,8 +1,9 @@
 package com.gym.service.gymmanagementservice.dtos;
 
 import com.gym.service.gymmanagementservice.models.PaymentMethod;
-import com.gym.service.gymmanagementservice.models.Transaction;
+import com.gym.service.gymmanagementservice.models.TransactionKind;
 import com.gym.service.gymmanagementservice.models.TransactionStatus;
+import com.gym.service.gymmanagementservice.utils.NativeQueryUtil;
 import lombok.Builder;
 import lombok.Data;
 
@@ -17,61 +18,64 @@ public class TransactionReportDTO {
     private BigDecimal amount;
     private PaymentMethod paymentMethod;
     private TransactionStatus status;
+    private TransactionKind kind;
     private String createdByStaffName; // Tên nhân viên
     private String transactionType; // "Gói tập" hay "Sản phẩm"
     private String description; // Tên gói tập / ID hóa đơn
     private String buyerName;
 
     /**
-     * Hàm chuyển đổi từ Entity Transaction sang DTO
+     * Chuyển 1 dòng của TransactionRepository.findReportPage / findMemberTimelinePage sang DTO (đã JOIN sẵn, không lazy load)
      */
-    public static TransactionReportDTO fromTransaction(Transaction tx) {
-        String type = "Không xác định";
+    public static TransactionReportDTO fromReportRow(Object[] row) {
+        String packageName = (String) row[7];
+        Long saleId = row[9] != null ? ((Number) row[9]).longValue() : null;
+        TransactionKind kind = TransactionKind.valueOf((String) row[5]);
         String desc = "N/A";
         String buyer = "-";
 
-        if (tx.getMemberPackage() != null) {
-            // Phân loại theo TransactionKind
-            if (tx.getKind() != null) {
-                switch (tx.getKind()) {
-                    case SUBSCRIPTION_NEW:
-                        type = "Gói tập";
-                        break;
-                    case SUBSCRIPTION_RENEW:
-                        type = "Gia hạn";
-                        break;
-                    case SUBSCRIPTION_UPGRADE:
-                        type = "Nâng cấp";
-                        break;
-                    case REFUND:
-                        type = "Hoàn tiền";
-                        break;
-                    default:
-                        type = "Gói tập";
-                }
-            } else {
-                type = "Gói tập";
+        if (packageName != null) {
+            desc = packageName;
+            buyer = row[8] != null ? (String) row[8] : "-";
+        } else if (saleId != null) {
+            desc = "Hóa đơn #" + saleId;
+            if (row.length > 11 && row[11] != null) {
+                desc += ": " + row[11];
             }
-            
-            // Tải tên gói (Lưu ý: có thể gây N+1 query nếu không Eager)
-            desc = tx.getMemberPackage().getGymPackage().getName();
-            buyer = tx.getMemberPackage().getMember() != null ? tx.getMemberPackage().getMember().getFullName() : "-";
-        } else if (tx.getSale() != null) {
-            type = "Bán lẻ";
-            desc = "Hóa đơn #" + tx.getSale().getId();
-            buyer = tx.getSale().getMember() != null ? tx.getSale().getMember().getFullName() : "Khách vãng lai";
+            buyer = row[10] != null ? (String) row[10] : "Khách vãng lai";
         }
 
         return TransactionReportDTO.builder()
-                .id(tx.getId())
-                .transactionDate(tx.getTransactionDate() != null ? tx.getTransactionDate() : java.time.OffsetDateTime.now())
-                .amount(tx.getAmount() != null ? tx.getAmount() : java.math.BigDecimal.ZERO)
-                .paymentMethod(tx.getPaymentMethod())
-                .status(tx.getStatus())
-                .createdByStaffName(tx.getCreatedBy() != null ? tx.getCreatedBy().getFullName() : "-")
-                .transactionType(type)
+                .id(((Number) row[0]).longValue())
+                .transactionDate(NativeQueryUtil.toOffsetDateTime(row[1]))
+                .amount((BigDecimal) row[2])
+                .paymentMethod(PaymentMethod.valueOf((String) row[3]))
+                .status(TransactionStatus.valueOf((String) row[4]))
+                .kind(kind)
+                .createdByStaffName(row[6] != null ? (String) row[6] : "-")
+                .transactionType(typeOf(kind, packageName != null, saleId != null))
                 .description(desc)
                 .buyerName(buyer)
                 .build();
     }
+
+    // Nhãn loại giao dịch: theo TransactionKind nếu gắn gói tập, "Bán lẻ" nếu gắn hoá đơn
+    private static String typeOf(TransactionKind kind, boolean hasPackage, boolean hasSale) {
+        if (hasPackage) {
+            if (kind == null) {
+                return "Gói tập";
+            }
+            switch (kind) {
+                case SUBSCRIPTION_RENEW:
+                    return "Gia hạn";
+                case SUBSCRIPTION_UPGRADE:
+                    return "Nâng cấp";
+                case REFUND:
+                    return "Hoàn tiền";
+                default:
+                    return "Gói tập";
+            }
+        }
+        return hasSale ? "Bán lẻ" : "Không xác định";
+    }
 }
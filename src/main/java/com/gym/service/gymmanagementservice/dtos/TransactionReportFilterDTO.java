@@ -0,0 +1,32 @@
+package com.gym.service.gymmanagementservice.dtos;
+
+import com.gym.service.gymmanagementservice.models.PaymentMethod;
+import com.gym.service.gymmanagementservice.models.TransactionKind;
+import com.gym.service.gymmanagementservice.models.TransactionStatus;
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.OffsetDateTime;
+import java.util.Set;
+
+/**
+ * Bộ lọc báo cáo giao dịch, mọi trường đều có thể null (không lọc)
+ */
+@Data
+@Builder
+public class TransactionReportFilterDTO {
+    private OffsetDateTime start; // tính từ (bao gồm)
+    private OffsetDateTime end;   // tới (không bao gồm)
+    private Set<TransactionKind> kinds;
+    private TransactionStatus status;
+    private PaymentMethod paymentMethod;
+    private Long staffId;         // nhân viên tạo giao dịch
+    private Link link;            // lọc theo đối tượng giao dịch gắn với (không theo loại giao dịch)
+
+    /**
+     * POS = chỉ gắn hoá đơn bán lẻ (không gắn gói tập), SUBSCRIPTION = gắn gói tập.
+     * Thanh toán VNPay từ giỏ hàng của hội viên luôn mang loại SUBSCRIPTION_NEW kể cả khi chỉ có sản phẩm,
+     * nên trang báo cáo phân loại theo liên kết chứ không theo TransactionKind.
+     */
+    public enum Link { POS, SUBSCRIPTION }
+}
@@ -0,0 +1,44 @@
+package com.gym.service.gymmanagementservice.dtos;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@Builder
+@Schema(description = "1 trang báo cáo giao dịch (mới nhất trước) kèm tổng hợp của toàn bộ tập đã lọc")
+public class TransactionReportPageDTO {
+
+    private List<TransactionReportDTO> items;
+
+    @Schema(description = "Con trỏ để lấy trang kế tiếp (null nếu đã hết)")
+    private String nextCursor;
+
+    @Schema(description = "Tổng hợp của toàn bộ tập đã lọc, chỉ có ở trang đầu (không truyền cursor)")
+    private Totals totals;
+
+    @Data
+    @Builder
+    public static class Totals {
+        private long count;
+
+        @Schema(description = "Số giao dịch theo trạng thái")
+        private Map<String, Long> countByStatus;
+
+        @Schema(description = "Doanh thu ròng của giao dịch COMPLETED (đã trừ hoàn tiền)")
+        private BigDecimal completedAmount;
+
+        @Schema(description = "Tổng tiền đã hoàn (số âm)")
+        private BigDecimal refundedAmount;
+
+        @Schema(description = "Doanh thu ròng COMPLETED theo hình thức thanh toán")
+        private Map<String, BigDecimal> completedAmountByPaymentMethod;
+
+        @Schema(description = "Doanh thu ròng COMPLETED theo ngày (giờ phòng gym, yyyy-MM-dd)")
+        private Map<String, BigDecimal> completedAmountByDay;
+    }
+}
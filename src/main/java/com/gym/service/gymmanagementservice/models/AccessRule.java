@@ -0,0 +1,146 @@
+package com.gym.service.gymmanagementservice.models;
+
+import java.time.DayOfWeek;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+
+/**
+ * Quy tắc vào cửa đã được biên dịch của một gói tập:
+ * mặt nạ 7 bit các thứ trong tuần (bit 0 = Thứ 2 ... bit 6 = CN) và khung giờ theo phút trong ngày.
+ * Khung giờ có thể vắt qua nửa đêm (VD: 22:00 - 02:00), khi đó phần sau nửa đêm được tính cho thứ của ngày hôm trước.
+ * Việc kiểm tra không cấp phát bộ nhớ, rule được biên dịch 1 lần từ CSV "MON,WED,FRI".
+ */
+public final class AccessRule {
+
+    public static final int ALL_DAYS = 0x7F;
+    private static final int NO_WINDOW = -1;
+    private static final String[] SHORT_NAMES = {"MON", "TUE", "WED", "THU", "FRI", "SAT", "SUN"};
+
+    private final int weekdayMask;
+    private final int startMinute; // NO_WINDOW nếu không giới hạn giờ
+    private final int endMinute;
+
+    // Nguồn đã dùng để biên dịch (so sánh tham chiếu trong Cache)
+    private final String sourceWeekdays;
+    private final LocalTime sourceStart;
+    private final LocalTime sourceEnd;
+
+    private AccessRule(int weekdayMask, LocalTime start, LocalTime end, String sourceWeekdays) {
+        this.weekdayMask = weekdayMask;
+        boolean hasWindow = start != null && end != null;
+        this.startMinute = hasWindow ? start.getHour() * 60 + start.getMinute() : NO_WINDOW;
+        this.endMinute = hasWindow ? end.getHour() * 60 + end.getMinute() : NO_WINDOW;
+        this.sourceWeekdays = sourceWeekdays;
+        this.sourceStart = start;
+        this.sourceEnd = end;
+    }
+
+    /**
+     * @param weekdaysCsv Các thứ cho phép, VD "MON,WED,FRI" (chấp nhận cả "MONDAY"), rỗng = mọi ngày
+     * @param start Giờ check-in sớm nhất (null = không giới hạn)
+     * @param end Giờ check-in trễ nhất (null = không giới hạn)
+     */
+    public static AccessRule compile(String weekdaysCsv, LocalTime start, LocalTime end) {
+        return new AccessRule(parseWeekdayMask(weekdaysCsv), start, end, weekdaysCsv);
+    }
+
+    public static int parseWeekdayMask(String weekdaysCsv) {
+        if (weekdaysCsv == null || weekdaysCsv.isBlank()) return ALL_DAYS;
+        int mask = 0;
+        for (String token : weekdaysCsv.split(",")) {
+            String day = token.trim().toUpperCase();
+            for (int i = 0; i < SHORT_NAMES.length; i++) {
+                if (day.equals(SHORT_NAMES[i]) || day.equals(DayOfWeek.of(i + 1).name())) {
+                    mask |= 1 << i;
+                }
+            }
+        }
+        return mask;
+    }
+
+    public int getWeekdayMask() {
+        return weekdayMask;
+    }
+
+    public boolean hasTimeWindow() {
+        return startMinute != NO_WINDOW;
+    }
+
+    public boolean crossesMidnight() {
+        return hasTimeWindow() && startMinute > endMinute;
+    }
+
+    public boolean allowsWeekday(DayOfWeek day) {
+        return (weekdayMask & (1 << (day.getValue() - 1))) != 0;
+    }
+
+    /**
+     * Kiểm tra 1 thời điểm có hợp lệ không (không cấp phát bộ nhớ)
+     * @param epochSecond Thời điểm check-in (epoch second, UTC)
+     * @param offsetSeconds Độ lệch múi giờ của phòng gym tại thời điểm đó
+     */
+    public boolean allows(long epochSecond, int offsetSeconds) {
+        long localSeconds = epochSecond + offsetSeconds;
+        long epochDay = Math.floorDiv(localSeconds, 86_400L);
+        int secondOfDay = (int) Math.floorMod(localSeconds, 86_400L);
+        int dayIndex = (int) Math.floorMod(epochDay + 3, 7L); // 1970-01-01 là Thứ 5 → index 3
+
+        if (!hasTimeWindow()) {
+            return isDayAllowed(dayIndex);
+        }
+        int start = startMinute * 60;
+        int end = endMinute * 60;
+        if (start <= end) {
+            // Bao gồm cả 2 đầu mút, như [09:00 - 16:00]
+            return secondOfDay >= start && secondOfDay <= end && isDayAllowed(dayIndex);
+        }
+        // Khung vắt qua nửa đêm: phần trước nửa đêm tính cho hôm nay, phần sau tính cho hôm trước
+        if (secondOfDay >= start) {
+            return isDayAllowed(dayIndex);
+        }
+        return secondOfDay <= end && isDayAllowed((dayIndex + 6) % 7);
+    }
+
+    public boolean allows(OffsetDateTime instant, ZoneId zone) {
+        int offset = zone.getRules().getOffset(instant.toInstant()).getTotalSeconds();
+        return allows(instant.toEpochSecond(), offset);
+    }
+
+    private boolean isDayAllowed(int dayIndex) {
+        return (weekdayMask & (1 << dayIndex)) != 0;
+    }
+
+    /**
+     * Định dạng các thứ cho phép theo nhãn tuỳ chọn (theo thứ tự Thứ 2 → CN)
+     * @param labels 7 nhãn, VD {"Thứ 2", ..., "CN"}
+     */
+    public String formatWeekdays(String[] labels, String separator) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 7; i++) {
+            if (isDayAllowed(i)) {
+                if (sb.length() > 0) sb.append(separator);
+                sb.append(labels[i]);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Bộ nhớ đệm rule cho 1 entity: chỉ biên dịch lại khi CSV/khung giờ nguồn thay đổi.
+     */
+    public static final class Cache {
+        private volatile AccessRule rule;
+
+        public AccessRule get(String weekdaysCsv, LocalTime start, LocalTime end) {
+            AccessRule current = rule;
+            if (current != null && current.sourceWeekdays == weekdaysCsv
+                    && current.sourceStart == start && current.sourceEnd == end) {
+                return current;
+            }
+            current = compile(weekdaysCsv, start, end);
+            rule = current;
+            return current;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.gym.service.gymmanagementservice.models;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Tổng hợp số lượng và doanh thu bán hàng theo ngày (giờ phòng gym) × sản phẩm, chỉ tính hóa đơn PAID.
+ */
+@Entity
+@Table(name = "daily_product_sales_rollups", uniqueConstraints = {
+    @UniqueConstraint(name = "uk_daily_product_sales_rollups_day_product", columnNames = {"day", "product_id"})
+})
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class DailyProductSalesRollup {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "day", nullable = false)
+    private LocalDate day;
+
+    @Column(name = "product_id", nullable = false)
+    private Long productId;
+
+    @Column(name = "quantity", nullable = false)
+    private Long quantity;
+
+    // Tính theo giá tại thời điểm bán (quantity × price_at_sale)
+    @Column(name = "revenue", nullable = false, precision = 14, scale = 2)
+    private BigDecimal revenue;
+}
@@ -0,0 +1,47 @@
+package com.gym.service.gymmanagementservice.models;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Tổng hợp giao dịch COMPLETED theo ngày (giờ phòng gym) × loại giao dịch × hình thức thanh toán.
+ * Được cộng dồn khi giao dịch hoàn tất và dựng lại hằng đêm nếu lệch với bảng transactions.
+ */
+@Entity
+@Table(name = "daily_revenue_rollups", uniqueConstraints = {
+    @UniqueConstraint(name = "uk_daily_revenue_rollups_day_kind_method", columnNames = {"day", "kind", "payment_method"})
+})
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class DailyRevenueRollup {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "day", nullable = false)
+    private LocalDate day;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "kind", nullable = false)
+    private TransactionKind kind;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "payment_method", nullable = false)
+    private PaymentMethod paymentMethod;
+
+    @Column(name = "tx_count", nullable = false)
+    private Long txCount;
+
+    // REFUND mang số âm nên tổng theo ngày là doanh thu thuần
+    @Column(name = "amount", nullable = false, precision = 14, scale = 2)
+    private BigDecimal amount;
+}
@@ -1,10 +1,14 @@
 package com.gym.service.gymmanagementservice.models;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
 import java.math.BigDecimal;
 import java.time.LocalTime;
@@ -75,6 +79,19 @@ public class GymPackage {
     @Column(name = "allowed_weekdays", length = 100)
     private String allowedWeekdays; // Các thứ trong tuần cho phép tập, định dạng CSV: "MON,WED,FRI" (chỉ dùng cho PT_SESSION)
 
+    @Transient
+    @Getter(AccessLevel.NONE)
+    @ToString.Exclude
+    private final transient AccessRule.Cache accessRuleCache = new AccessRule.Cache();
+
+    /**
+     * Quy tắc vào cửa đã biên dịch từ allowedWeekdays + khung giờ của gói
+     */
+    @JsonIgnore
+    public AccessRule getAccessRule() {
+        return accessRuleCache.get(allowedWeekdays, startTimeLimit, endTimeLimit);
+    }
+
     @PrePersist
     protected void onCreate() {
         createdAt = OffsetDateTime.now();
@@ -1,10 +1,14 @@
 package com.gym.service.gymmanagementservice.models;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
+import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
 import java.time.OffsetDateTime;
 
@@ -54,4 +58,19 @@ public class MemberPackage {
     @Enumerated(EnumType.STRING)
     @Column(name = "time_slot")
     private TimeSlot timeSlot; // Khung giờ đã chọn (chỉ dùng cho PT_SESSION)
+
+    @Transient
+    @Getter(AccessLevel.NONE)
+    @ToString.Exclude
+    private final transient AccessRule.Cache accessRuleCache = new AccessRule.Cache();
+
+    /**
+     * Quy tắc vào cửa đã biên dịch: thứ trong tuần của gói đăng ký + khung giờ của GymPackage
+     */
+    @JsonIgnore
+    public AccessRule getAccessRule() {
+        return accessRuleCache.get(allowedWeekdays,
+                gymPackage != null ? gymPackage.getStartTimeLimit() : null,
+                gymPackage != null ? gymPackage.getEndTimeLimit() : null);
+    }
 }
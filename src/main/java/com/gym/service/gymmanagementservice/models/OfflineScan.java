@@ -0,0 +1,54 @@
+package com.gym.service.gymmanagementservice.models;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.OffsetDateTime;
+
+/**
+ * Lần quét offline đã được xử lý, theo (thiết bị, scanId do thiết bị sinh).
+ * Cổng gửi lại lô (mất phản hồi do mạng chập chờn) sẽ nhận lại đúng kết quả đã lưu, không bị đánh giá lần 2.
+ */
+@Entity
+@Table(name = "offline_scans", uniqueConstraints = {
+    @UniqueConstraint(name = "uk_offline_scans_device_scan", columnNames = {"device_id", "scan_id"})
+})
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class OfflineScan {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "device_id", nullable = false, length = 100)
+    private String deviceId;
+
+    @Column(name = "scan_id", nullable = false, length = 100)
+    private String scanId;
+
+    @Column(name = "scanned_at", nullable = false)
+    private OffsetDateTime scannedAt;
+
+    // Kết quả đã trả cho cổng ở lần gửi đầu tiên
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false)
+    private CheckInStatus status;
+
+    @Column(name = "message")
+    private String message;
+
+    @Column(name = "member_full_name")
+    private String memberFullName;
+
+    @Column(name = "package_name")
+    private String packageName;
+
+    @Column(name = "package_end_date")
+    private OffsetDateTime packageEndDate;
+}
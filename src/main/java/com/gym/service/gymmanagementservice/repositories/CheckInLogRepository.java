@@ -6,10 +6,61 @@ import org.springframework.stereotype.Repository;
 
 @Repository
 public interface CheckInLogRepository extends JpaRepository<CheckInLog, Long> {
-    java.util.Optional<CheckInLog> findTopByMemberIdAndCheckOutTimeIsNullOrderByCheckInTimeDesc(Long memberId);
-    java.util.Optional<CheckInLog> findTopByMemberPackageIdAndCheckOutTimeIsNullOrderByCheckInTimeDesc(Long memberPackageId);
+    // Ca đang mở = log SUCCESS chưa check-out (log thất bại cũng có check_out_time NULL nhưng không phải ca tập).
+    // Trạng thái viết dạng hằng để PostgreSQL luôn dùng được partial index idx_check_in_logs_open_* (V7).
+    @org.springframework.data.jpa.repository.Query("SELECT l FROM CheckInLog l WHERE l.member.id = :memberId " +
+            "AND l.status = com.gym.service.gymmanagementservice.models.CheckInStatus.SUCCESS AND l.checkOutTime IS NULL " +
+            "ORDER BY l.checkInTime DESC LIMIT 1")
+    java.util.Optional<CheckInLog> findOpenSessionByMemberId(@org.springframework.data.repository.query.Param("memberId") Long memberId);
+
+    @org.springframework.data.jpa.repository.Query("SELECT l FROM CheckInLog l WHERE l.memberPackage.id = :memberPackageId " +
+            "AND l.status = com.gym.service.gymmanagementservice.models.CheckInStatus.SUCCESS AND l.checkOutTime IS NULL " +
+            "ORDER BY l.checkInTime DESC LIMIT 1")
+    java.util.Optional<CheckInLog> findOpenSessionByMemberPackageId(@org.springframework.data.repository.query.Param("memberPackageId") Long memberPackageId);
+
+    // Số ca đang mở theo loại gói (dựng lại bộ đếm số người đang tập). Mỗi dòng: [PackageType|null, count]
+    @org.springframework.data.jpa.repository.Query("SELECT gp.packageType, COUNT(l) FROM CheckInLog l " +
+            "LEFT JOIN l.memberPackage mp LEFT JOIN mp.gymPackage gp " +
+            "WHERE l.status = com.gym.service.gymmanagementservice.models.CheckInStatus.SUCCESS " +
+            "AND l.checkOutTime IS NULL GROUP BY gp.packageType")
+    java.util.List<Object[]> countOpenSessionsByPackageType();
+
+    // Số lượt check-in theo phút và trạng thái trong [since, until). Mỗi dòng: [phút (epoch/60), trạng thái, số lượt]
+    @org.springframework.data.jpa.repository.Query(value = "SELECT CAST(FLOOR(EXTRACT(EPOCH FROM l.check_in_time) / 60) AS BIGINT) AS minute, " +
+            "l.status, COUNT(*) FROM check_in_logs l " +
+            "WHERE l.check_in_time >= :since AND l.check_in_time < :until GROUP BY 1, 2", nativeQuery = true)
+    java.util.List<Object[]> countByMinuteAndStatus(
+            @org.springframework.data.repository.query.Param("since") java.time.OffsetDateTime since,
+            @org.springframework.data.repository.query.Param("until") java.time.OffsetDateTime until);
+
+    // Đóng 1 lô ca bị bỏ quên (mở lâu hơn maxSeconds): giờ ra = giờ vào + maxSeconds.
+    // Lô được chọn theo thứ tự check_in_time qua partial index idx_check_in_logs_open (V7), bỏ qua dòng đang bị khoá.
+    @org.springframework.data.jpa.repository.Modifying
+    @org.springframework.transaction.annotation.Transactional
+    @org.springframework.data.jpa.repository.Query(value = "UPDATE check_in_logs " +
+            "SET check_out_time = check_in_time + make_interval(secs => :maxSeconds), " +
+            "session_duration_seconds = :maxSeconds " +
+            "WHERE id IN (SELECT id FROM check_in_logs " +
+            "WHERE status = 'SUCCESS' AND check_out_time IS NULL AND check_in_time < :cutoff " +
+            "ORDER BY check_in_time LIMIT :chunkSize FOR UPDATE SKIP LOCKED)", nativeQuery = true)
+    int closeStaleSessions(@org.springframework.data.repository.query.Param("cutoff") java.time.OffsetDateTime cutoff,
+                           @org.springframework.data.repository.query.Param("maxSeconds") long maxSeconds,
+                           @org.springframework.data.repository.query.Param("chunkSize") int chunkSize);
 
     long countByCheckInTimeBetween(java.time.OffsetDateTime start, java.time.OffsetDateTime end);
+
+    // Số lượt check-in theo tuần × thứ × giờ × trạng thái trong [start, end], cắt theo giờ địa phương của phòng gym.
+    // Mỗi dòng: [ngày thứ 2 đầu tuần, thứ (ISO: 1 = thứ 2 .. 7 = CN), giờ, trạng thái, số lượt]
+    @org.springframework.data.jpa.repository.Query(value = "SELECT CAST(date_trunc('week', l.check_in_time AT TIME ZONE :zone) AS DATE) AS week, " +
+            "CAST(EXTRACT(ISODOW FROM l.check_in_time AT TIME ZONE :zone) AS INTEGER) AS dow, " +
+            "CAST(EXTRACT(HOUR FROM l.check_in_time AT TIME ZONE :zone) AS INTEGER) AS hour, " +
+            "l.status, COUNT(*) FROM check_in_logs l " +
+            "WHERE l.check_in_time BETWEEN :start AND :end GROUP BY 1, 2, 3, 4", nativeQuery = true)
+    java.util.List<Object[]> countByWeekDayHourAndStatus(
+            @org.springframework.data.repository.query.Param("zone") String zone,
+            @org.springframework.data.repository.query.Param("start") java.time.OffsetDateTime start,
+            @org.springframework.data.repository.query.Param("end") java.time.OffsetDateTime end);
+
     long countByCheckInTimeBetweenAndStatus(java.time.OffsetDateTime start, java.time.OffsetDateTime end, com.gym.service.gymmanagementservice.models.CheckInStatus status);
     
     // Query methods for filtering
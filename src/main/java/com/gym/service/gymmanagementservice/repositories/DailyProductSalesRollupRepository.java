@@ -0,0 +1,72 @@
+package com.gym.service.gymmanagementservice.repositories;
+
+import com.gym.service.gymmanagementservice.models.DailyProductSalesRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface DailyProductSalesRollupRepository extends JpaRepository<DailyProductSalesRollup, Long> {
+
+    // Cộng dồn 1 dòng hóa đơn vào (ngày, sản phẩm), tạo dòng nếu chưa có
+    @org.springframework.data.jpa.repository.Modifying
+    @org.springframework.data.jpa.repository.Query(value = "INSERT INTO daily_product_sales_rollups (day, product_id, quantity, revenue) " +
+            "VALUES (:day, :productId, :quantity, :revenue) " +
+            "ON CONFLICT (day, product_id) DO UPDATE SET " +
+            "quantity = daily_product_sales_rollups.quantity + EXCLUDED.quantity, " +
+            "revenue = daily_product_sales_rollups.revenue + EXCLUDED.revenue", nativeQuery = true)
+    void addDelta(@org.springframework.data.repository.query.Param("day") java.time.LocalDate day,
+                  @org.springframework.data.repository.query.Param("productId") Long productId,
+                  @org.springframework.data.repository.query.Param("quantity") long quantity,
+                  @org.springframework.data.repository.query.Param("revenue") java.math.BigDecimal revenue);
+
+    // Sản phẩm bán chạy trong 1 truy vấn: các ngày trọn vẹn [fromDay, toDay] lấy từ bảng tổng hợp, đoạn lẻ đầu/cuối
+    // (headStart..headEnd, tailStart..tailEnd) gom trực tiếp từ hóa đơn PAID; xếp hạng theo số lượng hoặc doanh thu.
+    // Mỗi dòng: [productId, tên sản phẩm, số lượng, doanh thu]
+    @org.springframework.data.jpa.repository.Query(value = "SELECT p.id, p.name, SUM(x.quantity) AS quantity, SUM(x.revenue) AS revenue FROM (" +
+            "SELECT r.product_id, r.quantity, r.revenue FROM daily_product_sales_rollups r " +
+            "WHERE r.day BETWEEN :fromDay AND :toDay " +
+            "UNION ALL " +
+            "SELECT d.product_id, d.quantity, d.quantity * d.price_at_sale FROM sale_details d JOIN sales s ON s.id = d.sale_id " +
+            "WHERE s.status = 'PAID' AND (s.sale_date BETWEEN :headStart AND :headEnd OR s.sale_date BETWEEN :tailStart AND :tailEnd)" +
+            ") x JOIN products p ON p.id = x.product_id " +
+            "GROUP BY p.id, p.name " +
+            "ORDER BY CASE WHEN :rankBy = 'revenue' THEN SUM(x.revenue) ELSE SUM(x.quantity) END DESC, p.id " +
+            "LIMIT :limit", nativeQuery = true)
+    java.util.List<Object[]> findTopProducts(@org.springframework.data.repository.query.Param("fromDay") java.time.LocalDate fromDay,
+                                             @org.springframework.data.repository.query.Param("toDay") java.time.LocalDate toDay,
+                                             @org.springframework.data.repository.query.Param("headStart") java.time.OffsetDateTime headStart,
+                                             @org.springframework.data.repository.query.Param("headEnd") java.time.OffsetDateTime headEnd,
+                                             @org.springframework.data.repository.query.Param("tailStart") java.time.OffsetDateTime tailStart,
+                                             @org.springframework.data.repository.query.Param("tailEnd") java.time.OffsetDateTime tailEnd,
+                                             @org.springframework.data.repository.query.Param("rankBy") String rankBy,
+                                             @org.springframework.data.repository.query.Param("limit") int limit);
+
+    // Các ngày mà tổng hợp lệch với hóa đơn PAID
+    @org.springframework.data.jpa.repository.Query(value = "SELECT DISTINCT COALESCE(f.day, r.day) AS day FROM (" +
+            "SELECT CAST(s.sale_date AT TIME ZONE :zone AS DATE) AS day, d.product_id, " +
+            "SUM(d.quantity) AS quantity, SUM(d.quantity * d.price_at_sale) AS revenue " +
+            "FROM sale_details d JOIN sales s ON s.id = d.sale_id " +
+            "WHERE s.status = 'PAID' GROUP BY 1, 2) f " +
+            "FULL JOIN daily_product_sales_rollups r ON r.day = f.day AND r.product_id = f.product_id " +
+            "WHERE f.quantity IS DISTINCT FROM r.quantity OR f.revenue IS DISTINCT FROM r.revenue " +
+            "ORDER BY 1", nativeQuery = true)
+    java.util.List<java.sql.Date> findDriftedDays(@org.springframework.data.repository.query.Param("zone") String zone);
+
+    @org.springframework.data.jpa.repository.Modifying
+    @org.springframework.data.jpa.repository.Query(value = "LOCK TABLE daily_product_sales_rollups IN SHARE ROW EXCLUSIVE MODE", nativeQuery = true)
+    void lockForRebuild();
+
+    @org.springframework.data.jpa.repository.Modifying
+    @org.springframework.data.jpa.repository.Query(value = "DELETE FROM daily_product_sales_rollups WHERE day = :day", nativeQuery = true)
+    void deleteByDay(@org.springframework.data.repository.query.Param("day") java.time.LocalDate day);
+
+    @org.springframework.data.jpa.repository.Modifying
+    @org.springframework.data.jpa.repository.Query(value = "INSERT INTO daily_product_sales_rollups (day, product_id, quantity, revenue) " +
+            "SELECT CAST(:day AS DATE), d.product_id, SUM(d.quantity), SUM(d.quantity * d.price_at_sale) " +
+            "FROM sale_details d JOIN sales s ON s.id = d.sale_id " +
+            "WHERE s.status = 'PAID' AND s.sale_date >= :from AND s.sale_date < :to " +
+            "GROUP BY d.product_id", nativeQuery = true)
+    int insertDayFromSales(@org.springframework.data.repository.query.Param("day") java.time.LocalDate day,
+                           @org.springframework.data.repository.query.Param("from") java.time.OffsetDateTime from,
+                           @org.springframework.data.repository.query.Param("to") java.time.OffsetDateTime to);
+}
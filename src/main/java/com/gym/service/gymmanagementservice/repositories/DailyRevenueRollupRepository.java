@@ -0,0 +1,64 @@
+package com.gym.service.gymmanagementservice.repositories;
+
+import com.gym.service.gymmanagementservice.models.DailyRevenueRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface DailyRevenueRollupRepository extends JpaRepository<DailyRevenueRollup, Long> {
+
+    // Cộng dồn 1 giao dịch vào dòng (ngày, loại, hình thức thanh toán), tạo dòng nếu chưa có
+    @org.springframework.data.jpa.repository.Modifying
+    @org.springframework.data.jpa.repository.Query(value = "INSERT INTO daily_revenue_rollups (day, kind, payment_method, tx_count, amount) " +
+            "VALUES (:day, :kind, :method, :count, :amount) " +
+            "ON CONFLICT (day, kind, payment_method) DO UPDATE SET " +
+            "tx_count = daily_revenue_rollups.tx_count + EXCLUDED.tx_count, " +
+            "amount = daily_revenue_rollups.amount + EXCLUDED.amount", nativeQuery = true)
+    void addDelta(@org.springframework.data.repository.query.Param("day") java.time.LocalDate day,
+                  @org.springframework.data.repository.query.Param("kind") String kind,
+                  @org.springframework.data.repository.query.Param("method") String paymentMethod,
+                  @org.springframework.data.repository.query.Param("count") long count,
+                  @org.springframework.data.repository.query.Param("amount") java.math.BigDecimal amount);
+
+    // Doanh thu theo ngày trong khoảng ngày cho trước, chỉ các loại giao dịch cho trước. Mỗi dòng: [ngày, tổng tiền]
+    @org.springframework.data.jpa.repository.Query("SELECT r.day, SUM(r.amount) FROM DailyRevenueRollup r " +
+            "WHERE r.day BETWEEN :from AND :to AND r.kind IN :kinds GROUP BY r.day ORDER BY r.day")
+    java.util.List<Object[]> sumAmountByDay(@org.springframework.data.repository.query.Param("from") java.time.LocalDate from,
+                                            @org.springframework.data.repository.query.Param("to") java.time.LocalDate to,
+                                            @org.springframework.data.repository.query.Param("kinds") java.util.Collection<com.gym.service.gymmanagementservice.models.TransactionKind> kinds);
+
+    // Số giao dịch theo loại trong khoảng ngày. Mỗi dòng: [loại, số giao dịch]
+    @org.springframework.data.jpa.repository.Query("SELECT r.kind, SUM(r.txCount) FROM DailyRevenueRollup r " +
+            "WHERE r.day BETWEEN :from AND :to GROUP BY r.kind")
+    java.util.List<Object[]> sumCountByKind(@org.springframework.data.repository.query.Param("from") java.time.LocalDate from,
+                                            @org.springframework.data.repository.query.Param("to") java.time.LocalDate to);
+
+    // Các ngày (giờ phòng gym) mà tổng hợp lệch với bảng transactions (thiếu dòng, thừa dòng hoặc sai số liệu)
+    @org.springframework.data.jpa.repository.Query(value = "SELECT DISTINCT COALESCE(f.day, r.day) AS day FROM (" +
+            "SELECT CAST(t.transaction_date AT TIME ZONE :zone AS DATE) AS day, t.kind, t.payment_method, " +
+            "COUNT(*) AS tx_count, SUM(t.amount) AS amount FROM transactions t " +
+            "WHERE t.status = 'COMPLETED' GROUP BY 1, 2, 3) f " +
+            "FULL JOIN daily_revenue_rollups r ON r.day = f.day AND r.kind = f.kind AND r.payment_method = f.payment_method " +
+            "WHERE f.tx_count IS DISTINCT FROM r.tx_count OR f.amount IS DISTINCT FROM r.amount " +
+            "ORDER BY 1", nativeQuery = true)
+    java.util.List<java.sql.Date> findDriftedDays(@org.springframework.data.repository.query.Param("zone") String zone);
+
+    // Chặn cộng dồn đồng thời trong lúc dựng lại (giao dịch đang ghi sẽ chờ tới khi dựng lại xong rồi cộng tiếp)
+    @org.springframework.data.jpa.repository.Modifying
+    @org.springframework.data.jpa.repository.Query(value = "LOCK TABLE daily_revenue_rollups IN SHARE ROW EXCLUSIVE MODE", nativeQuery = true)
+    void lockForRebuild();
+
+    @org.springframework.data.jpa.repository.Modifying
+    @org.springframework.data.jpa.repository.Query(value = "DELETE FROM daily_revenue_rollups WHERE day = :day", nativeQuery = true)
+    void deleteByDay(@org.springframework.data.repository.query.Param("day") java.time.LocalDate day);
+
+    // Dựng lại 1 ngày từ bảng transactions, [from, to) là đầu và cuối ngày theo giờ phòng gym
+    @org.springframework.data.jpa.repository.Modifying
+    @org.springframework.data.jpa.repository.Query(value = "INSERT INTO daily_revenue_rollups (day, kind, payment_method, tx_count, amount) " +
+            "SELECT CAST(:day AS DATE), t.kind, t.payment_method, COUNT(*), SUM(t.amount) FROM transactions t " +
+            "WHERE t.status = 'COMPLETED' AND t.transaction_date >= :from AND t.transaction_date < :to " +
+            "GROUP BY t.kind, t.payment_method", nativeQuery = true)
+    int insertDayFromTransactions(@org.springframework.data.repository.query.Param("day") java.time.LocalDate day,
+                                  @org.springframework.data.repository.query.Param("from") java.time.OffsetDateTime from,
+                                  @org.springframework.data.repository.query.Param("to") java.time.OffsetDateTime to);
+}
@@ -5,6 +5,7 @@ import com.gym.service.gymmanagementservice.models.PackageType;
 import com.gym.service.gymmanagementservice.models.SubscriptionStatus;
 import com.gym.service.gymmanagementservice.models.TimeSlot;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.stereotype.Repository;
 
 import java.time.OffsetDateTime;
@@ -12,7 +13,7 @@ import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface MemberPackageRepository extends JpaRepository<MemberPackage, Long> {
+public interface MemberPackageRepository extends JpaRepository<MemberPackage, Long>, JpaSpecificationExecutor<MemberPackage> {
     // Tìm tất cả các gói đã đăng ký của một hội viên
     List<MemberPackage> findByMemberId(Long memberId);
     boolean existsByMemberIdAndStatus(Long memberId, SubscriptionStatus status);
@@ -61,6 +62,16 @@ public interface MemberPackageRepository extends JpaRepository<MemberPackage, Lo
             @org.springframework.data.repository.query.Param("status") SubscriptionStatus status,
             @org.springframework.data.repository.query.Param("packageType") PackageType packageType);
     
+    // Trừ 1 buổi/lượt một cách nguyên tử (không đọc-sửa-ghi): chỉ thành công khi gói ACTIVE và còn buổi,
+    // tự chuyển sang EXPIRED khi về 0. Trả về số buổi còn lại, rỗng nếu không trừ được.
+    // Lưu ý: entity MemberPackage đang được quản lý KHÔNG tự cập nhật, người gọi dùng giá trị trả về.
+    @org.springframework.data.jpa.repository.Query(value = "UPDATE member_packages " +
+            "SET remaining_sessions = remaining_sessions - 1, " +
+            "status = CASE WHEN remaining_sessions - 1 <= 0 THEN 'EXPIRED' ELSE status END " +
+            "WHERE id = :id AND status = 'ACTIVE' AND remaining_sessions > 0 " +
+            "RETURNING remaining_sessions", nativeQuery = true)
+    Optional<Integer> consumeSession(@org.springframework.data.repository.query.Param("id") Long id);
+
     @org.springframework.data.jpa.repository.Modifying
     @org.springframework.data.jpa.repository.Query(value = "DELETE FROM member_packages WHERE member_id = :memberId", nativeQuery = true)
     void deleteAllByMemberId(@org.springframework.data.repository.query.Param("memberId") Long memberId);
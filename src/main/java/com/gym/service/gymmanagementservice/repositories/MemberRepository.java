@@ -13,6 +13,23 @@ public interface MemberRepository extends JpaRepository<Member, Long> {
     Optional<Member> findByPhoneNumber(String phoneNumber);
     Optional<Member> findByEmail(String email);
     Optional<Member> findByBarcode(String barcode);
+
+    // Check-in cổng: lấy hội viên + tất cả gói đang hoạt động (kèm GymPackage) + ca đang mở trong 1 truy vấn
+    // Mỗi dòng: [Member, MemberPackage|null, GymPackage|null, CheckInLog|null]
+    @org.springframework.data.jpa.repository.Query("SELECT m, mp, gp, l FROM Member m " +
+            "LEFT JOIN MemberPackage mp ON mp.member = m AND mp.status = :status " +
+            "LEFT JOIN mp.gymPackage gp " +
+            "LEFT JOIN CheckInLog l ON l.member = m AND l.status = com.gym.service.gymmanagementservice.models.CheckInStatus.SUCCESS " +
+            "AND l.checkOutTime IS NULL " +
+            "WHERE m.id = :memberId OR m.barcode = :barcode")
+    java.util.List<Object[]> findCheckInEntitlementRows(
+            @org.springframework.data.repository.query.Param("memberId") Long memberId,
+            @org.springframework.data.repository.query.Param("barcode") String barcode,
+            @org.springframework.data.repository.query.Param("status") com.gym.service.gymmanagementservice.models.SubscriptionStatus status);
+
+    // Quét offline gửi bù: ánh xạ nhiều mã vạch → ID hội viên trong 1 truy vấn. Mỗi dòng: [id, barcode]
+    @org.springframework.data.jpa.repository.Query("SELECT m.id, m.barcode FROM Member m WHERE m.barcode IN :barcodes")
+    java.util.List<Object[]> findIdsByBarcodeIn(@org.springframework.data.repository.query.Param("barcodes") java.util.Collection<String> barcodes);
     
     @org.springframework.data.jpa.repository.Modifying
     @org.springframework.data.jpa.repository.Query(value = "DELETE FROM members WHERE id = :memberId", nativeQuery = true)
@@ -0,0 +1,16 @@
+package com.gym.service.gymmanagementservice.repositories;
+
+import com.gym.service.gymmanagementservice.models.OfflineScan;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface OfflineScanRepository extends JpaRepository<OfflineScan, Long> {
+    java.util.List<OfflineScan> findByDeviceIdAndScanIdIn(String deviceId, java.util.Collection<String> scanIds);
+
+    // Lần quét cũ hơn hạn gửi bù sẽ bị từ chối theo thời điểm quét, không cần giữ để chống trùng nữa
+    @org.springframework.data.jpa.repository.Modifying
+    @org.springframework.transaction.annotation.Transactional
+    @org.springframework.data.jpa.repository.Query("DELETE FROM OfflineScan s WHERE s.scannedAt < :cutoff")
+    int deleteScannedBefore(@org.springframework.data.repository.query.Param("cutoff") java.time.OffsetDateTime cutoff);
+}
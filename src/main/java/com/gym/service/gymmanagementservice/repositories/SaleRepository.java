@@ -11,6 +11,12 @@ import org.springframework.stereotype.Repository;
 public interface SaleRepository extends JpaRepository<Sale, Long> {
     java.util.List<Sale> findBySaleDateBetween(java.time.OffsetDateTime start, java.time.OffsetDateTime end);
     long countByUser_Id(Long userId);
+
+    // Số hóa đơn PAID theo phút trong [since, until). Mỗi dòng: [phút (epoch/60), số hóa đơn]
+    @Query(value = "SELECT CAST(FLOOR(EXTRACT(EPOCH FROM s.sale_date) / 60) AS BIGINT) AS minute, COUNT(*) FROM sales s " +
+            "WHERE s.status = 'PAID' AND s.sale_date >= :since AND s.sale_date < :until GROUP BY 1", nativeQuery = true)
+    java.util.List<Object[]> countPaidByMinute(@Param("since") java.time.OffsetDateTime since,
+                                               @Param("until") java.time.OffsetDateTime until);
     long countByMember_Id(Long memberId);
     java.util.List<Sale> findByMember_Id(Long memberId);
     
@@ -25,4 +31,13 @@ public interface SaleRepository extends JpaRepository<Sale, Long> {
     @Modifying
     @Query(value = "DELETE FROM sales WHERE member_id = :memberId", nativeQuery = true)
     void deleteByMemberId(@Param("memberId") Long memberId);
+
+    // Chỉ đọc trạng thái (phiên bản nội dung của biên nhận đã cache)
+    // Nạp sẵn nhân viên, khách và dòng hàng của biên nhận trong 1 truy vấn
+    @Query("SELECT s FROM Sale s LEFT JOIN FETCH s.user LEFT JOIN FETCH s.member " +
+            "LEFT JOIN FETCH s.saleDetails d LEFT JOIN FETCH d.product WHERE s.id = :id")
+    java.util.Optional<Sale> findForReceiptById(@Param("id") Long id);
+
+    @Query("SELECT s.status FROM Sale s WHERE s.id = :id")
+    java.util.Optional<com.gym.service.gymmanagementservice.models.SaleStatus> findStatusById(@Param("id") Long id);
 }
@@ -7,6 +7,144 @@ import org.springframework.stereotype.Repository;
 @Repository
 public interface TransactionRepository extends JpaRepository<Transaction, Long> {
     java.util.List<Transaction> findByTransactionDateBetween(java.time.OffsetDateTime start, java.time.OffsetDateTime end);
+    // Doanh thu gom theo kỳ ngay trong DB: chỉ giao dịch COMPLETED thuộc các loại cho trước (REFUND mang số âm),
+    // kỳ được cắt theo giờ địa phương của phòng gym. Mỗi dòng: [đầu kỳ (timestamp không múi giờ), tổng tiền]
+    @org.springframework.data.jpa.repository.Query(value = "SELECT date_trunc(:unit, t.transaction_date AT TIME ZONE :zone) AS period, " +
+            "SUM(t.amount) AS amount FROM transactions t " +
+            "WHERE t.transaction_date BETWEEN :start AND :end AND t.status = 'COMPLETED' AND t.kind IN (:kinds) " +
+            "GROUP BY 1 ORDER BY 1", nativeQuery = true)
+    java.util.List<Object[]> sumCompletedAmountByPeriod(
+            @org.springframework.data.repository.query.Param("unit") String unit,
+            @org.springframework.data.repository.query.Param("zone") String zone,
+            @org.springframework.data.repository.query.Param("start") java.time.OffsetDateTime start,
+            @org.springframework.data.repository.query.Param("end") java.time.OffsetDateTime end,
+            @org.springframework.data.repository.query.Param("kinds") java.util.Collection<String> kinds);
+
+    // Số giao dịch COMPLETED theo loại trong khoảng thời gian. Mỗi dòng: [loại, số giao dịch]
+    @org.springframework.data.jpa.repository.Query("SELECT t.kind, COUNT(t) FROM Transaction t " +
+            "WHERE t.transactionDate BETWEEN :start AND :end " +
+            "AND t.status = com.gym.service.gymmanagementservice.models.TransactionStatus.COMPLETED GROUP BY t.kind")
+    java.util.List<Object[]> countCompletedByKind(
+            @org.springframework.data.repository.query.Param("start") java.time.OffsetDateTime start,
+            @org.springframework.data.repository.query.Param("end") java.time.OffsetDateTime end);
+
+    // Doanh thu COMPLETED theo phút và loại trong [since, until). Mỗi dòng: [phút (epoch/60), loại, tổng tiền]
+    @org.springframework.data.jpa.repository.Query(value = "SELECT CAST(FLOOR(EXTRACT(EPOCH FROM t.transaction_date) / 60) AS BIGINT) AS minute, " +
+            "t.kind, SUM(t.amount) FROM transactions t " +
+            "WHERE t.status = 'COMPLETED' AND t.transaction_date >= :since AND t.transaction_date < :until GROUP BY 1, 2", nativeQuery = true)
+    java.util.List<Object[]> sumCompletedAmountByMinuteAndKind(
+            @org.springframework.data.repository.query.Param("since") java.time.OffsetDateTime since,
+            @org.springframework.data.repository.query.Param("until") java.time.OffsetDateTime until);
+
+    // Báo cáo giao dịch: 1 trang theo keyset (transaction_date, id) giảm dần, bộ lọc chạy trong DB.
+    // Cận trên của khoảng ngày và con trỏ trang gộp chung thành (:beforeDate, :beforeId).
+    // Mỗi dòng: [id, ngày, số tiền, hình thức, trạng thái, loại, tên nhân viên, tên gói, tên hội viên (gói), id hoá đơn, tên hội viên (hoá đơn)]
+    @org.springframework.data.jpa.repository.Query(value = "SELECT t.id, t.transaction_date, t.amount, t.payment_method, t.status, t.kind, " +
+            "u.fullname AS staff_name, p.name AS package_name, m.fullname AS package_member_name, t.sale_id, sm.fullname AS sale_member_name " +
+            "FROM transactions t " +
+            "JOIN users u ON u.id = t.created_by_user_id " +
+            "LEFT JOIN member_packages mp ON mp.id = t.member_package_id " +
+            "LEFT JOIN packages p ON p.id = mp.package_id " +
+            "LEFT JOIN members m ON m.id = mp.member_id " +
+            "LEFT JOIN sales s ON s.id = t.sale_id " +
+            "LEFT JOIN members sm ON sm.id = s.member_id " +
+            "WHERE t.transaction_date >= :start AND (t.transaction_date, t.id) < (:beforeDate, :beforeId) " +
+            "AND t.kind IN (:kinds) " +
+            "AND (CAST(:status AS VARCHAR) IS NULL OR t.status = CAST(:status AS VARCHAR)) " +
+            "AND (CAST(:method AS VARCHAR) IS NULL OR t.payment_method = CAST(:method AS VARCHAR)) " +
+            "AND (CAST(:staffId AS BIGINT) IS NULL OR t.created_by_user_id = CAST(:staffId AS BIGINT)) " +
+            "AND (CAST(:link AS VARCHAR) IS NULL " +
+            "OR (CAST(:link AS VARCHAR) = 'POS' AND t.sale_id IS NOT NULL AND t.member_package_id IS NULL) " +
+            "OR (CAST(:link AS VARCHAR) = 'SUBSCRIPTION' AND t.member_package_id IS NOT NULL)) " +
+            "ORDER BY t.transaction_date DESC, t.id DESC LIMIT :limit", nativeQuery = true)
+    java.util.List<Object[]> findReportPage(
+            @org.springframework.data.repository.query.Param("start") java.time.OffsetDateTime start,
+            @org.springframework.data.repository.query.Param("beforeDate") java.time.OffsetDateTime beforeDate,
+            @org.springframework.data.repository.query.Param("beforeId") long beforeId,
+            @org.springframework.data.repository.query.Param("kinds") java.util.Collection<String> kinds,
+            @org.springframework.data.repository.query.Param("status") String status,
+            @org.springframework.data.repository.query.Param("method") String method,
+            @org.springframework.data.repository.query.Param("staffId") Long staffId,
+            @org.springframework.data.repository.query.Param("link") String link,
+            @org.springframework.data.repository.query.Param("limit") int limit);
+
+    // Id giao dịch theo bộ lọc báo cáo, cũ nhất trước, keyset (transaction_date, id) tăng dần (xuất biên nhận hàng loạt).
+    // Mỗi dòng: [id, ngày]
+    @org.springframework.data.jpa.repository.Query(value = "SELECT t.id, t.transaction_date FROM transactions t " +
+            "WHERE (t.transaction_date, t.id) > (:afterDate, :afterId) AND t.transaction_date < :end " +
+            "AND t.kind IN (:kinds) " +
+            "AND (CAST(:status AS VARCHAR) IS NULL OR t.status = CAST(:status AS VARCHAR)) " +
+            "AND (CAST(:method AS VARCHAR) IS NULL OR t.payment_method = CAST(:method AS VARCHAR)) " +
+            "AND (CAST(:staffId AS BIGINT) IS NULL OR t.created_by_user_id = CAST(:staffId AS BIGINT)) " +
+            "AND (CAST(:link AS VARCHAR) IS NULL " +
+            "OR (CAST(:link AS VARCHAR) = 'POS' AND t.sale_id IS NOT NULL AND t.member_package_id IS NULL) " +
+            "OR (CAST(:link AS VARCHAR) = 'SUBSCRIPTION' AND t.member_package_id IS NOT NULL)) " +
+            "ORDER BY t.transaction_date, t.id LIMIT :limit", nativeQuery = true)
+    java.util.List<Object[]> findReportIdsAfter(
+            @org.springframework.data.repository.query.Param("afterDate") java.time.OffsetDateTime afterDate,
+            @org.springframework.data.repository.query.Param("afterId") long afterId,
+            @org.springframework.data.repository.query.Param("end") java.time.OffsetDateTime end,
+            @org.springframework.data.repository.query.Param("kinds") java.util.Collection<String> kinds,
+            @org.springframework.data.repository.query.Param("status") String status,
+            @org.springframework.data.repository.query.Param("method") String method,
+            @org.springframework.data.repository.query.Param("staffId") Long staffId,
+            @org.springframework.data.repository.query.Param("link") String link,
+            @org.springframework.data.repository.query.Param("limit") int limit);
+
+    // Tổng hợp của toàn bộ tập đã lọc (cùng bộ lọc với findReportPage), gom theo ngày (giờ phòng gym), trạng thái và hình thức.
+    // Mỗi dòng: [ngày, trạng thái, hình thức, số giao dịch, tổng tiền, tổng tiền hoàn]
+    @org.springframework.data.jpa.repository.Query(value = "SELECT CAST(t.transaction_date AT TIME ZONE :zone AS DATE) AS day, t.status, t.payment_method, " +
+            "COUNT(*), SUM(t.amount), SUM(CASE WHEN t.amount < 0 THEN t.amount ELSE 0 END) " +
+            "FROM transactions t " +
+            "WHERE t.transaction_date >= :start AND t.transaction_date < :end " +
+            "AND t.kind IN (:kinds) " +
+            "AND (CAST(:status AS VARCHAR) IS NULL OR t.status = CAST(:status AS VARCHAR)) " +
+            "AND (CAST(:method AS VARCHAR) IS NULL OR t.payment_method = CAST(:method AS VARCHAR)) " +
+            "AND (CAST(:staffId AS BIGINT) IS NULL OR t.created_by_user_id = CAST(:staffId AS BIGINT)) " +
+            "AND (CAST(:link AS VARCHAR) IS NULL " +
+            "OR (CAST(:link AS VARCHAR) = 'POS' AND t.sale_id IS NOT NULL AND t.member_package_id IS NULL) " +
+            "OR (CAST(:link AS VARCHAR) = 'SUBSCRIPTION' AND t.member_package_id IS NOT NULL)) " +
+            "GROUP BY 1, 2, 3 ORDER BY 1", nativeQuery = true)
+    java.util.List<Object[]> summarizeReport(
+            @org.springframework.data.repository.query.Param("zone") String zone,
+            @org.springframework.data.repository.query.Param("start") java.time.OffsetDateTime start,
+            @org.springframework.data.repository.query.Param("end") java.time.OffsetDateTime end,
+            @org.springframework.data.repository.query.Param("kinds") java.util.Collection<String> kinds,
+            @org.springframework.data.repository.query.Param("status") String status,
+            @org.springframework.data.repository.query.Param("method") String method,
+            @org.springframework.data.repository.query.Param("staffId") Long staffId,
+            @org.springframework.data.repository.query.Param("link") String link);
+
+    // Lịch sử giao dịch của 1 hội viên: hợp các giao dịch gắn gói tập và gắn hoá đơn của hội viên đó,
+    // mỗi nhánh tự phân trang keyset (transaction_date, id) trên index rồi mới gộp.
+    // Mỗi dòng như findReportPage, thêm cột cuối: danh sách sản phẩm của hoá đơn ("Tên x SL, ...")
+    @org.springframework.data.jpa.repository.Query(value = "SELECT t.id, t.transaction_date, t.amount, t.payment_method, t.status, t.kind, " +
+            "u.fullname AS staff_name, p.name AS package_name, m.fullname AS package_member_name, t.sale_id, sm.fullname AS sale_member_name, " +
+            "(SELECT string_agg(pr.name || ' x' || sd.quantity, ', ' ORDER BY sd.id) FROM sale_details sd " +
+            "JOIN products pr ON pr.id = sd.product_id WHERE sd.sale_id = t.sale_id) AS sale_items " +
+            "FROM (" +
+            "(SELECT tp.id, tp.transaction_date FROM transactions tp JOIN member_packages mpk ON mpk.id = tp.member_package_id " +
+            "WHERE mpk.member_id = :memberId AND (tp.transaction_date, tp.id) < (:beforeDate, :beforeId) " +
+            "ORDER BY tp.transaction_date DESC, tp.id DESC LIMIT :limit) " +
+            "UNION " +
+            "(SELECT ts.id, ts.transaction_date FROM transactions ts JOIN sales sl ON sl.id = ts.sale_id " +
+            "WHERE sl.member_id = :memberId AND (ts.transaction_date, ts.id) < (:beforeDate, :beforeId) " +
+            "ORDER BY ts.transaction_date DESC, ts.id DESC LIMIT :limit)" +
+            ") k " +
+            "JOIN transactions t ON t.id = k.id " +
+            "JOIN users u ON u.id = t.created_by_user_id " +
+            "LEFT JOIN member_packages mp ON mp.id = t.member_package_id " +
+            "LEFT JOIN packages p ON p.id = mp.package_id " +
+            "LEFT JOIN members m ON m.id = mp.member_id " +
+            "LEFT JOIN sales s ON s.id = t.sale_id " +
+            "LEFT JOIN members sm ON sm.id = s.member_id " +
+            "ORDER BY k.transaction_date DESC, k.id DESC LIMIT :limit", nativeQuery = true)
+    java.util.List<Object[]> findMemberTimelinePage(
+            @org.springframework.data.repository.query.Param("memberId") Long memberId,
+            @org.springframework.data.repository.query.Param("beforeDate") java.time.OffsetDateTime beforeDate,
+            @org.springframework.data.repository.query.Param("beforeId") long beforeId,
+            @org.springframework.data.repository.query.Param("limit") int limit);
+
     long countByTransactionDateBetweenAndKind(java.time.OffsetDateTime start, java.time.OffsetDateTime end, com.gym.service.gymmanagementservice.models.TransactionKind kind);
     long countByCreatedBy_Id(Long userId);
     java.util.Optional<Transaction> findByMemberPackage_Id(Long memberPackageId);
@@ -25,6 +163,17 @@ public interface TransactionRepository extends JpaRepository<Transaction, Long>
     
     // Tìm transaction theo saleId
     java.util.Optional<Transaction> findBySale_Id(Long saleId);
+
+    // Nạp sẵn mọi quan hệ mà biên nhận cần trong 1 truy vấn, dựng biên nhận không cần transaction đang mở
+    @org.springframework.data.jpa.repository.Query("SELECT t FROM Transaction t " +
+            "LEFT JOIN FETCH t.memberPackage mp LEFT JOIN FETCH mp.member LEFT JOIN FETCH mp.gymPackage " +
+            "LEFT JOIN FETCH t.sale s LEFT JOIN FETCH s.member LEFT JOIN FETCH s.saleDetails d LEFT JOIN FETCH d.product " +
+            "WHERE t.id = :id")
+    java.util.Optional<Transaction> findForReceiptById(@org.springframework.data.repository.query.Param("id") Long id);
+
+    // Chỉ đọc trạng thái (phiên bản nội dung của biên nhận đã cache)
+    @org.springframework.data.jpa.repository.Query("SELECT t.status FROM Transaction t WHERE t.id = :id")
+    java.util.Optional<com.gym.service.gymmanagementservice.models.TransactionStatus> findStatusById(@org.springframework.data.repository.query.Param("id") Long id);
     
     // Tìm tất cả transaction theo saleId
     java.util.List<Transaction> findAllBySale_Id(Long saleId);
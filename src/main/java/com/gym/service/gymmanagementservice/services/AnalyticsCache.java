@@ -0,0 +1,148 @@
+package com.gym.service.gymmanagementservice.services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Cache kết quả thống kê theo endpoint + khoảng thời gian (đã chuẩn hoá về UTC).
+ * - Khoảng nằm trọn trong quá khứ: không hết hạn, chỉ bị xoá khi có dữ liệu mới rơi vào khoảng đó
+ *   (giao dịch hoàn tất muộn/hoàn tiền ghi lùi ngày, lần quét offline gửi bù...) hoặc khi bảng tổng hợp được dựng lại.
+ * - Khoảng chứa thời điểm hiện tại: sống trong thời gian ngắn (analytics.cache.live-ttl-seconds),
+ *   không bị xoá theo từng sự kiện để giờ cao điểm vẫn dùng lại được kết quả.
+ * Khi xoá chỉ các mục có khoảng chứa thời điểm của dữ liệu mới bị ảnh hưởng.
+ */
+@Component
+public class AnalyticsCache {
+
+    /**
+     * Nhóm dữ liệu nguồn của 1 endpoint (dùng để xoá đúng các mục bị ảnh hưởng)
+     */
+    public enum Source {
+        CHECK_INS,
+        TRANSACTIONS,
+        SALES
+    }
+
+    private final MeterRegistry meterRegistry;
+    private final Duration liveTtl;
+    private final Map<String, Entry> entries;
+    // Số lần xoá theo nguồn: kết quả tính xong sau 1 lần xoá có thể đã cũ nên không được lưu
+    private final Map<Source, AtomicLong> generations = new EnumMap<>(Source.class);
+
+    public AnalyticsCache(MeterRegistry meterRegistry,
+                          @Value("${analytics.cache.live-ttl-seconds:30}") long liveTtlSeconds,
+                          @Value("${analytics.cache.max-entries:2000}") int maxEntries) {
+        this.meterRegistry = meterRegistry;
+        this.liveTtl = Duration.ofSeconds(liveTtlSeconds);
+        this.entries = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        for (Source source : Source.values()) {
+            generations.put(source, new AtomicLong());
+        }
+    }
+
+    /**
+     * @param endpoint Tên endpoint (dùng làm tag cho bộ đếm hit/miss)
+     * @param params Các tham số khác ngoài khoảng thời gian (đã chuẩn hoá thứ tự)
+     * @param loader Tính kết quả khi chưa có trong cache
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String endpoint, Source source, OffsetDateTime start, OffsetDateTime end, String params, Supplier<T> loader) {
+        long now = System.currentTimeMillis();
+        long startMillis = start.toInstant().toEpochMilli();
+        long endMillis = end.toInstant().toEpochMilli();
+        // Khoảng chứa hiện tại: mọi mốc kết thúc ở tương lai cho cùng kết quả nên gộp chung 1 khoá
+        boolean live = endMillis >= now;
+        String key = endpoint + "|" + start.toInstant() + "|" + (live ? "now" : end.toInstant().toString()) + "|" + params;
+
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && (entry.expiresAtMillis == 0 || entry.expiresAtMillis > now)) {
+                meterRegistry.counter("analytics.cache.hits", "endpoint", endpoint).increment();
+                return (T) entry.value;
+            }
+        }
+        meterRegistry.counter("analytics.cache.misses", "endpoint", endpoint).increment();
+
+        long generation = generations.get(source).get();
+        T value = loader.get();
+        synchronized (entries) {
+            if (live) {
+                entries.put(key, new Entry(source, startMillis, endMillis, System.currentTimeMillis() + liveTtl.toMillis(), value));
+            } else if (generations.get(source).get() == generation) {
+                entries.put(key, new Entry(source, startMillis, endMillis, 0, value));
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Dữ liệu của nguồn thay đổi tại thời điểm `time`: xoá các mục khoảng quá khứ chứa thời điểm này
+     * (áp dụng sau khi transaction hiện tại commit)
+     */
+    public void invalidate(Source source, OffsetDateTime time) {
+        long millis = time.toInstant().toEpochMilli();
+        afterCommit(() -> {
+            synchronized (entries) {
+                generations.get(source).incrementAndGet();
+                Iterator<Entry> it = entries.values().iterator();
+                while (it.hasNext()) {
+                    Entry entry = it.next();
+                    if (entry.expiresAtMillis == 0 && entry.source == source
+                            && entry.startMillis <= millis && millis <= entry.endMillis) {
+                        it.remove();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Xoá mọi mục của 1 nguồn (VD: bảng tổng hợp vừa được dựng lại)
+     */
+    public void invalidateAll(Source source) {
+        synchronized (entries) {
+            generations.get(source).incrementAndGet();
+            entries.values().removeIf(entry -> entry.source == source);
+        }
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static final class Entry {
+        private final Source source;
+        private final long startMillis;
+        private final long endMillis;
+        private final long expiresAtMillis; // 0 = không hết hạn
+        private final Object value;
+    }
+}
@@ -1,21 +1,29 @@
 package com.gym.service.gymmanagementservice.services;
 
-import com.gym.service.gymmanagementservice.models.Sale;
-import com.gym.service.gymmanagementservice.models.SaleDetail;
-import com.gym.service.gymmanagementservice.models.Transaction;
+import com.gym.service.gymmanagementservice.dtos.CheckInHeatmapDTO;
+import com.gym.service.gymmanagementservice.models.CheckInStatus;
 import com.gym.service.gymmanagementservice.models.TransactionKind;
 import com.gym.service.gymmanagementservice.repositories.CheckInLogRepository;
-import com.gym.service.gymmanagementservice.repositories.SaleRepository;
+import com.gym.service.gymmanagementservice.repositories.DailyProductSalesRollupRepository;
+import com.gym.service.gymmanagementservice.repositories.DailyRevenueRollupRepository;
 import com.gym.service.gymmanagementservice.repositories.TransactionRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.time.DayOfWeek;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.OffsetDateTime;
 import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 @Service
@@ -24,84 +32,353 @@ public class AnalyticsService {
 
     private final CheckInLogRepository checkInLogRepository;
     private final TransactionRepository transactionRepository;
-    private final SaleRepository saleRepository;
+    private final DailyRevenueRollupRepository revenueRollupRepository;
+    private final DailyProductSalesRollupRepository productRollupRepository;
+    private final RevenueRollupService revenueRollupService;
 
+    private static final CheckInStatus[] CHECK_IN_STATUSES = CheckInStatus.values();
+    private static final int CHECK_IN_CELLS = CHECK_IN_STATUSES.length * 7 * 24;
+
+    // Múi giờ của phòng gym (dùng để cắt kỳ thống kê)
+    private final ZoneId gymTimeZone = ZoneId.of("Asia/Ho_Chi_Minh");
+
+    // Số lượt check-in của các tuần đã đóng (khoá = ngày thứ 2 đầu tuần). Check-in không còn được ghi lùi vào
+    // các tuần này nên giữ tới khi log bị xoá (xoá hội viên, xem clearClosedWeekCheckIns)
+    private final Map<LocalDate, long[]> closedWeekCheckIns = new ConcurrentHashMap<>();
+    // Tăng mỗi lần xoá cache tuần: kết quả tính xong sau 1 lần xoá có thể đã cũ nên không được lưu
+    private final AtomicLong closedWeekGeneration = new AtomicLong();
+
+    // Tuần chỉ được coi là đã đóng sau khoảng trễ này. Phải ≥ hạn gửi bù quét offline (checkin.offline.max-age-hours),
+    // nếu không lần quét gửi bù vào tuần đã cache sẽ không bao giờ được tính
+    @Value("${analytics.heatmap.closed-week-lag-hours:${checkin.offline.max-age-hours:72}}")
+    private long closedWeekLagHours;
+
+    /**
+     * Bỏ toàn bộ cache các tuần đã đóng (log check-in cũ vừa bị xoá)
+     */
+    public void clearClosedWeekCheckIns() {
+        closedWeekGeneration.incrementAndGet();
+        closedWeekCheckIns.clear();
+    }
+
+    /**
+     * Tổng số lượt check-in thành công/thất bại, tính từ cùng số liệu gom nhóm với bản đồ nhiệt
+     */
     @Transactional(readOnly = true)
     public Map<String, Long> getCheckInsStats(OffsetDateTime start, OffsetDateTime end) {
-        long total = checkInLogRepository.countByCheckInTimeBetween(start, end);
-        long success = checkInLogRepository.countByCheckInTimeBetweenAndStatus(start, end, com.gym.service.gymmanagementservice.models.CheckInStatus.SUCCESS);
-        long failed = total - success;
+        long[] counts = countCheckIns(start, end);
+        long total = 0;
+        for (CheckInStatus status : CHECK_IN_STATUSES) {
+            total += sumStatus(counts, status);
+        }
+        long success = sumStatus(counts, CheckInStatus.SUCCESS);
         Map<String, Long> result = new HashMap<>();
         result.put("total", total);
         result.put("success", success);
-        result.put("failed", failed);
+        result.put("failed", total - success);
         return result;
     }
 
+    /**
+     * Bản đồ nhiệt check-in thành công (thứ × giờ theo giờ phòng gym) kèm số lượt theo từng trạng thái.
+     * Các tuần đã đóng được cache vĩnh viễn, chỉ phần còn lại (thường là tuần hiện tại) được truy vấn bằng
+     * 1 câu gom nhóm duy nhất trên check_in_logs.
+     */
+    @Transactional(readOnly = true)
+    public CheckInHeatmapDTO getCheckInHeatmap(OffsetDateTime start, OffsetDateTime end) {
+        long[] counts = countCheckIns(start, end);
+        Map<String, Long> byStatus = new LinkedHashMap<>();
+        long total = 0;
+        for (CheckInStatus status : CHECK_IN_STATUSES) {
+            long sum = sumStatus(counts, status);
+            byStatus.put(status.name(), sum);
+            total += sum;
+        }
+        return CheckInHeatmapDTO.builder()
+                .timeZone(gymTimeZone.getId())
+                .total(total)
+                .byStatus(byStatus)
+                .heatmap(dayHourGrid(counts, CheckInStatus.SUCCESS))
+                .offPeakHeatmap(dayHourGrid(counts, CheckInStatus.FAILED_OFF_PEAK_TIME))
+                .build();
+    }
+
+    /**
+     * Số lượt check-in trong [start, end] theo trạng thái × thứ × giờ (xem cellOf)
+     */
+    private long[] countCheckIns(OffsetDateTime start, OffsetDateTime end) {
+        long[] counts = new long[CHECK_IN_CELLS];
+        long generation = closedWeekGeneration.get();
+        // Tuần chỉ được coi là đã đóng khi hết hạn gửi bù các lần quét offline của tuần đó
+        OffsetDateTime closedBefore = OffsetDateTime.now().minusHours(closedWeekLagHours);
+
+        // Lấy từ cache các tuần đã đóng nằm trọn trong khoảng, đồng thời thu hẹp đoạn cần truy vấn ở 2 đầu
+        Set<LocalDate> fromCache = new HashSet<>();
+        Set<LocalDate> toCache = new HashSet<>();
+        LocalDate week = weekOf(start);
+        if (start.isAfter(startOfWeek(week))) {
+            week = week.plusWeeks(1);
+        }
+        OffsetDateTime queryStart = start;
+        OffsetDateTime queryEnd = end;
+        for (; !startOfWeek(week.plusWeeks(1)).minus(1, ChronoUnit.MICROS).isAfter(end)
+                && !startOfWeek(week.plusWeeks(1)).isAfter(closedBefore); week = week.plusWeeks(1)) {
+            long[] cached = closedWeekCheckIns.get(week);
+            if (cached == null) {
+                toCache.add(week);
+                continue;
+            }
+            fromCache.add(week);
+            for (int i = 0; i < CHECK_IN_CELLS; i++) {
+                counts[i] += cached[i];
+            }
+            if (!queryStart.isBefore(startOfWeek(week))) {
+                queryStart = startOfWeek(week.plusWeeks(1));
+            }
+        }
+        for (LocalDate w = weekOf(queryEnd); fromCache.contains(w) && !queryEnd.isBefore(queryStart); w = w.minusWeeks(1)) {
+            queryEnd = startOfWeek(w).minus(1, ChronoUnit.MICROS);
+        }
+        if (queryStart.isAfter(queryEnd)) {
+            return counts;
+        }
+
+        Map<LocalDate, long[]> freshWeeks = new HashMap<>();
+        for (Object[] row : checkInLogRepository.countByWeekDayHourAndStatus(gymTimeZone.getId(), queryStart, queryEnd)) {
+            LocalDate rowWeek = ((java.sql.Date) row[0]).toLocalDate();
+            if (fromCache.contains(rowWeek)) {
+                continue;
+            }
+            int cell = cellOf(CheckInStatus.valueOf((String) row[3]), ((Number) row[1]).intValue() - 1, ((Number) row[2]).intValue());
+            long count = ((Number) row[4]).longValue();
+            counts[cell] += count;
+            if (toCache.contains(rowWeek)) {
+                freshWeeks.computeIfAbsent(rowWeek, w -> new long[CHECK_IN_CELLS])[cell] += count;
+            }
+        }
+        for (LocalDate w : toCache) {
+            closedWeekCheckIns.put(w, freshWeeks.getOrDefault(w, new long[CHECK_IN_CELLS]));
+        }
+        if (closedWeekGeneration.get() != generation) {
+            // Bị xoá trong lúc đang truy vấn: không giữ các tuần vừa tính
+            toCache.forEach(closedWeekCheckIns::remove);
+        }
+        return counts;
+    }
+
+    // Vị trí ô trong mảng đếm: trạng thái × thứ (0 = thứ 2) × giờ
+    private static int cellOf(CheckInStatus status, int dayOfWeek, int hour) {
+        return (status.ordinal() * 7 + dayOfWeek) * 24 + hour;
+    }
+
+    private static long sumStatus(long[] counts, CheckInStatus status) {
+        long sum = 0;
+        for (int i = cellOf(status, 0, 0); i < cellOf(status, 0, 0) + 7 * 24; i++) {
+            sum += counts[i];
+        }
+        return sum;
+    }
+
+    private static long[][] dayHourGrid(long[] counts, CheckInStatus status) {
+        long[][] grid = new long[7][24];
+        for (int day = 0; day < 7; day++) {
+            for (int hour = 0; hour < 24; hour++) {
+                grid[day][hour] = counts[cellOf(status, day, hour)];
+            }
+        }
+        return grid;
+    }
+
+    private LocalDate weekOf(OffsetDateTime time) {
+        return time.atZoneSameInstant(gymTimeZone).toLocalDate().with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+    }
+
+    private OffsetDateTime startOfWeek(LocalDate monday) {
+        return monday.atStartOfDay(gymTimeZone).toOffsetDateTime();
+    }
+
+    /**
+     * Số gói mới/gia hạn/nâng cấp (giao dịch COMPLETED): các ngày trọn vẹn đọc từ bảng tổng hợp,
+     * phần lẻ đầu/cuối khoảng (nếu có) đếm trực tiếp trên bảng transactions
+     */
     @Transactional(readOnly = true)
     public Map<String, Long> getSubscriptionStats(OffsetDateTime start, OffsetDateTime end) {
+        Map<TransactionKind, Long> countByKind = new EnumMap<>(TransactionKind.class);
+        DayWindow window = splitIntoDays(start, end);
+        if (window.hasFullDays()) {
+            for (Object[] row : revenueRollupRepository.sumCountByKind(window.firstDay, window.lastDay)) {
+                countByKind.merge((TransactionKind) row[0], ((Number) row[1]).longValue(), Long::sum);
+            }
+        }
+        for (OffsetDateTime[] range : window.partialRanges) {
+            for (Object[] row : transactionRepository.countCompletedByKind(range[0], range[1])) {
+                countByKind.merge((TransactionKind) row[0], ((Number) row[1]).longValue(), Long::sum);
+            }
+        }
         Map<String, Long> result = new HashMap<>();
-        result.put("new", transactionRepository.countByTransactionDateBetweenAndKind(start, end, TransactionKind.SUBSCRIPTION_NEW));
-        result.put("renew", transactionRepository.countByTransactionDateBetweenAndKind(start, end, TransactionKind.SUBSCRIPTION_RENEW));
-        result.put("upgrade", transactionRepository.countByTransactionDateBetweenAndKind(start, end, TransactionKind.SUBSCRIPTION_UPGRADE));
+        result.put("new", countByKind.getOrDefault(TransactionKind.SUBSCRIPTION_NEW, 0L));
+        result.put("renew", countByKind.getOrDefault(TransactionKind.SUBSCRIPTION_RENEW, 0L));
+        result.put("upgrade", countByKind.getOrDefault(TransactionKind.SUBSCRIPTION_UPGRADE, 0L));
         return result;
     }
 
+    /**
+     * Sản phẩm bán chạy (hóa đơn PAID) trong 1 truy vấn gom nhóm có LIMIT: các ngày trọn vẹn đọc từ bảng tổng hợp,
+     * phần lẻ đầu/cuối khoảng gom trực tiếp từ sale_details
+     * @param rankBy quantity (mặc định) | revenue - xếp hạng theo số lượng hoặc theo doanh thu
+     */
     @Transactional(readOnly = true)
-    public List<Map<String, Object>> getTopProducts(OffsetDateTime start, OffsetDateTime end, int limit) {
-        List<Sale> sales = saleRepository.findBySaleDateBetween(start, end);
-        Map<Long, Integer> qtyByProductId = new HashMap<>();
-        Map<Long, String> nameByProductId = new HashMap<>();
-
-        for (Sale sale : sales) {
-            for (SaleDetail d : sale.getSaleDetails()) {
-                qtyByProductId.merge(d.getProduct().getId(), d.getQuantity(), Integer::sum);
-                nameByProductId.putIfAbsent(d.getProduct().getId(), d.getProduct().getName());
-            }
-        }
+    public List<Map<String, Object>> getTopProducts(OffsetDateTime start, OffsetDateTime end, int limit, String rankBy) {
+        DayWindow window = splitIntoDays(start, end);
+        OffsetDateTime[] head = window.partialRange(0);
+        OffsetDateTime[] tail = window.partialRange(1);
+        List<Object[]> rows = productRollupRepository.findTopProducts(
+                window.hasFullDays() ? window.firstDay : LocalDate.EPOCH,
+                window.hasFullDays() ? window.lastDay : LocalDate.EPOCH.minusDays(1),
+                head[0], head[1], tail[0], tail[1],
+                "revenue".equalsIgnoreCase(rankBy) ? "revenue" : "quantity",
+                Math.max(0, limit));
 
-        return qtyByProductId.entrySet().stream()
-                .sorted((a, b) -> Integer.compare(b.getValue(), a.getValue()))
-                .limit(limit)
-                .map(e -> {
-                    Map<String, Object> m = new HashMap<>();
-                    m.put("productId", e.getKey());
-                    m.put("productName", nameByProductId.get(e.getKey()));
-                    m.put("quantity", e.getValue());
-                    return m;
-                })
-                .collect(Collectors.toList());
+        List<Map<String, Object>> result = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            Map<String, Object> m = new HashMap<>();
+            m.put("productId", ((Number) row[0]).longValue());
+            m.put("productName", row[1]);
+            m.put("quantity", ((Number) row[2]).intValue());
+            m.put("revenue", toBigDecimal(row[3]));
+            result.add(m);
+        }
+        return result;
     }
 
+    /**
+     * Doanh thu theo kỳ. Theo ngày/tuần/tháng: các ngày trọn vẹn đọc từ bảng tổng hợp (chi phí theo số ngày,
+     * không theo số giao dịch), phần lẻ đầu/cuối khoảng gom trực tiếp trong DB. Theo giờ: gom trực tiếp trong DB.
+     * @param granularity hour | day | week | month (mặc định week)
+     * @param kinds Các loại giao dịch cần tính, rỗng = tất cả (REFUND mang số âm nên doanh thu là doanh thu thuần)
+     */
     @Transactional(readOnly = true)
-    public List<Map<String, Object>> getRevenueGrouped(OffsetDateTime start, OffsetDateTime end, String granularity) {
-        List<Transaction> txs = transactionRepository.findByTransactionDateBetween(start, end);
-
-        Map<String, BigDecimal> bucket = new LinkedHashMap<>();
-
-        for (Transaction tx : txs) {
-            LocalDate date = tx.getTransactionDate().toLocalDate();
-            String key;
-            if ("month".equalsIgnoreCase(granularity)) {
-                YearMonth ym = YearMonth.from(date);
-                key = ym.toString();
-            } else { // week
-                LocalDate weekStart = date.minusDays(date.getDayOfWeek().getValue() - 1);
-                key = weekStart.toString();
+    public List<Map<String, Object>> getRevenueGrouped(OffsetDateTime start, OffsetDateTime end, String granularity,
+                                                       Collection<TransactionKind> kinds) {
+        String unit = normalizeGranularity(granularity);
+        Collection<TransactionKind> effectiveKinds = kinds == null || kinds.isEmpty()
+                ? EnumSet.allOf(TransactionKind.class) : kinds;
+        List<String> kindNames = effectiveKinds.stream().map(Enum::name).collect(Collectors.toList());
+
+        // Đầu kỳ → tổng tiền, sắp theo thời gian
+        Map<LocalDateTime, BigDecimal> amountByPeriod = new TreeMap<>();
+        if ("hour".equals(unit)) {
+            for (Object[] row : transactionRepository.sumCompletedAmountByPeriod(unit, gymTimeZone.getId(), start, end, kindNames)) {
+                amountByPeriod.merge(toLocalDateTime(row[0]), toBigDecimal(row[1]), BigDecimal::add);
+            }
+        } else {
+            DayWindow window = splitIntoDays(start, end);
+            if (window.hasFullDays()) {
+                for (Object[] row : revenueRollupRepository.sumAmountByDay(window.firstDay, window.lastDay, effectiveKinds)) {
+                    amountByPeriod.merge(periodStart((LocalDate) row[0], unit), toBigDecimal(row[1]), BigDecimal::add);
+                }
             }
+            for (OffsetDateTime[] range : window.partialRanges) {
+                for (Object[] row : transactionRepository.sumCompletedAmountByPeriod("day", gymTimeZone.getId(), range[0], range[1], kindNames)) {
+                    amountByPeriod.merge(periodStart(toLocalDateTime(row[0]).toLocalDate(), unit), toBigDecimal(row[1]), BigDecimal::add);
+                }
+            }
+        }
+
+        List<Map<String, Object>> result = new ArrayList<>(amountByPeriod.size());
+        for (Map.Entry<LocalDateTime, BigDecimal> e : amountByPeriod.entrySet()) {
+            Map<String, Object> m = new HashMap<>();
+            m.put("period", formatPeriod(e.getKey(), unit));
+            m.put("amount", e.getValue());
+            result.add(m);
+        }
+        return result;
+    }
+
+    /**
+     * Tách khoảng [start, end] thành các ngày trọn vẹn (theo giờ phòng gym) và tối đa 2 đoạn lẻ ở đầu/cuối
+     */
+    private DayWindow splitIntoDays(OffsetDateTime start, OffsetDateTime end) {
+        LocalDate firstDay = revenueRollupService.dayOf(start);
+        if (start.isAfter(revenueRollupService.startOfDay(firstDay))) {
+            firstDay = firstDay.plusDays(1);
+        }
+        // end là mốc bao gồm (BETWEEN), nên ngày cuối trọn vẹn khi end ≥ 23:59:59.999999 của ngày đó
+        LocalDate lastDay = revenueRollupService.dayOf(end.plus(1, ChronoUnit.MICROS)).minusDays(1);
 
-            BigDecimal val = bucket.getOrDefault(key, BigDecimal.ZERO);
-            val = val.add(tx.getAmount());
-            bucket.put(key, val);
+        DayWindow window = new DayWindow();
+        if (firstDay.isAfter(lastDay)) {
+            window.partialRanges.add(new OffsetDateTime[]{start, end});
+            return window;
+        }
+        window.firstDay = firstDay;
+        window.lastDay = lastDay;
+        OffsetDateTime fullStart = revenueRollupService.startOfDay(firstDay);
+        OffsetDateTime fullEnd = revenueRollupService.startOfDay(lastDay.plusDays(1));
+        if (start.isBefore(fullStart)) {
+            // Timestamp trong PostgreSQL có độ chính xác micro giây
+            window.partialRanges.add(new OffsetDateTime[]{start, fullStart.minus(1, ChronoUnit.MICROS)});
+        }
+        if (!end.isBefore(fullEnd)) {
+            window.partialRanges.add(new OffsetDateTime[]{fullEnd, end});
         }
+        return window;
+    }
+
+    private static final class DayWindow {
+        private static final OffsetDateTime[] EMPTY_RANGE = {
+                OffsetDateTime.parse("1970-01-02T00:00:00Z"), OffsetDateTime.parse("1970-01-01T00:00:00Z")};
+
+        private LocalDate firstDay;
+        private LocalDate lastDay;
+        private final List<OffsetDateTime[]> partialRanges = new ArrayList<>(2);
+
+        private boolean hasFullDays() {
+            return firstDay != null;
+        }
+
+        // Đoạn lẻ thứ i, hoặc 1 khoảng rỗng (đầu > cuối) nếu không có để truyền thẳng vào BETWEEN
+        private OffsetDateTime[] partialRange(int i) {
+            return i < partialRanges.size() ? partialRanges.get(i) : EMPTY_RANGE;
+        }
+    }
+
+    // Đầu kỳ chứa 1 ngày: tuần bắt đầu thứ 2 (giống date_trunc('week')), tháng bắt đầu ngày 1
+    private static LocalDateTime periodStart(LocalDate day, String unit) {
+        switch (unit) {
+            case "month": return day.withDayOfMonth(1).atStartOfDay();
+            case "week": return day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)).atStartOfDay();
+            default: return day.atStartOfDay();
+        }
+    }
+
+    private static BigDecimal toBigDecimal(Object value) {
+        return value instanceof BigDecimal amount ? amount : new BigDecimal(value.toString());
+    }
+
+    private static String normalizeGranularity(String granularity) {
+        if (granularity == null) return "week";
+        switch (granularity.toLowerCase(Locale.ROOT)) {
+            case "hour": return "hour";
+            case "day": return "day";
+            case "month": return "month";
+            default: return "week";
+        }
+    }
+
+    // Giữ định dạng kỳ như trước: tháng "2025-01", tuần/ngày "2025-01-06" (tuần bắt đầu thứ 2), giờ "2025-01-06T13:00"
+    private static String formatPeriod(LocalDateTime periodStart, String unit) {
+        switch (unit) {
+            case "month": return YearMonth.from(periodStart).toString();
+            case "hour": return periodStart.toString();
+            default: return periodStart.toLocalDate().toString();
+        }
+    }
 
-        return bucket.entrySet().stream()
-                .map(e -> {
-                    Map<String, Object> m = new HashMap<>();
-                    m.put("period", e.getKey());
-                    m.put("amount", e.getValue());
-                    return m;
-                })
-                .collect(Collectors.toList());
+    private static LocalDateTime toLocalDateTime(Object value) {
+        if (value instanceof LocalDateTime ldt) return ldt;
+        if (value instanceof java.sql.Timestamp ts) return ts.toLocalDateTime();
+        if (value instanceof OffsetDateTime odt) return odt.toLocalDateTime();
+        throw new IllegalStateException("Kiểu dữ liệu kỳ không hỗ trợ: " + value.getClass());
     }
 }
@@ -0,0 +1,187 @@
+package com.gym.service.gymmanagementservice.services;
+
+import com.gym.service.gymmanagementservice.models.CheckInLog;
+import com.gym.service.gymmanagementservice.models.CheckInStatus;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ghi bất đồng bộ các dòng CheckInLog chỉ mang tính kiểm toán (check-in thất bại, thông báo).
+ * Các dòng được đưa vào hàng đợi giới hạn và một luồng nền ghi theo lô bằng JDBC batch insert,
+ * để việc quét lỗi liên tục không chiếm thời gian xử lý tại cổng.
+ * Khi ứng dụng dừng, phần còn lại trong hàng đợi được ghi hết trước khi đóng DataSource.
+ */
+@Component
+@Slf4j
+public class CheckInAuditLogWriter implements SmartLifecycle {
+
+    private static final String INSERT_SQL = "INSERT INTO check_in_logs (member_id, member_package_id, check_in_time, status, message) " +
+            "VALUES (?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final BlockingQueue<PendingLog> queue;
+    private final int batchSize;
+    private final Counter droppedCounter;
+    private final Counter writtenCounter;
+    private final Counter failedCounter;
+
+    private volatile boolean running = false;
+    private Thread worker;
+
+    public CheckInAuditLogWriter(JdbcTemplate jdbcTemplate,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${checkin.audit-log.queue-capacity:10000}") int queueCapacity,
+                                 @Value("${checkin.audit-log.batch-size:200}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.droppedCounter = meterRegistry.counter("checkin.audit_log.dropped");
+        this.writtenCounter = meterRegistry.counter("checkin.audit_log.written");
+        this.failedCounter = meterRegistry.counter("checkin.audit_log.failed");
+        meterRegistry.gauge("checkin.audit_log.queue.depth", queue, BlockingQueue::size);
+    }
+
+    /**
+     * Đưa 1 dòng log vào hàng đợi, không bao giờ chặn luồng gọi.
+     * @return false nếu hàng đợi đầy và dòng log bị bỏ
+     */
+    public boolean enqueue(Long memberId, Long memberPackageId, CheckInStatus status, String message, OffsetDateTime checkInTime) {
+        boolean accepted = queue.offer(new PendingLog(memberId, memberPackageId, checkInTime, status, message));
+        if (!accepted) {
+            droppedCounter.increment();
+            log.warn("Hàng đợi log check-in đầy, bỏ log {} của hội viên {}", status, memberId);
+        }
+        return accepted;
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    private void drainLoop() {
+        List<PendingLog> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingLog first = queue.poll(500, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                flush(batch);
+            } catch (InterruptedException e) {
+                // Bị đánh thức khi dừng: vòng lặp tiếp tục cho đến khi hàng đợi rỗng
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<PendingLog> batch) {
+        try {
+            insert(batch);
+            writtenCounter.increment(batch.size());
+        } catch (Exception e) {
+            failedCounter.increment(batch.size());
+            log.error("Lỗi khi ghi lô {} log check-in", batch.size(), e);
+        }
+    }
+
+    /**
+     * Ghi đồng bộ 1 lô log (kể cả log SUCCESS) bằng 1 lần JDBC batch insert,
+     * tham gia transaction hiện tại của luồng gọi (lỗi sẽ rollback cả transaction đó).
+     * @param logs Các CheckInLog chưa được lưu (chỉ đọc member, memberPackage, checkInTime, status, message)
+     */
+    public void insertAll(List<CheckInLog> logs) {
+        if (logs.isEmpty()) return;
+        List<PendingLog> rows = new ArrayList<>(logs.size());
+        for (CheckInLog l : logs) {
+            rows.add(new PendingLog(
+                    l.getMember() != null ? l.getMember().getId() : null,
+                    l.getMemberPackage() != null ? l.getMemberPackage().getId() : null,
+                    l.getCheckInTime(), l.getStatus(), l.getMessage()));
+        }
+        insert(rows);
+    }
+
+    private void insert(List<PendingLog> batch) {
+        jdbcTemplate.batchUpdate(INSERT_SQL, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                PendingLog row = batch.get(i);
+                if (row.memberId != null) ps.setLong(1, row.memberId); else ps.setNull(1, Types.BIGINT);
+                if (row.memberPackageId != null) ps.setLong(2, row.memberPackageId); else ps.setNull(2, Types.BIGINT);
+                ps.setObject(3, row.checkInTime);
+                ps.setString(4, row.status.name());
+                ps.setString(5, row.message);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return batch.size();
+            }
+        });
+    }
+
+    /** Ghi đồng bộ toàn bộ phần còn lại trong hàng đợi trên luồng hiện tại. */
+    private void drainRemaining() {
+        List<PendingLog> batch = new ArrayList<>(batchSize);
+        while (queue.drainTo(batch, batchSize) > 0) {
+            flush(batch);
+            batch.clear();
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        worker = new Thread(this::drainLoop, "checkin-audit-log-writer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (worker != null) {
+            try {
+                worker.join(10_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        drainRemaining();
+        log.info("Đã dừng bộ ghi log check-in bất đồng bộ");
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @RequiredArgsConstructor
+    private static class PendingLog {
+        private final Long memberId;
+        private final Long memberPackageId;
+        private final OffsetDateTime checkInTime;
+        private final CheckInStatus status;
+        private final String message;
+    }
+}
@@ -0,0 +1,119 @@
+package com.gym.service.gymmanagementservice.services;
+
+import com.gym.service.gymmanagementservice.dtos.CheckInResponseDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Chống quét trùng tại cổng: máy quét thường đọc cùng 1 mã 2-3 lần trong 1 giây.
+ * Trong cửa sổ debounce, các lần quét sau của cùng khoá (mã vạch/hội viên/SĐT) nhận lại kết quả của lần đầu
+ * mà không chạm DB; lần quét trùng đến khi lần đầu còn đang xử lý sẽ chờ chung kết quả đó.
+ * Dữ liệu chia thành nhiều stripe (mỗi stripe 1 khoá riêng), mỗi stripe giới hạn số mục và
+ * mục hết hạn bị xoá dần theo thứ tự chèn nên bộ nhớ không tăng trong giờ cao điểm.
+ */
+@Component
+public class CheckInDebouncer {
+
+    private static final int STRIPES = 32;
+
+    private final long windowNanos;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final Counter hitCounter;
+
+    public CheckInDebouncer(MeterRegistry meterRegistry,
+                            @Value("${checkin.debounce.window-ms:3000}") long windowMs,
+                            @Value("${checkin.debounce.max-entries:10000}") int maxEntries) {
+        this.windowNanos = windowMs * 1_000_000L;
+        int perStripe = Math.max(1, maxEntries / STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(perStripe);
+        }
+        this.hitCounter = meterRegistry.counter("checkin.debounce.hits");
+    }
+
+    /**
+     * @param key Khoá chống trùng, VD "M:{memberId}", "B:{barcode}", "P:{sđt}"
+     * @param action Xử lý check-in thật sự (chỉ chạy cho lần quét đầu tiên trong cửa sổ)
+     */
+    public CheckInResponseDTO debounce(String key, Supplier<CheckInResponseDTO> action) {
+        if (windowNanos <= 0) {
+            return action.get();
+        }
+        Stripe stripe = stripes[(key.hashCode() & 0x7fffffff) % STRIPES];
+        long now = System.nanoTime();
+        Entry existing;
+        Entry mine = null;
+        synchronized (stripe) {
+            stripe.purgeExpired(now);
+            existing = stripe.entries.get(key);
+            if (existing == null) {
+                mine = new Entry(now + windowNanos, new CompletableFuture<>());
+                stripe.entries.put(key, mine);
+            }
+        }
+
+        if (existing != null) {
+            hitCounter.increment();
+            try {
+                return existing.future.join();
+            } catch (CompletionException e) {
+                // Lần quét đầu lỗi (mục đã bị xoá): thử lại qua debouncer để chỉ 1 lần quét chờ trở thành
+                // lần quét đầu mới, các lần còn lại chờ kết quả của nó
+                return debounce(key, action);
+            }
+        }
+
+        try {
+            CheckInResponseDTO response = action.get();
+            mine.future.complete(response);
+            return response;
+        } catch (Throwable e) {
+            // Mọi lỗi (kể cả Error) đều phải hoàn tất future, nếu không các lần quét chờ bị treo mãi
+            synchronized (stripe) {
+                stripe.entries.remove(key, mine);
+            }
+            mine.future.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static final class Entry {
+        private final long expiresAtNanos;
+        private final CompletableFuture<CheckInResponseDTO> future;
+    }
+
+    private static final class Stripe {
+        // Mọi mục có cùng thời gian sống nên thứ tự chèn cũng là thứ tự hết hạn
+        private final LinkedHashMap<String, Entry> entries;
+
+        private Stripe(int maxEntries) {
+            this.entries = new LinkedHashMap<>(64, 0.75f, false) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                    return size() > maxEntries;
+                }
+            };
+        }
+
+        private void purgeExpired(long now) {
+            Iterator<Entry> it = entries.values().iterator();
+            while (it.hasNext()) {
+                if (it.next().expiresAtNanos - now > 0) {
+                    return;
+                }
+                it.remove();
+            }
+        }
+    }
+}
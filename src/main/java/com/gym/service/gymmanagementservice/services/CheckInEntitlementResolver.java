@@ -0,0 +1,104 @@
+package com.gym.service.gymmanagementservice.services;
+
+import com.gym.service.gymmanagementservice.models.*;
+import com.gym.service.gymmanagementservice.repositories.MemberRepository;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.time.OffsetDateTime;
+import java.util.*;
+
+/**
+ * Giải quyết quyền vào cửa của hội viên tại cổng check-in.
+ * Lấy hội viên, ca đang mở và tất cả gói ACTIVE (kèm GymPackage) trong 1 truy vấn,
+ * sau đó áp dụng thứ tự ưu tiên GYM_ACCESS → PER_VISIT → PT_SESSION trong bộ nhớ.
+ */
+@Service
+@RequiredArgsConstructor
+public class CheckInEntitlementResolver {
+
+    private final MemberRepository memberRepository;
+    private final DailyQrService dailyQrService;
+
+    /**
+     * @param barcode Mã vạch của hội viên hoặc token QR hằng ngày
+     * @return Thông tin quyền vào cửa, rỗng nếu không tìm thấy hội viên
+     * (chạy trong transaction của lời gọi để các entity trả về vẫn được quản lý)
+     */
+    public Optional<Entitlement> resolve(String barcode) {
+        return load(dailyQrService.verifyAndExtractMemberIdForToday(barcode), barcode);
+    }
+
+    /**
+     * Như {@link #resolve(String)} nhưng token QR được kiểm tra theo ngày của thời điểm quét
+     * (lần quét offline được cổng gửi bù sau khi mất mạng)
+     */
+    public Optional<Entitlement> resolve(String barcode, OffsetDateTime scannedAt) {
+        return load(dailyQrService.verifyAndExtractMemberIdAt(barcode, scannedAt), barcode);
+    }
+
+    private Optional<Entitlement> load(Long memberIdFromToken, String barcode) {
+        List<Object[]> rows = memberIdFromToken != null
+                ? memberRepository.findCheckInEntitlementRows(memberIdFromToken, null, SubscriptionStatus.ACTIVE)
+                : memberRepository.findCheckInEntitlementRows(null, barcode, SubscriptionStatus.ACTIVE);
+        if (rows.isEmpty()) {
+            return Optional.empty();
+        }
+
+        Member member = (Member) rows.get(0)[0];
+        Map<Long, MemberPackage> packages = new LinkedHashMap<>();
+        CheckInLog openLog = null;
+        for (Object[] row : rows) {
+            MemberPackage mp = (MemberPackage) row[1];
+            if (mp != null) {
+                packages.putIfAbsent(mp.getId(), mp);
+            }
+            CheckInLog log = (CheckInLog) row[3];
+            if (log != null && (openLog == null || log.getCheckInTime().isAfter(openLog.getCheckInTime()))) {
+                openLog = log;
+            }
+        }
+        return Optional.of(new Entitlement(member, openLog, new ArrayList<>(packages.values())));
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class Entitlement {
+        private final Member member;
+        private final CheckInLog openLog; // Ca đang mở mới nhất (null nếu không có)
+        private final List<MemberPackage> activePackages;
+
+        // ƯU TIÊN 1: Gói GYM_ACCESS, hết hạn muộn nhất trước
+        public Optional<MemberPackage> gymAccessPackage() {
+            return activePackages.stream()
+                    .filter(mp -> isType(mp, PackageType.GYM_ACCESS))
+                    .min(Comparator.comparing(MemberPackage::getEndDate, Comparator.nullsFirst(Comparator.reverseOrder())));
+        }
+
+        // ƯU TIÊN 2: Gói PER_VISIT còn hạn và còn lượt, hết hạn sớm nhất trước
+        public Optional<MemberPackage> perVisitPackage(OffsetDateTime now) {
+            return activePackages.stream()
+                    .filter(mp -> isType(mp, PackageType.PER_VISIT))
+                    .filter(mp -> mp.getEndDate() != null && mp.getEndDate().isAfter(now))
+                    .filter(Entitlement::hasRemainingSessions)
+                    .min(Comparator.comparing(MemberPackage::getEndDate));
+        }
+
+        // ƯU TIÊN 3: Gói PT_SESSION còn buổi, hết hạn muộn nhất trước
+        public Optional<MemberPackage> ptSessionPackage() {
+            return activePackages.stream()
+                    .filter(mp -> isType(mp, PackageType.PT_SESSION))
+                    .filter(Entitlement::hasRemainingSessions)
+                    .min(Comparator.comparing(MemberPackage::getEndDate, Comparator.nullsFirst(Comparator.reverseOrder())));
+        }
+
+        private static boolean isType(MemberPackage mp, PackageType type) {
+            return mp.getGymPackage() != null && mp.getGymPackage().getPackageType() == type;
+        }
+
+        private static boolean hasRemainingSessions(MemberPackage mp) {
+            return mp.getRemainingSessions() != null && mp.getRemainingSessions() > 0;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package com.gym.service.gymmanagementservice.services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Phát sự kiện check-in qua SSE tới các màn hình kiosk.
+ * - Lưu vòng đệm các sự kiện gần nhất để kiosk kết nối lại (Last-Event-ID) nhận bù sự kiện bị lỡ.
+ * - Mỗi subscriber có hàng đợi riêng có giới hạn, việc gửi chạy trên executor riêng
+ *   nên luồng HTTP xử lý check-in không bao giờ bị chặn bởi một trình duyệt chậm.
+ * - Subscriber có hàng đợi bị đầy bị loại bỏ (trình duyệt sẽ tự kết nối lại và nhận bù).
+ * - ID sự kiện có dạng "<thời điểm khởi động>-<số thứ tự>" để ID từ lần chạy trước không bị nhầm với ID mới.
+ * - Nếu không thể nhận bù đủ (sự kiện đã trôi khỏi vòng đệm, hoặc ID thuộc lần khởi động khác) kiosk nhận
+ *   sự kiện "reset" rồi bị đóng kết nối để tải lại từ đầu, thay vì chạy tiếp với một khoảng hở.
+ */
+@Component
+@Slf4j
+public class CheckInEventDispatcher {
+
+    private static final long EMITTER_TIMEOUT_MS = 30 * 60 * 1000L;
+
+    private final int subscriberQueueSize;
+    private final ReplayRing ring; // được bảo vệ bởi lock
+    private final Object lock = new Object();
+
+    private final Map<Long, Subscriber> subscribers = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberSeq = new AtomicInteger();
+    private final ExecutorService sendExecutor;
+
+    public CheckInEventDispatcher(MeterRegistry meterRegistry,
+                                  @Value("${checkin.sse.replay-size:200}") int replaySize,
+                                  @Value("${checkin.sse.subscriber-queue-size:256}") int subscriberQueueSize,
+                                  @Value("${checkin.sse.send-threads:2}") int sendThreads) {
+        // Hàng đợi của kiosk mới phải chứa được "connected" + toàn bộ vòng đệm phát lại
+        if (replaySize < 1 || subscriberQueueSize <= replaySize) {
+            throw new IllegalStateException("checkin.sse.subscriber-queue-size (" + subscriberQueueSize
+                    + ") phải lớn hơn checkin.sse.replay-size (" + replaySize + ")");
+        }
+        this.ring = new ReplayRing(replaySize, System.currentTimeMillis());
+        this.subscriberQueueSize = subscriberQueueSize;
+        AtomicInteger threadSeq = new AtomicInteger();
+        this.sendExecutor = Executors.newFixedThreadPool(sendThreads, r -> {
+            Thread t = new Thread(r, "checkin-sse-sender-" + threadSeq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        meterRegistry.gauge("checkin.sse.subscribers", subscribers, Map::size);
+    }
+
+    /**
+     * Đăng ký 1 kiosk mới
+     * @param lastEventId ID sự kiện cuối cùng kiosk đã nhận (header Last-Event-ID), null nếu kết nối mới
+     */
+    public SseEmitter subscribe(String lastEventId) {
+        SseEmitter emitter = new SseEmitter(EMITTER_TIMEOUT_MS);
+        Subscriber subscriber = new Subscriber(subscriberSeq.incrementAndGet(), emitter, new ArrayBlockingQueue<>(subscriberQueueSize));
+        emitter.onCompletion(() -> subscribers.remove(subscriber.id));
+        emitter.onTimeout(() -> subscribers.remove(subscriber.id));
+        emitter.onError(e -> subscribers.remove(subscriber.id));
+
+        subscriber.queue.offer(new Event(null, "connected", "ok"));
+        synchronized (lock) {
+            List<Event> missed = lastEventId != null ? ring.after(lastEventId) : List.of();
+            if (missed == null) {
+                // Không nhận bù đủ: báo kiosk tải lại rồi đóng, không đăng ký nhận sự kiện mới
+                log.info("Kiosk SSE #{} lỡ quá nhiều sự kiện (Last-Event-ID {}), yêu cầu tải lại", subscriber.id, lastEventId);
+                subscriber.queue.offer(new Event(null, "reset", "reload"));
+                subscriber.closing = true;
+            } else {
+                // Vừa đủ chỗ nhờ kiểm tra kích thước trong constructor
+                subscriber.queue.addAll(missed);
+                subscribers.put(subscriber.id, subscriber);
+            }
+        }
+        scheduleDrain(subscriber);
+        return emitter;
+    }
+
+    /**
+     * Phát 1 sự kiện tới tất cả kiosk, không chặn luồng gọi
+     */
+    public void publish(String name, Object data) {
+        synchronized (lock) {
+            Event event = ring.append(name, data);
+            for (Subscriber subscriber : subscribers.values()) {
+                enqueue(subscriber, event);
+            }
+        }
+        subscribers.values().forEach(this::scheduleDrain);
+    }
+
+    /**
+     * Gửi heartbeat định kỳ để proxy/trình duyệt không cắt kết nối rảnh và phát hiện sớm kết nối chết.
+     * Heartbeat không được lưu vào vòng đệm phát lại.
+     */
+    @Scheduled(fixedRateString = "${checkin.sse.heartbeat-ms:15000}")
+    public void heartbeat() {
+        broadcast("heartbeat", System.currentTimeMillis());
+    }
+
+    /**
+     * Gửi 1 sự kiện trạng thái (số người đang tập, heartbeat...) tới các kiosk đang kết nối.
+     * Không được gán ID và không lưu vào vòng đệm phát lại, để không đẩy sự kiện check-in ra khỏi vòng đệm.
+     */
+    public void broadcast(String name, Object data) {
+        Event event = new Event(null, name, data);
+        for (Subscriber subscriber : subscribers.values()) {
+            if (enqueue(subscriber, event)) {
+                scheduleDrain(subscriber);
+            }
+        }
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    private boolean enqueue(Subscriber subscriber, Event event) {
+        if (subscriber.queue.offer(event)) {
+            return true;
+        }
+        log.warn("Kiosk SSE #{} xử lý quá chậm, ngắt kết nối", subscriber.id);
+        evict(subscriber);
+        return false;
+    }
+
+    private void evict(Subscriber subscriber) {
+        if (subscribers.remove(subscriber.id) != null) {
+            subscriber.queue.clear();
+            try {
+                subscriber.emitter.complete();
+            } catch (Exception ignored) {}
+        }
+    }
+
+    private void scheduleDrain(Subscriber subscriber) {
+        if (subscriber.draining.compareAndSet(false, true)) {
+            try {
+                sendExecutor.execute(() -> drain(subscriber));
+            } catch (RejectedExecutionException e) {
+                subscriber.draining.set(false);
+            }
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        try {
+            Event event;
+            while ((event = subscriber.queue.poll()) != null) {
+                SseEmitter.SseEventBuilder builder = SseEmitter.event().name(event.name).data(event.data);
+                if (event.id != null) {
+                    builder.id(event.id);
+                }
+                subscriber.emitter.send(builder);
+            }
+            if (subscriber.closing) {
+                subscriber.emitter.complete();
+                return;
+            }
+        } catch (Exception e) {
+            evict(subscriber);
+            return;
+        } finally {
+            subscriber.draining.set(false);
+        }
+        // Có sự kiện mới được thêm sau khi vòng lặp kết thúc
+        if (!subscriber.queue.isEmpty() && subscribers.containsKey(subscriber.id)) {
+            scheduleDrain(subscriber);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        subscribers.values().forEach(s -> {
+            try {
+                s.emitter.complete();
+            } catch (Exception ignored) {}
+        });
+        subscribers.clear();
+        sendExecutor.shutdownNow();
+    }
+
+    /**
+     * Vòng đệm các sự kiện check-in gần nhất, ID "<epoch>-<số thứ tự tăng dần từ 1>"
+     * (không tự đồng bộ, gọi khi đang giữ lock)
+     */
+    static final class ReplayRing {
+        private final long epoch;
+        private final Event[] events;
+        private long nextSeq = 1;
+
+        ReplayRing(int size, long epoch) {
+            this.epoch = epoch;
+            this.events = new Event[size];
+        }
+
+        Event append(String name, Object data) {
+            long seq = nextSeq++;
+            Event event = new Event(epoch + "-" + seq, name, data);
+            events[(int) (seq % events.length)] = event;
+            return event;
+        }
+
+        /**
+         * Các sự kiện sau {@code lastEventId} theo thứ tự, hoặc null nếu không còn đủ trong vòng đệm
+         * (đã bị ghi đè, ID thuộc lần khởi động khác hoặc sai định dạng)
+         */
+        List<Event> after(String lastEventId) {
+            long lastSeq = seqOf(lastEventId);
+            if (lastSeq < 0 || lastSeq >= nextSeq || lastSeq + 1 < nextSeq - events.length) {
+                return null;
+            }
+            List<Event> missed = new ArrayList<>((int) (nextSeq - lastSeq - 1));
+            for (long seq = lastSeq + 1; seq < nextSeq; seq++) {
+                missed.add(events[(int) (seq % events.length)]);
+            }
+            return missed;
+        }
+
+        // Số thứ tự trong ID, -1 nếu ID sai định dạng hoặc không thuộc lần khởi động này
+        private long seqOf(String eventId) {
+            int dash = eventId.indexOf('-');
+            if (dash <= 0) {
+                return -1;
+            }
+            try {
+                if (Long.parseLong(eventId.substring(0, dash)) != epoch) {
+                    return -1;
+                }
+                return Long.parseLong(eventId.substring(dash + 1));
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+    }
+
+    @RequiredArgsConstructor
+    static class Event {
+        final String id; // null với sự kiện không cần phát lại (connected, heartbeat, occupancy, reset)
+        final String name;
+        final Object data;
+    }
+
+    @RequiredArgsConstructor
+    private static class Subscriber {
+        private final long id;
+        private final SseEmitter emitter;
+        private final BlockingQueue<Event> queue;
+        private final AtomicBoolean draining = new AtomicBoolean(false);
+        private volatile boolean closing; // Đóng kết nối sau khi gửi hết hàng đợi
+    }
+}
@@ -2,103 +2,129 @@ package com.gym.service.gymmanagementservice.services;
 
 import com.gym.service.gymmanagementservice.dtos.CheckInRequestDTO;
 import com.gym.service.gymmanagementservice.dtos.CheckInResponseDTO;
+import com.gym.service.gymmanagementservice.dtos.OfflineScanDTO;
 import com.gym.service.gymmanagementservice.models.*;
 import com.gym.service.gymmanagementservice.repositories.CheckInLogRepository;
 import com.gym.service.gymmanagementservice.repositories.MemberPackageRepository;
-import com.gym.service.gymmanagementservice.repositories.MemberRepository;
+import com.gym.service.gymmanagementservice.repositories.OfflineScanRepository;
 import com.gym.service.gymmanagementservice.repositories.PtSessionLogRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.time.LocalTime; // <-- IMPORT MỚI
 import java.time.OffsetDateTime;
 import java.time.ZoneId; // <-- IMPORT MỚI
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalInt;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class CheckInService {
 
-    private final MemberRepository memberRepository;
     private final MemberPackageRepository memberPackageRepository;
     private final CheckInLogRepository checkInLogRepository;
-    private final DailyQrService dailyQrService;
+    private final CheckInEntitlementResolver entitlementResolver;
+    private final CheckInAuditLogWriter auditLogWriter;
+    private final SessionConsumptionService sessionConsumptionService;
     private final PtSessionLogRepository ptSessionLogRepository;
+    private final OccupancyTracker occupancyTracker;
+    private final LiveMetricsStore liveMetricsStore;
+    private final AnalyticsCache analyticsCache;
+    private final OfflineScanRepository offlineScanRepository;
 
     // MỚI: Định nghĩa múi giờ của phòng gym (để kiểm tra off-peak)
     private final ZoneId gymTimeZone = ZoneId.of("Asia/Ho_Chi_Minh");
 
+    // Cổng online: log SUCCESS ghi đồng bộ, log thất bại ghi bất đồng bộ
+    private final LogSink gateLogSink = this::createLog;
+
     /**
      * HÀM MỚI: Kiểm tra xem thời gian check-in có nằm trong khung giờ cho phép không
+     * (thứ trong tuần + khung giờ, dùng rule đã biên dịch sẵn của gói)
      * @param now Thời điểm check-in (UTC)
-     * @param pkg Gói tập (chứa
+     * @param pkg Gói tập
      * @return true nếu hợp lệ, false nếu vi phạm
      */
     private boolean isCheckInTimeValid(OffsetDateTime now, MemberPackage pkg) {
-        LocalTime startTime = pkg.getGymPackage().getStartTimeLimit();
-        LocalTime endTime = pkg.getGymPackage().getEndTimeLimit();
-
-        // Nếu gói không có giới hạn (startTime hoặc endTime là null), luôn hợp lệ
-        if (startTime == null || endTime == null) {
-            // vẫn kiểm tra thứ trong tuần nếu có cấu hình allowedWeekdays
-            return isWeekdayAllowed(now, pkg);
-        }
-
-        // Lấy giờ địa phương tại phòng gym (VD: 10:30 sáng)
-        LocalTime localCheckInTime = now.atZoneSameInstant(gymTimeZone).toLocalTime();
-
-        // Kiểm tra
-        // Ví dụ: [09:00 - 16:00]
-        // Hợp lệ: localCheckInTime >= 09:00 VÀ localCheckInTime <= 16:00
-        // (Lưu ý: isBefore/isAfter không bao gồm bằng)
-        boolean isAfterOrEqualStart = !localCheckInTime.isBefore(startTime);
-        boolean isBeforeOrEqualEnd = !localCheckInTime.isAfter(endTime);
-
-        return isAfterOrEqualStart && isBeforeOrEqualEnd && isWeekdayAllowed(now, pkg);
+        int offsetSeconds = gymTimeZone.getRules().getOffset(now.toInstant()).getTotalSeconds();
+        return pkg.getAccessRule().allows(now.toEpochSecond(), offsetSeconds);
     }
 
-    private boolean isWeekdayAllowed(OffsetDateTime now, MemberPackage pkg) {
-        String allowed = pkg.getAllowedWeekdays();
-        if (allowed == null || allowed.isBlank()) return true;
-        java.util.Set<String> set = java.util.Arrays.stream(allowed.split(","))
-                .map(String::trim)
-                .map(String::toUpperCase)
-                .collect(java.util.stream.Collectors.toSet());
-        String dow = now.atZoneSameInstant(gymTimeZone).getDayOfWeek().name().substring(0,3); // MON,TUE,...
-        return set.contains(dow);
-    }
-
-
     @Transactional
     public CheckInResponseDTO performCheckIn(CheckInRequestDTO request) {
         OffsetDateTime now = OffsetDateTime.now(); // Dùng 1 mốc thời gian (UTC)
+        return evaluateCheckIn(entitlementResolver.resolve(request.getBarcode()), now, gateLogSink);
+    }
 
-        Optional<Member> memberOpt;
-        Long memberIdFromToken = dailyQrService.verifyAndExtractMemberIdForToday(request.getBarcode());
-        if (memberIdFromToken != null) {
-            memberOpt = memberRepository.findById(memberIdFromToken);
-        } else {
-            memberOpt = memberRepository.findByBarcode(request.getBarcode());
+    /**
+     * Xử lý các lần quét offline của CÙNG 1 mã (đã sắp theo thời điểm quét của thiết bị) trong 1 transaction.
+     * Mỗi lần quét được đánh giá tại đúng thời điểm quét; toàn bộ log được ghi bằng 1 lần batch insert ở cuối.
+     * Kết quả của các lần quét có scanId được lưu cùng transaction; nếu 1 lô gửi lại chạy song song đã lưu trước,
+     * unique (thiết bị, scanId) làm transaction này rollback (kể cả lượt đã trừ).
+     * @return Kết quả theo đúng thứ tự các lần quét
+     */
+    @Transactional
+    public List<CheckInResponseDTO> performOfflineCheckIns(String deviceId, List<OfflineScanDTO> scans) {
+        BatchLogSink sink = new BatchLogSink();
+        List<CheckInResponseDTO> results = new ArrayList<>(scans.size());
+        List<OfflineScan> processed = new ArrayList<>(scans.size());
+        for (OfflineScanDTO scan : scans) {
+            OffsetDateTime scannedAt = scan.getScannedAt();
+            CheckInResponseDTO result = evaluateCheckIn(entitlementResolver.resolve(scan.getBarcode(), scannedAt), scannedAt, sink);
+            results.add(result);
+            if (scan.getScanId() != null) {
+                processed.add(OfflineScan.builder()
+                        .deviceId(deviceId)
+                        .scanId(scan.getScanId())
+                        .scannedAt(scannedAt)
+                        .status(result.getStatus())
+                        .message(result.getMessage())
+                        .memberFullName(result.getMemberFullName())
+                        .packageName(result.getPackageName())
+                        .packageEndDate(result.getPackageEndDate())
+                        .build());
+            }
+        }
+        offlineScanRepository.saveAll(processed);
+        auditLogWriter.insertAll(sink.logs);
+        for (CheckInLog entry : sink.logs) {
+            liveMetricsStore.recordCheckIn(entry.getStatus(), entry.getCheckInTime());
+            analyticsCache.invalidate(AnalyticsCache.Source.CHECK_INS, entry.getCheckInTime());
+        }
+        for (CheckInLog opened : sink.openByMember.values()) {
+            occupancyTracker.sessionOpened(opened.getMemberPackage());
         }
+        return results;
+    }
 
+    /**
+     * Áp dụng quy tắc check-in tại thời điểm {@code now}
+     * @param logSink Nơi ghi log của lần quét (ghi ngay tại cổng, hoặc gom lại với lô offline)
+     */
+    private CheckInResponseDTO evaluateCheckIn(Optional<CheckInEntitlementResolver.Entitlement> entitlementOpt,
+                                               OffsetDateTime now, LogSink logSink) {
         // Không tìm thấy hội viên
-        if (memberOpt.isEmpty()) {
-            createLog(null, null, CheckInStatus.FAILED_MEMBER_NOT_FOUND, "Mã vạch/QR không tồn tại hoặc hết hạn.");
+        if (entitlementOpt.isEmpty()) {
+            logSink.write(null, null, CheckInStatus.FAILED_MEMBER_NOT_FOUND, "Mã vạch/QR không tồn tại hoặc hết hạn.", now);
             return CheckInResponseDTO.builder()
                     .status(CheckInStatus.FAILED_MEMBER_NOT_FOUND)
                     .message("Không tìm thấy hội viên!")
                     .build();
         }
 
-        Member member = memberOpt.get();
+        CheckInEntitlementResolver.Entitlement entitlement = entitlementOpt.get();
+        Member member = entitlement.getMember();
 
-        Optional<CheckInLog> openLogOpt = checkInLogRepository
-                .findTopByMemberIdAndCheckOutTimeIsNullOrderByCheckInTimeDesc(member.getId());
-        if (openLogOpt.isPresent()) {
-            CheckInLog open = openLogOpt.get();
+        CheckInLog open = entitlement.getOpenLog() != null
+                ? entitlement.getOpenLog()
+                : logSink.pendingOpenLog(member.getId());
+        if (open != null) {
             MemberPackage pkg = open.getMemberPackage();
             String msg = "Check-in thành công!";
             if (pkg != null && pkg.getGymPackage() != null) {
@@ -114,12 +140,7 @@ public class CheckInService {
         }
 
         // ƯU TIÊN 1: Kiểm tra gói GYM_ACCESS (vào cửa không giới hạn)
-        Optional<MemberPackage> activeGymAccessPackageOpt = memberPackageRepository
-                .findFirstByMemberIdAndStatusAndGymPackage_PackageTypeOrderByEndDateDesc(
-                        member.getId(),
-                        SubscriptionStatus.ACTIVE,
-                        PackageType.GYM_ACCESS
-                );
+        Optional<MemberPackage> activeGymAccessPackageOpt = entitlement.gymAccessPackage();
 
         if (activeGymAccessPackageOpt.isPresent()) {
             MemberPackage activePackage = activeGymAccessPackageOpt.get();
@@ -135,7 +156,7 @@ public class CheckInService {
                             activePackage.getGymPackage().getEndTimeLimit());
 
                     log.warn("Check-in thất bại (Off-Peak) cho hội viên {}: {}", member.getId(), errorMsg);
-                    createLog(member, activePackage, CheckInStatus.FAILED_OFF_PEAK_TIME, errorMsg);
+                    logSink.write(member, activePackage, CheckInStatus.FAILED_OFF_PEAK_TIME, errorMsg, now);
 
                     // Trả về lỗi Off-Peak và dừng lại (không tìm gói PER_VISIT nữa)
                     return CheckInResponseDTO.builder()
@@ -147,7 +168,7 @@ public class CheckInService {
                             .build();
                 }
 
-                createLog(member, activePackage, CheckInStatus.SUCCESS, "Đang tập (Gói thời hạn).");
+                logSink.write(member, activePackage, CheckInStatus.SUCCESS, "Đang tập (Gói thời hạn).", now);
                 return CheckInResponseDTO.builder()
                         .status(CheckInStatus.SUCCESS)
                         .message("Đang tập")
@@ -159,14 +180,7 @@ public class CheckInService {
         }
 
         // ƯU TIÊN 2: Kiểm tra gói PER_VISIT (vào cửa theo lượt)
-        Optional<MemberPackage> activePerVisitPackageOpt = memberPackageRepository
-                .findFirstByMemberIdAndStatusAndGymPackage_PackageTypeAndEndDateAfterAndRemainingSessionsGreaterThanOrderByEndDateAsc(
-                        member.getId(),
-                        SubscriptionStatus.ACTIVE,
-                        PackageType.PER_VISIT,
-                        now, // Phải còn hạn
-                        0  // Phải còn lượt
-                );
+        Optional<MemberPackage> activePerVisitPackageOpt = entitlement.perVisitPackage(now);
 
         if (activePerVisitPackageOpt.isPresent()) {
             MemberPackage perVisitPackage = activePerVisitPackageOpt.get();
@@ -179,7 +193,7 @@ public class CheckInService {
                         perVisitPackage.getGymPackage().getEndTimeLimit());
 
                 log.warn("Check-in thất bại (Off-Peak) cho hội viên {}: {}", member.getId(), errorMsg);
-                createLog(member, perVisitPackage, CheckInStatus.FAILED_OFF_PEAK_TIME, errorMsg);
+                logSink.write(member, perVisitPackage, CheckInStatus.FAILED_OFF_PEAK_TIME, errorMsg, now);
 
                 // Trả về lỗi Off-Peak
                 return CheckInResponseDTO.builder()
@@ -191,20 +205,28 @@ public class CheckInService {
                         .build();
             }
 
-            // TRỪ 1 LƯỢT CHECK-IN
-            int remaining = perVisitPackage.getRemainingSessions() - 1;
-            perVisitPackage.setRemainingSessions(remaining);
+            // TRỪ 1 LƯỢT CHECK-IN (nguyên tử, tránh 2 lần quét đồng thời cùng dùng lượt cuối)
+            OptionalInt consumed = sessionConsumptionService.consume(perVisitPackage);
+            if (consumed.isEmpty()) {
+                logSink.write(member, perVisitPackage, CheckInStatus.FAILED_NO_ACTIVE_PACKAGE, "Gói theo lượt đã hết lượt.", now);
+                return CheckInResponseDTO.builder()
+                        .status(CheckInStatus.FAILED_NO_ACTIVE_PACKAGE)
+                        .message("Gói đã hết lượt!")
+                        .memberFullName(member.getFullName())
+                        .packageName(perVisitPackage.getGymPackage().getName())
+                        .packageEndDate(perVisitPackage.getEndDate())
+                        .build();
+            }
+            int remaining = consumed.getAsInt();
 
             String message = String.format("Đang tập — Còn lại %d lượt.", remaining);
             log.info("Hội viên {}: {}", member.getId(), message);
 
             if (remaining == 0) {
-                perVisitPackage.setStatus(SubscriptionStatus.EXPIRED);
                 log.info("Gói Per-Visit ID {} đã hết lượt và chuyển sang EXPIRED.", perVisitPackage.getId());
             }
 
-            memberPackageRepository.save(perVisitPackage);
-            createLog(member, perVisitPackage, CheckInStatus.SUCCESS, message);
+            logSink.write(member, perVisitPackage, CheckInStatus.SUCCESS, message, now);
             return CheckInResponseDTO.builder()
                     .status(CheckInStatus.SUCCESS)
                     .message(message)
@@ -215,13 +237,7 @@ public class CheckInService {
         }
 
         // ƯU TIÊN 3: Kiểm tra gói PT_SESSION (gói PT)
-        Optional<MemberPackage> activePtPackageOpt = memberPackageRepository
-                .findFirstByMemberIdAndStatusAndGymPackage_PackageTypeAndRemainingSessionsGreaterThanOrderByEndDateDesc(
-                        member.getId(),
-                        SubscriptionStatus.ACTIVE,
-                        PackageType.PT_SESSION,
-                        0  // Phải còn buổi
-                );
+        Optional<MemberPackage> activePtPackageOpt = entitlement.ptSessionPackage();
 
         if (activePtPackageOpt.isPresent()) {
             MemberPackage ptPackage = activePtPackageOpt.get();
@@ -230,10 +246,10 @@ public class CheckInService {
             if (ptPackage.getEndDate() != null && ptPackage.getEndDate().isBefore(now)) {
                 log.warn("Gói PT_SESSION ID {} có status ACTIVE nhưng đã hết hạn.", ptPackage.getId());
             } else {
-                // TRỪ 1 BUỔI TẬP PT
-                int remaining = ptPackage.getRemainingSessions() != null ? ptPackage.getRemainingSessions() - 1 : -1;
-                if (remaining < 0) {
-                    createLog(member, ptPackage, CheckInStatus.FAILED_NO_ACTIVE_PACKAGE, "Gói PT đã hết buổi tập.");
+                // TRỪ 1 BUỔI TẬP PT (nguyên tử)
+                OptionalInt consumed = sessionConsumptionService.consume(ptPackage);
+                if (consumed.isEmpty()) {
+                    logSink.write(member, ptPackage, CheckInStatus.FAILED_NO_ACTIVE_PACKAGE, "Gói PT đã hết buổi tập.", now);
                     return CheckInResponseDTO.builder()
                             .status(CheckInStatus.FAILED_NO_ACTIVE_PACKAGE)
                             .message("Gói PT đã hết buổi tập!")
@@ -243,17 +259,15 @@ public class CheckInService {
                             .build();
                 }
 
-                ptPackage.setRemainingSessions(remaining);
+                int remaining = consumed.getAsInt();
                 String message = String.format("Đang tập PT — Còn lại %d buổi.", remaining);
                 log.info("Hội viên {}: {}", member.getId(), message);
 
                 if (remaining == 0) {
-                    ptPackage.setStatus(SubscriptionStatus.EXPIRED);
                     log.info("Gói PT_SESSION ID {} đã hết buổi và chuyển sang EXPIRED.", ptPackage.getId());
                 }
 
-                memberPackageRepository.save(ptPackage);
-                
+
                 // Tạo PtSessionLog để hiển thị trong lịch tập
                 User ptUser = ptPackage.getAssignedPt();
                 if (ptUser == null) {
@@ -270,7 +284,7 @@ public class CheckInService {
                     ptSessionLogRepository.save(ptSessionLog);
                 }
                 
-                createLog(member, ptPackage, CheckInStatus.SUCCESS, message);
+                logSink.write(member, ptPackage, CheckInStatus.SUCCESS, message, now);
                 return CheckInResponseDTO.builder()
                         .status(CheckInStatus.SUCCESS)
                         .message(message)
@@ -282,7 +296,7 @@ public class CheckInService {
         }
 
         // KHÔNG TÌM THẤY GÓI NÀO HỢP LỆ
-        createLog(member, null, CheckInStatus.FAILED_NO_ACTIVE_PACKAGE, "Hội viên không có gói tập (Gói thời hạn/Gói theo lượt/Gói PT) nào đang hoạt động.");
+        logSink.write(member, null, CheckInStatus.FAILED_NO_ACTIVE_PACKAGE, "Hội viên không có gói tập (Gói thời hạn/Gói theo lượt/Gói PT) nào đang hoạt động.", now);
         return CheckInResponseDTO.builder()
                 .status(CheckInStatus.FAILED_NO_ACTIVE_PACKAGE)
                 .message("Hội viên không có gói tập nào đang hoạt động!")
@@ -290,15 +304,69 @@ public class CheckInService {
                 .build();
     }
 
-    private void createLog(Member member, MemberPackage memberPackage, CheckInStatus status, String message) {
+    private void createLog(Member member, MemberPackage memberPackage, CheckInStatus status, String message, OffsetDateTime checkInTime) {
+        liveMetricsStore.recordCheckIn(status, checkInTime);
+        analyticsCache.invalidate(AnalyticsCache.Source.CHECK_INS, checkInTime);
+        // Log thất bại chỉ dùng để kiểm toán: ghi bất đồng bộ theo lô, không chiếm thời gian của cổng
+        if (status != CheckInStatus.SUCCESS) {
+            auditLogWriter.enqueue(
+                    member != null ? member.getId() : null,
+                    memberPackage != null ? memberPackage.getId() : null,
+                    status, message, checkInTime);
+            return;
+        }
+
+        // Log SUCCESS mở ca tập: ghi đồng bộ vì các lần quét sau cần thấy ca đang mở
         CheckInLog log = CheckInLog.builder()
                 .member(member)
                 .memberPackage(memberPackage)
-                .checkInTime(OffsetDateTime.now())
+                .checkInTime(checkInTime)
                 .status(status)
                 .message(message)
                 .build();
         checkInLogRepository.save(log);
+        occupancyTracker.sessionOpened(memberPackage);
+    }
+
+    /**
+     * Nơi ghi log của 1 lần quét
+     */
+    private interface LogSink {
+        void write(Member member, MemberPackage memberPackage, CheckInStatus status, String message, OffsetDateTime checkInTime);
+
+        // Ca SUCCESS đã mở trong cùng lô nhưng chưa được ghi xuống DB (cổng online ghi ngay nên luôn null)
+        default CheckInLog pendingOpenLog(Long memberId) {
+            return null;
+        }
+    }
+
+    /**
+     * Gom log của 1 lô quét offline để ghi bằng 1 lần batch insert,
+     * đồng thời nhớ ca vừa mở để các lần quét sau trong lô thấy hội viên "Đang tập"
+     */
+    private static class BatchLogSink implements LogSink {
+        private final List<CheckInLog> logs = new ArrayList<>();
+        private final Map<Long, CheckInLog> openByMember = new HashMap<>();
+
+        @Override
+        public void write(Member member, MemberPackage memberPackage, CheckInStatus status, String message, OffsetDateTime checkInTime) {
+            CheckInLog entry = CheckInLog.builder()
+                    .member(member)
+                    .memberPackage(memberPackage)
+                    .checkInTime(checkInTime)
+                    .status(status)
+                    .message(message)
+                    .build();
+            logs.add(entry);
+            if (status == CheckInStatus.SUCCESS && member != null) {
+                openByMember.put(member.getId(), entry);
+            }
+        }
+
+        @Override
+        public CheckInLog pendingOpenLog(Long memberId) {
+            return openByMember.get(memberId);
+        }
     }
 
     @Transactional
@@ -309,8 +377,7 @@ public class CheckInService {
 
         Member member = mp.getMember();
 
-        Optional<CheckInLog> openLogOpt = checkInLogRepository
-                .findTopByMemberPackageIdAndCheckOutTimeIsNullOrderByCheckInTimeDesc(memberPackageId);
+        Optional<CheckInLog> openLogOpt = checkInLogRepository.findOpenSessionByMemberPackageId(memberPackageId);
         if (openLogOpt.isPresent()) {
             return CheckInResponseDTO.builder()
                     .status(CheckInStatus.SUCCESS)
@@ -341,7 +408,7 @@ public class CheckInService {
 
         if (!isCheckInTimeValid(now, mp)) {
             String errorMsg = "Gói chỉ hợp lệ trong khung giờ quy định";
-            createLog(member, mp, CheckInStatus.FAILED_OFF_PEAK_TIME, errorMsg);
+            createLog(member, mp, CheckInStatus.FAILED_OFF_PEAK_TIME, errorMsg, now);
             return CheckInResponseDTO.builder()
                     .status(CheckInStatus.FAILED_OFF_PEAK_TIME)
                     .message(errorMsg)
@@ -352,8 +419,8 @@ public class CheckInService {
         }
 
         if (mp.getGymPackage().getPackageType() == PackageType.PER_VISIT) {
-            int remaining = mp.getRemainingSessions() != null ? mp.getRemainingSessions() - 1 : -1;
-            if (remaining < 0) {
+            OptionalInt consumed = sessionConsumptionService.consume(mp);
+            if (consumed.isEmpty()) {
                 return CheckInResponseDTO.builder()
                         .status(CheckInStatus.FAILED_NO_ACTIVE_PACKAGE)
                         .message("Gói đã hết lượt")
@@ -362,12 +429,8 @@ public class CheckInService {
                         .packageEndDate(mp.getEndDate())
                         .build();
             }
-            mp.setRemainingSessions(remaining);
-            if (remaining == 0) {
-                mp.setStatus(SubscriptionStatus.EXPIRED);
-            }
-            memberPackageRepository.save(mp);
-            createLog(member, mp, CheckInStatus.SUCCESS, String.format("Đang tập — Còn lại %d lượt.", remaining));
+            int remaining = consumed.getAsInt();
+            createLog(member, mp, CheckInStatus.SUCCESS, String.format("Đang tập — Còn lại %d lượt.", remaining), now);
             return CheckInResponseDTO.builder()
                     .status(CheckInStatus.SUCCESS)
                     .message(String.format("Đang tập — Còn lại %d lượt.", remaining))
@@ -378,8 +441,8 @@ public class CheckInService {
         }
 
         if (mp.getGymPackage().getPackageType() == PackageType.PT_SESSION) {
-            int remaining = mp.getRemainingSessions() != null ? mp.getRemainingSessions() - 1 : -1;
-            if (remaining < 0) {
+            OptionalInt consumed = sessionConsumptionService.consume(mp);
+            if (consumed.isEmpty()) {
                 return CheckInResponseDTO.builder()
                         .status(CheckInStatus.FAILED_NO_ACTIVE_PACKAGE)
                         .message("Gói PT đã hết buổi tập")
@@ -388,11 +451,7 @@ public class CheckInService {
                         .packageEndDate(mp.getEndDate())
                         .build();
             }
-            mp.setRemainingSessions(remaining);
-            if (remaining == 0) {
-                mp.setStatus(SubscriptionStatus.EXPIRED);
-            }
-            memberPackageRepository.save(mp);
+            int remaining = consumed.getAsInt();
             
             // Tạo PtSessionLog để hiển thị trong lịch tập
             User ptUser = mp.getAssignedPt();
@@ -406,7 +465,7 @@ public class CheckInService {
                 ptSessionLogRepository.save(ptSessionLog);
             }
             
-            createLog(member, mp, CheckInStatus.SUCCESS, String.format("Đang tập PT — Còn lại %d buổi.", remaining));
+            createLog(member, mp, CheckInStatus.SUCCESS, String.format("Đang tập PT — Còn lại %d buổi.", remaining), now);
             return CheckInResponseDTO.builder()
                     .status(CheckInStatus.SUCCESS)
                     .message(String.format("Đang tập PT — Còn lại %d buổi.", remaining))
@@ -417,7 +476,7 @@ public class CheckInService {
         }
 
         // For GYM_ACCESS packages, create new check-in log
-        createLog(member, mp, CheckInStatus.SUCCESS, "Đang tập (Gói thời hạn).");
+        createLog(member, mp, CheckInStatus.SUCCESS, "Đang tập (Gói thời hạn).", now);
         return CheckInResponseDTO.builder()
                 .status(CheckInStatus.SUCCESS)
                 .message("Đã vào phòng tập")
@@ -432,8 +491,7 @@ public class CheckInService {
         OffsetDateTime now = OffsetDateTime.now();
         MemberPackage mp = memberPackageRepository.findById(memberPackageId)
                 .orElseThrow(() -> new jakarta.persistence.EntityNotFoundException("Không tìm thấy đăng ký gói."));
-        Optional<CheckInLog> openLogOpt = checkInLogRepository
-                .findTopByMemberPackageIdAndCheckOutTimeIsNullOrderByCheckInTimeDesc(memberPackageId);
+        Optional<CheckInLog> openLogOpt = checkInLogRepository.findOpenSessionByMemberPackageId(memberPackageId);
         if (openLogOpt.isEmpty()) {
             return CheckInResponseDTO.builder()
                     .status(CheckInStatus.FAILED_NO_ACTIVE_PACKAGE)
@@ -449,6 +507,7 @@ public class CheckInService {
             log.setSessionDurationSeconds(seconds);
         }
         checkInLogRepository.save(log);
+        occupancyTracker.sessionClosed(log.getMemberPackage());
         return CheckInResponseDTO.builder()
                 .status(CheckInStatus.SUCCESS)
                 .message("Đã ra về")
@@ -461,7 +520,7 @@ public class CheckInService {
 
     @Transactional(readOnly = true)
     public java.util.Optional<CheckInLog> getActiveCheckInByMemberId(Long memberId) {
-        return checkInLogRepository.findTopByMemberIdAndCheckOutTimeIsNullOrderByCheckInTimeDesc(memberId);
+        return checkInLogRepository.findOpenSessionByMemberId(memberId);
     }
 
     @Transactional(readOnly = true)
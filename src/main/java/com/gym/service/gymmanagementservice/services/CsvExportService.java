@@ -0,0 +1,351 @@
+package com.gym.service.gymmanagementservice.services;
+
+import com.gym.service.gymmanagementservice.dtos.TransactionReportFilterDTO;
+import com.gym.service.gymmanagementservice.models.CheckInStatus;
+import com.gym.service.gymmanagementservice.models.SaleStatus;
+import com.gym.service.gymmanagementservice.models.TransactionKind;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Xuất CSV dạng luồng: đọc bằng con trỏ JDBC 1 chiều (fetch size cố định, transaction chỉ đọc)
+ * và ghi thẳng từng dòng ra response, nên bộ nhớ không phụ thuộc số dòng xuất.
+ * File có BOM UTF-8 để Excel đọc đúng tiếng Việt; thời gian theo giờ phòng gym.
+ */
+@Service
+@Slf4j
+public class CsvExportService {
+
+    private static final ZoneId ZONE = ZoneId.of("Asia/Ho_Chi_Minh");
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final DateTimeFormatter FILE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmm");
+    private static final MediaType CSV_TYPE = MediaType.parseMediaType("text/csv; charset=UTF-8");
+    private static final MediaType GZIP_TYPE = MediaType.parseMediaType("application/gzip");
+
+    private static final String TRANSACTIONS_SQL = "SELECT t.id, t.transaction_date, t.kind, t.status, t.payment_method, t.amount, " +
+            "u.fullname, p.name, COALESCE(m.fullname, sm.fullname), t.member_package_id, t.sale_id " +
+            "FROM transactions t " +
+            "JOIN users u ON u.id = t.created_by_user_id " +
+            "LEFT JOIN member_packages mp ON mp.id = t.member_package_id " +
+            "LEFT JOIN packages p ON p.id = mp.package_id " +
+            "LEFT JOIN members m ON m.id = mp.member_id " +
+            "LEFT JOIN sales s ON s.id = t.sale_id " +
+            "LEFT JOIN members sm ON sm.id = s.member_id";
+    private static final String SALE_LINES_SQL = "SELECT s.id, s.sale_date, s.status, sd.product_id, pr.name, sd.quantity, sd.price_at_sale, " +
+            "sd.price_at_sale * sd.quantity, m.fullname, u.fullname " +
+            "FROM sale_details sd " +
+            "JOIN sales s ON s.id = sd.sale_id " +
+            "JOIN products pr ON pr.id = sd.product_id " +
+            "JOIN users u ON u.id = s.user_id " +
+            "LEFT JOIN members m ON m.id = s.member_id";
+    private static final String CHECK_INS_SQL = "SELECT c.id, c.check_in_time, c.check_out_time, c.session_duration_seconds, c.status, " +
+            "c.member_id, m.fullname, m.barcode, p.name, c.message " +
+            "FROM check_in_logs c " +
+            "LEFT JOIN members m ON m.id = c.member_id " +
+            "LEFT JOIN member_packages mp ON mp.id = c.member_package_id " +
+            "LEFT JOIN packages p ON p.id = mp.package_id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final MeterRegistry meterRegistry;
+    private final int fetchSize;
+
+    public CsvExportService(JdbcTemplate jdbcTemplate,
+                            PlatformTransactionManager transactionManager,
+                            MeterRegistry meterRegistry,
+                            @Value("${report.export.fetch-size:1000}") int fetchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.meterRegistry = meterRegistry;
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Giao dịch theo cùng bộ lọc với báo cáo doanh thu, cũ nhất trước
+     */
+    public void writeTransactions(TransactionReportFilterDTO filter, OutputStream out, boolean gzip) throws IOException {
+        Query query = new Query(TRANSACTIONS_SQL);
+        query.where("t.transaction_date >= ?", filter.getStart());
+        query.where("t.transaction_date < ?", filter.getEnd());
+        query.whereIn("t.kind", filter.getKinds());
+        query.where("t.status = ?", filter.getStatus() != null ? filter.getStatus().name() : null);
+        query.where("t.payment_method = ?", filter.getPaymentMethod() != null ? filter.getPaymentMethod().name() : null);
+        query.where("t.created_by_user_id = ?", filter.getStaffId());
+        if (filter.getLink() == TransactionReportFilterDTO.Link.POS) {
+            query.where("t.sale_id IS NOT NULL AND t.member_package_id IS NULL");
+        } else if (filter.getLink() == TransactionReportFilterDTO.Link.SUBSCRIPTION) {
+            query.where("t.member_package_id IS NOT NULL");
+        }
+        query.orderBy("t.transaction_date, t.id");
+
+        export("transactions", query, out, gzip,
+                new String[]{"ID", "Thời gian", "Loại", "Trạng thái", "Hình thức", "Số tiền", "Nhân viên", "Gói tập", "Hội viên", "ID gói hội viên", "ID hoá đơn"},
+                (rs, csv) -> {
+                    csv.number(rs.getLong(1));
+                    csv.time(rs.getObject(2, OffsetDateTime.class));
+                    csv.raw(rs.getString(3));
+                    csv.raw(rs.getString(4));
+                    csv.raw(rs.getString(5));
+                    csv.raw(rs.getBigDecimal(6).toPlainString());
+                    csv.text(rs.getString(7));
+                    csv.text(rs.getString(8));
+                    csv.text(rs.getString(9));
+                    csv.number(rs.getObject(10, Long.class));
+                    csv.number(rs.getObject(11, Long.class));
+                });
+    }
+
+    /**
+     * Từng dòng sản phẩm của hoá đơn bán lẻ, cũ nhất trước
+     */
+    public void writeSaleLines(OffsetDateTime start, OffsetDateTime end, SaleStatus status, OutputStream out, boolean gzip) throws IOException {
+        Query query = new Query(SALE_LINES_SQL);
+        query.where("s.sale_date >= ?", start);
+        query.where("s.sale_date < ?", end);
+        query.where("s.status = ?", status != null ? status.name() : null);
+        query.orderBy("s.sale_date, s.id, sd.id");
+
+        export("sale-lines", query, out, gzip,
+                new String[]{"ID hoá đơn", "Thời gian", "Trạng thái", "ID sản phẩm", "Sản phẩm", "Số lượng", "Đơn giá", "Thành tiền", "Hội viên", "Nhân viên"},
+                (rs, csv) -> {
+                    csv.number(rs.getLong(1));
+                    csv.time(rs.getObject(2, OffsetDateTime.class));
+                    csv.raw(rs.getString(3));
+                    csv.number(rs.getLong(4));
+                    csv.text(rs.getString(5));
+                    csv.number(rs.getLong(6));
+                    csv.raw(rs.getBigDecimal(7).toPlainString());
+                    csv.raw(rs.getBigDecimal(8).toPlainString());
+                    csv.text(rs.getString(9));
+                    csv.text(rs.getString(10));
+                });
+    }
+
+    /**
+     * Lịch sử check-in/check-out theo cùng bộ lọc với trang lịch sử check-in, cũ nhất trước
+     */
+    public void writeCheckIns(OffsetDateTime start, OffsetDateTime end, Long memberId, Long packageId, CheckInStatus status,
+                              OutputStream out, boolean gzip) throws IOException {
+        Query query = new Query(CHECK_INS_SQL);
+        query.where("c.check_in_time >= ?", start);
+        query.where("c.check_in_time < ?", end);
+        query.where("c.member_id = ?", memberId);
+        query.where("c.member_package_id = ?", packageId);
+        query.where("c.status = ?", status != null ? status.name() : null);
+        query.orderBy("c.check_in_time, c.id");
+
+        export("check-ins", query, out, gzip,
+                new String[]{"ID", "Giờ vào", "Giờ ra", "Thời lượng (giây)", "Trạng thái", "ID hội viên", "Hội viên", "Mã vạch", "Gói tập", "Ghi chú"},
+                (rs, csv) -> {
+                    csv.number(rs.getLong(1));
+                    csv.time(rs.getObject(2, OffsetDateTime.class));
+                    csv.time(rs.getObject(3, OffsetDateTime.class));
+                    csv.number(rs.getObject(4, Long.class));
+                    csv.raw(rs.getString(5));
+                    csv.number(rs.getObject(6, Long.class));
+                    csv.text(rs.getString(7));
+                    csv.text(rs.getString(8));
+                    csv.text(rs.getString(9));
+                    csv.text(rs.getString(10));
+                });
+    }
+
+    /**
+     * Tên file tải về, VD transactions-20260101-0830.csv(.gz)
+     */
+    public static String fileName(String name, boolean gzip) {
+        return name + "-" + LocalDateTime.now(ZONE).format(FILE_TIME_FORMAT) + (gzip ? ".csv.gz" : ".csv");
+    }
+
+    public static MediaType contentType(boolean gzip) {
+        return gzip ? GZIP_TYPE : CSV_TYPE;
+    }
+
+    private void export(String name, Query query, OutputStream out, boolean gzip, String[] header, RowWriter rowWriter) throws IOException {
+        long startedAt = System.nanoTime();
+        GZIPOutputStream gzipStream = gzip ? new GZIPOutputStream(out, 8192) : null;
+        CsvWriter csv = new CsvWriter(new BufferedWriter(new OutputStreamWriter(gzip ? gzipStream : out, StandardCharsets.UTF_8), 16384));
+        csv.bom();
+        for (String column : header) {
+            csv.text(column);
+        }
+        csv.endRow();
+
+        long[] rows = new long[1];
+        try {
+            readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.query(con -> {
+                PreparedStatement ps = con.prepareStatement(query.sql(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                ps.setFetchSize(fetchSize);
+                List<Object> params = query.params;
+                for (int i = 0; i < params.size(); i++) {
+                    ps.setObject(i + 1, params.get(i));
+                }
+                return ps;
+            }, rs -> {
+                try {
+                    rowWriter.write(rs, csv);
+                    csv.endRow();
+                    rows[0]++;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+        } catch (UncheckedIOException e) {
+            // Client ngắt kết nối giữa chừng: transaction đã rollback, con trỏ đã đóng
+            log.info("Dừng xuất {} sau {} dòng: {}", name, rows[0], e.getCause().getMessage());
+            throw e.getCause();
+        }
+        csv.flush();
+        if (gzipStream != null) {
+            gzipStream.finish();
+        }
+        out.flush();
+        meterRegistry.counter("report.export.rows", "type", name).increment(rows[0]);
+        log.info("Đã xuất {} dòng {} trong {} ms", rows[0], name, (System.nanoTime() - startedAt) / 1_000_000);
+    }
+
+    @FunctionalInterface
+    private interface RowWriter {
+        void write(ResultSet rs, CsvWriter csv) throws SQLException, IOException;
+    }
+
+    /**
+     * Câu truy vấn với điều kiện WHERE chỉ gồm các bộ lọc có giá trị
+     */
+    private static final class Query {
+        private final StringBuilder sql;
+        private final List<Object> params = new ArrayList<>();
+        private boolean hasWhere;
+
+        private Query(String select) {
+            this.sql = new StringBuilder(select);
+        }
+
+        private void where(String condition, Object param) {
+            if (param == null) {
+                return;
+            }
+            sql.append(hasWhere ? " AND " : " WHERE ").append(condition);
+            hasWhere = true;
+            params.add(param);
+        }
+
+        private void where(String condition) {
+            sql.append(hasWhere ? " AND " : " WHERE ").append(condition);
+            hasWhere = true;
+        }
+
+        private void whereIn(String column, Set<TransactionKind> kinds) {
+            if (kinds == null || kinds.isEmpty()) {
+                return;
+            }
+            sql.append(hasWhere ? " AND " : " WHERE ").append(column).append(" IN (");
+            hasWhere = true;
+            boolean first = true;
+            for (TransactionKind kind : kinds) {
+                sql.append(first ? "?" : ", ?");
+                params.add(kind.name());
+                first = false;
+            }
+            sql.append(')');
+        }
+
+        private void orderBy(String columns) {
+            sql.append(" ORDER BY ").append(columns);
+        }
+
+        private String sql() {
+            return sql.toString();
+        }
+    }
+
+    /**
+     * Ghi CSV theo RFC 4180; ô văn bản bắt đầu bằng = + - @ tab hoặc CR được thêm ' để Excel không hiểu là công thức
+     */
+    private static final class CsvWriter {
+        private final Writer writer;
+        private boolean rowStarted;
+
+        private CsvWriter(Writer writer) {
+            this.writer = writer;
+        }
+
+        private void bom() throws IOException {
+            writer.write('\uFEFF');
+        }
+
+        private void raw(String value) throws IOException {
+            separator();
+            if (value != null) {
+                writer.write(value);
+            }
+        }
+
+        private void number(Long value) throws IOException {
+            raw(value != null ? value.toString() : null);
+        }
+
+        private void time(OffsetDateTime value) throws IOException {
+            raw(value != null ? TIME_FORMAT.format(value.atZoneSameInstant(ZONE)) : null);
+        }
+
+        private void text(String value) throws IOException {
+            separator();
+            if (value == null || value.isEmpty()) {
+                return;
+            }
+            char first = value.charAt(0);
+            boolean formula = first == '=' || first == '+' || first == '-' || first == '@'
+                    || first == '\t' || first == '\r';
+            boolean quote = formula || value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+                    || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+            if (!quote) {
+                writer.write(value);
+                return;
+            }
+            writer.write('"');
+            if (formula) {
+                writer.write('\'');
+            }
+            writer.write(value.replace("\"", "\"\""));
+            writer.write('"');
+        }
+
+        private void separator() throws IOException {
+            if (rowStarted) {
+                writer.write(',');
+            }
+            rowStarted = true;
+        }
+
+        private void endRow() throws IOException {
+            writer.write("\r\n");
+            rowStarted = false;
+        }
+
+        private void flush() throws IOException {
+            writer.flush();
+        }
+    }
+}
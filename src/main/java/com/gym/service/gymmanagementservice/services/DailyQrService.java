@@ -1,77 +1,177 @@
 package com.gym.service.gymmanagementservice.services;
 
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.time.OffsetDateTime;
 import java.time.ZoneId;
-import java.security.SecureRandom;
+import java.time.format.DateTimeFormatter;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 @Service
 public class DailyQrService {
 
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
     @Value("${application.security.jwt.secret-key}")
     private String secretKey;
 
     private final ZoneId zoneId = ZoneId.of("Asia/Ho_Chi_Minh");
-    private final SecureRandom random = new SecureRandom();
+
+    // Mac đã init sẵn cho mỗi luồng (Mac không thread-safe, getInstance + init rất tốn kém)
+    private SecretKeySpec secretKeySpec;
+    private ThreadLocal<Mac> macPerThread;
+
+    // Chuỗi ngày hôm nay (yyyyMMdd) được cache tới nửa đêm theo giờ phòng gym
+    private volatile CachedDay cachedDay;
+    private volatile CachedGymToken cachedGymToken;
+
+    @PostConstruct
+    void initSigner() {
+        secretKeySpec = new SecretKeySpec(secretKey.getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM);
+        macPerThread = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+                mac.init(secretKeySpec);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Không khởi tạo được " + HMAC_ALGORITHM, e);
+            }
+        });
+    }
 
     public String generateTodayToken(Long memberId) {
-        String date = LocalDate.now(zoneId).format(java.time.format.DateTimeFormatter.BASIC_ISO_DATE); // yyyyMMdd
+        return buildMemberToken(memberId, today());
+    }
+
+    /**
+     * Phát hành token của ngày hôm nay cho nhiều hội viên trong 1 lần (dùng cho app hội viên)
+     * @return memberId → token, giữ nguyên thứ tự đầu vào
+     */
+    public Map<Long, String> generateTodayTokens(Collection<Long> memberIds) {
+        String date = today();
+        Map<Long, String> tokens = new LinkedHashMap<>(memberIds.size() * 2);
+        for (Long memberId : memberIds) {
+            tokens.put(memberId, buildMemberToken(memberId, date));
+        }
+        return tokens;
+    }
+
+    private String buildMemberToken(Long memberId, String date) {
         String payload = memberId + ":" + date;
-        String signature = hmacSha256Hex(payload, secretKey);
-        return "GQR:" + memberId + ":" + date + ":" + signature;
+        String signature = hmacSha256Hex(payload);
+        return "GQR:" + payload + ":" + signature;
     }
 
     public Long verifyAndExtractMemberIdForToday(String token) {
+        return verifyMemberToken(token, today());
+    }
+
+    /**
+     * Kiểm tra token QR hội viên theo ngày của thời điểm quét (dùng cho lần quét offline được gửi bù)
+     * @param scannedAt Thời điểm cổng quét token
+     */
+    public Long verifyAndExtractMemberIdAt(String token, OffsetDateTime scannedAt) {
+        return verifyMemberToken(token, dateOf(scannedAt.toInstant().toEpochMilli()));
+    }
+
+    private Long verifyMemberToken(String token, String expectedDate) {
         if (token == null || !token.startsWith("GQR:")) return null;
-        String[] parts = token.split(":");
-        if (parts.length != 4) return null;
+        // Định dạng: GQR:{memberId}:{yyyyMMdd}:{sig}
+        int idEnd = token.indexOf(':', 4);
+        if (idEnd < 0) return null;
+        int dateEnd = token.indexOf(':', idEnd + 1);
+        if (dateEnd < 0 || token.indexOf(':', dateEnd + 1) >= 0) return null;
         try {
-            Long memberId = Long.parseLong(parts[1]);
-            String date = parts[2];
-            String sig = parts[3];
-            String today = LocalDate.now(zoneId).format(java.time.format.DateTimeFormatter.BASIC_ISO_DATE);
-            if (!today.equals(date)) return null; // chỉ hợp lệ trong ngày
-            String expectedSig = hmacSha256Hex(memberId + ":" + date, secretKey);
-            if (!constantTimeEquals(sig, expectedSig)) return null;
+            if (!token.regionMatches(idEnd + 1, expectedDate, 0, expectedDate.length()) || dateEnd - idEnd - 1 != expectedDate.length()) {
+                return null; // chỉ hợp lệ trong ngày
+            }
+            Long memberId = Long.parseLong(token, 4, idEnd, 10);
+            String expectedSig = hmacSha256Hex(token.substring(4, dateEnd));
+            if (!constantTimeEquals(token, dateEnd + 1, expectedSig)) return null;
             return memberId;
         } catch (Exception e) {
             return null;
         }
     }
 
-    private String hmacSha256Hex(String data, String key) {
-        try {
-            Mac mac = Mac.getInstance("HmacSHA256");
-            SecretKeySpec secretKeySpec = new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
-            mac.init(secretKeySpec);
-            byte[] hash = mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
-            StringBuilder sb = new StringBuilder();
-            for (byte b : hash) sb.append(String.format("%02x", b));
-            return sb.toString();
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+    private String hmacSha256Hex(String data) {
+        Mac mac = macPerThread.get();
+        byte[] hash = mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+        char[] out = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            out[i * 2] = HEX[(hash[i] >> 4) & 0x0F];
+            out[i * 2 + 1] = HEX[hash[i] & 0x0F];
         }
+        return new String(out);
     }
 
-    private boolean constantTimeEquals(String a, String b) {
-        if (a == null || b == null || a.length() != b.length()) return false;
+    // So sánh token[offset..] với expected trong thời gian hằng số
+    private boolean constantTimeEquals(String token, int offset, String expected) {
+        if (token.length() - offset != expected.length()) return false;
         int result = 0;
-        for (int i = 0; i < a.length(); i++) result |= a.charAt(i) ^ b.charAt(i);
+        for (int i = 0; i < expected.length(); i++) result |= token.charAt(offset + i) ^ expected.charAt(i);
         return result == 0;
     }
 
-    // QR chung của phòng gym, hợp lệ trong ngày
+    private String today() {
+        return currentDay().value;
+    }
+
+    private CachedDay currentDay() {
+        CachedDay day = cachedDay;
+        long nowMillis = System.currentTimeMillis();
+        if (day == null || nowMillis >= day.validUntilMillis) {
+            LocalDate date = LocalDate.now(zoneId);
+            long start = date.atStartOfDay(zoneId).toInstant().toEpochMilli();
+            long midnight = date.plusDays(1).atStartOfDay(zoneId).toInstant().toEpochMilli();
+            day = new CachedDay(date.format(DateTimeFormatter.BASIC_ISO_DATE), start, midnight); // yyyyMMdd
+            cachedDay = day;
+        }
+        return day;
+    }
+
+    // Chuỗi ngày (yyyyMMdd) của 1 thời điểm bất kỳ, dùng lại cache nếu thuộc hôm nay
+    private String dateOf(long epochMillis) {
+        CachedDay day = currentDay();
+        if (epochMillis >= day.validFromMillis && epochMillis < day.validUntilMillis) {
+            return day.value;
+        }
+        return Instant.ofEpochMilli(epochMillis).atZone(zoneId).toLocalDate().format(DateTimeFormatter.BASIC_ISO_DATE);
+    }
+
+    // QR chung của phòng gym, hợp lệ trong ngày.
+    // Token cố định trong cả ngày (nonce suy ra từ HMAC của ngày) để ảnh QR có thể được cache.
     public String generateGymTodayToken() {
-        String date = LocalDate.now(zoneId).format(java.time.format.DateTimeFormatter.BASIC_ISO_DATE);
-        String nonce = String.format("%06d", random.nextInt(1_000_000));
+        String date = today();
+        CachedGymToken cached = cachedGymToken;
+        if (cached != null && cached.date.equals(date)) {
+            return cached.token;
+        }
+        String nonceHex = hmacSha256Hex("GYM-NONCE:" + date);
+        String nonce = String.format("%06d", Integer.parseUnsignedInt(nonceHex.substring(0, 8), 16) % 1_000_000);
         String payload = "GYM:" + date + ":" + nonce;
-        String signature = hmacSha256Hex(payload, secretKey);
-        return "GQRD:" + date + ":" + nonce + ":" + signature;
+        String signature = hmacSha256Hex(payload);
+        String token = "GQRD:" + date + ":" + nonce + ":" + signature;
+        cachedGymToken = new CachedGymToken(date, token);
+        return token;
+    }
+
+    /**
+     * Thời điểm nửa đêm kế tiếp theo giờ phòng gym (token trong ngày hết hạn lúc này)
+     */
+    public java.time.ZonedDateTime nextMidnight() {
+        return LocalDate.now(zoneId).plusDays(1).atStartOfDay(zoneId);
     }
 
     public boolean verifyGymTodayToken(String token) {
@@ -81,9 +181,30 @@ public class DailyQrService {
         String date = parts[1];
         String nonce = parts[2];
         String sig = parts[3];
-        String today = LocalDate.now(zoneId).format(java.time.format.DateTimeFormatter.BASIC_ISO_DATE);
-        if (!today.equals(date)) return false;
-        String expectedSig = hmacSha256Hex("GYM:" + date + ":" + nonce, secretKey);
-        return constantTimeEquals(sig, expectedSig);
+        if (!today().equals(date)) return false;
+        String expectedSig = hmacSha256Hex("GYM:" + date + ":" + nonce);
+        return constantTimeEquals(sig, 0, expectedSig);
+    }
+
+    private static final class CachedGymToken {
+        private final String date;
+        private final String token;
+
+        private CachedGymToken(String date, String token) {
+            this.date = date;
+            this.token = token;
+        }
+    }
+
+    private static final class CachedDay {
+        private final String value;
+        private final long validFromMillis;
+        private final long validUntilMillis;
+
+        private CachedDay(String value, long validFromMillis, long validUntilMillis) {
+            this.value = value;
+            this.validFromMillis = validFromMillis;
+            this.validUntilMillis = validUntilMillis;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,152 @@
+package com.gym.service.gymmanagementservice.services;
+
+import com.gym.service.gymmanagementservice.dtos.ReceiptDTO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Pattern;
+
+/**
+ * Biên nhận dạng lệnh ESC/POS cho máy in nhiệt tại quầy (mặc định khổ 80mm = 48 ký tự font A).
+ * Chữ được bỏ dấu về ASCII vì bảng mã tiếng Việt không đồng nhất giữa các dòng máy in.
+ * Cuối biên nhận in QR mã giao dịch rồi cắt giấy.
+ */
+@Component
+public class EscPosReceiptRenderer {
+
+    private static final byte ESC = 0x1B;
+    private static final byte GS = 0x1D;
+    private static final Pattern NON_PRINTABLE = Pattern.compile("[^\\x20-\\x7E]");
+
+    private final int columns;
+
+    public EscPosReceiptRenderer(@Value("${receipt.escpos.columns:48}") int columns) {
+        this.columns = columns;
+    }
+
+    public byte[] render(ReceiptDTO receipt) {
+        Writer w = new Writer();
+        w.cmd(ESC, '@'); // Khởi tạo máy in
+
+        w.align(1);
+        w.cmd(GS, '!', 0x11); // Chữ cao + rộng gấp đôi
+        w.line("MOUSE GYM");
+        w.cmd(GS, '!', 0x00);
+        w.cmd(ESC, 'E', 1);
+        w.line(receipt.getTitle());
+        w.cmd(ESC, 'E', 0);
+
+        w.align(0);
+        for (String info : receipt.getInfoLines()) {
+            w.wrapped(info);
+        }
+        w.line("-".repeat(columns));
+        for (ReceiptDTO.Item item : receipt.getItems()) {
+            w.wrapped(item.getName());
+            w.columns("  " + item.getQuantity() + " x " + ReceiptService.formatMoneyNoCurrency(item.getUnitPrice()),
+                    ReceiptService.formatMoneyNoCurrency(item.getAmount()));
+        }
+        w.line("-".repeat(columns));
+
+        w.cmd(ESC, 'E', 1);
+        w.cmd(GS, '!', 0x01); // Chữ cao gấp đôi, giữ nguyên độ rộng cột
+        w.columns("TONG CONG:", ReceiptService.formatMoneyNoCurrency(receipt.getTotalAmount()) + " VND");
+        w.cmd(GS, '!', 0x00);
+        w.cmd(ESC, 'E', 0);
+
+        w.align(1);
+        if (receipt.getTransactionId() != null) {
+            w.feed(1);
+            w.qr(String.valueOf(receipt.getTransactionId()));
+            w.line("Ma GD: " + receipt.getTransactionId());
+        }
+        w.line("Cam on quy khach!");
+        w.align(0);
+
+        w.cmd(ESC, 'd', 4);     // Đẩy giấy qua dao cắt
+        w.cmd(GS, 'V', 66, 0);  // Cắt một phần
+        return w.toByteArray();
+    }
+
+    private final class Writer {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream(512);
+
+        private void cmd(int... bytes) {
+            for (int b : bytes) {
+                out.write(b);
+            }
+        }
+
+        private void align(int mode) {
+            cmd(ESC, 'a', mode); // 0 = trái, 1 = giữa, 2 = phải
+        }
+
+        private void feed(int lines) {
+            cmd(ESC, 'd', lines);
+        }
+
+        private void line(String text) {
+            out.writeBytes(ascii(text).getBytes(StandardCharsets.US_ASCII));
+            out.write('\n');
+        }
+
+        // Xuống dòng theo từ khi dài hơn khổ giấy
+        private void wrapped(String text) {
+            String rest = ascii(text);
+            while (rest.length() > columns) {
+                int cut = rest.lastIndexOf(' ', columns);
+                if (cut <= 0) {
+                    cut = columns;
+                }
+                line(rest.substring(0, cut));
+                rest = rest.substring(cut).stripLeading();
+            }
+            line(rest);
+        }
+
+        // Trái ... phải trên cùng 1 dòng
+        private void columns(String left, String right) {
+            String l = ascii(left);
+            String r = ascii(right);
+            int gap = columns - l.length() - r.length();
+            if (gap < 1) {
+                line(l);
+                line(" ".repeat(Math.max(0, columns - r.length())) + r);
+            } else {
+                line(l + " ".repeat(gap) + r);
+            }
+        }
+
+        // QR model 2, ô 6 điểm, mức sửa lỗi M (lệnh GS ( k)
+        private void qr(String data) {
+            byte[] bytes = data.getBytes(StandardCharsets.US_ASCII);
+            int len = bytes.length + 3;
+            cmd(GS, '(', 'k', 4, 0, 49, 65, 50, 0);
+            cmd(GS, '(', 'k', 3, 0, 49, 67, 6);
+            cmd(GS, '(', 'k', 3, 0, 49, 69, 49);
+            cmd(GS, '(', 'k', len & 0xFF, (len >> 8) & 0xFF, 49, 80, 48);
+            out.writeBytes(bytes);
+            cmd(GS, '(', 'k', 3, 0, 49, 81, 48);
+            out.write('\n');
+        }
+
+        private byte[] toByteArray() {
+            return out.toByteArray();
+        }
+    }
+
+    private static String ascii(String text) {
+        if (text == null) {
+            return "";
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x20 || c > 0x7E) {
+                return NON_PRINTABLE.matcher(ReceiptService.sanitize(text)).replaceAll("?");
+            }
+        }
+        return text;
+    }
+}
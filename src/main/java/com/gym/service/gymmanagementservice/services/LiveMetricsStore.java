@@ -0,0 +1,256 @@
+package com.gym.service.gymmanagementservice.services;
+
+import com.gym.service.gymmanagementservice.dtos.LiveMetricsDTO;
+import com.gym.service.gymmanagementservice.models.CheckInStatus;
+import com.gym.service.gymmanagementservice.models.TransactionKind;
+import com.gym.service.gymmanagementservice.repositories.CheckInLogRepository;
+import com.gym.service.gymmanagementservice.repositories.SaleRepository;
+import com.gym.service.gymmanagementservice.repositories.TransactionRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bộ đếm thời gian thực cho dashboard quản trị, giữ trong bộ nhớ: vòng đệm 24h theo từng phút cho
+ * số lượt check-in theo trạng thái, doanh thu theo loại giao dịch và số hóa đơn bán hàng.
+ * Được cộng khi transaction ghi dữ liệu commit, nạp lại 24h gần nhất từ DB khi khởi động.
+ * Đọc số liệu không bao giờ chạm tới DB.
+ */
+@Component
+@Slf4j
+public class LiveMetricsStore {
+
+    public static final int MINUTES = 24 * 60;
+
+    private static final CheckInStatus[] STATUSES = CheckInStatus.values();
+    private static final TransactionKind[] KINDS = TransactionKind.values();
+
+    private final CheckInLogRepository checkInLogRepository;
+    private final TransactionRepository transactionRepository;
+    private final SaleRepository saleRepository;
+
+    // Các mảng dưới đây được bảo vệ bởi lock; ô thứ (phút % MINUTES) giữ số liệu của phút minuteOfSlot[ô]
+    private final Object lock = new Object();
+    private final long[] minuteOfSlot = new long[MINUTES];
+    private final long[][] checkIns = new long[STATUSES.length][MINUTES];
+    private final BigDecimal[][] revenue = new BigDecimal[KINDS.length][MINUTES];
+    private final long[] sales = new long[MINUTES];
+    private long version;
+
+    // Ảnh chụp 24h gần nhất, dùng lại cho tới khi có số liệu mới hoặc sang phút mới
+    private volatile CachedSnapshot cachedSnapshot;
+
+    public LiveMetricsStore(CheckInLogRepository checkInLogRepository,
+                            TransactionRepository transactionRepository,
+                            SaleRepository saleRepository) {
+        this.checkInLogRepository = checkInLogRepository;
+        this.transactionRepository = transactionRepository;
+        this.saleRepository = saleRepository;
+        Arrays.fill(minuteOfSlot, -1);
+    }
+
+    public void recordCheckIn(CheckInStatus status, OffsetDateTime checkInTime) {
+        afterCommit(() -> add(minuteOf(checkInTime), slot -> checkIns[status.ordinal()][slot]++));
+    }
+
+    public void recordRevenue(TransactionKind kind, BigDecimal amount, OffsetDateTime transactionDate) {
+        afterCommit(() -> add(minuteOf(transactionDate), slot -> revenue[kind.ordinal()][slot] = plus(revenue[kind.ordinal()][slot], amount)));
+    }
+
+    public void recordSale(OffsetDateTime saleDate) {
+        afterCommit(() -> add(minuteOf(saleDate), slot -> sales[slot]++));
+    }
+
+    /**
+     * Số liệu của `minutes` phút gần nhất (tính cả phút hiện tại)
+     */
+    public LiveMetricsDTO snapshot(int minutes) {
+        int count = Math.max(1, Math.min(MINUTES, minutes));
+        long nowMinute = currentMinute();
+        if (count == MINUTES) {
+            CachedSnapshot cached = cachedSnapshot;
+            if (cached != null && cached.minute == nowMinute && cached.version == currentVersion()) {
+                return cached.dto;
+            }
+        }
+
+        long firstMinute = nowMinute - count + 1;
+        Map<String, long[]> checkInSeries = new LinkedHashMap<>();
+        Map<String, BigDecimal[]> revenueSeries = new LinkedHashMap<>();
+        long[] salesSeries = new long[count];
+        long snapshotVersion;
+        synchronized (lock) {
+            snapshotVersion = version;
+            for (CheckInStatus status : STATUSES) {
+                long[] series = new long[count];
+                for (int i = 0; i < count; i++) {
+                    int slot = slotOf(firstMinute + i);
+                    if (minuteOfSlot[slot] == firstMinute + i) {
+                        series[i] = checkIns[status.ordinal()][slot];
+                    }
+                }
+                checkInSeries.put(status.name(), series);
+            }
+            for (TransactionKind kind : KINDS) {
+                BigDecimal[] series = new BigDecimal[count];
+                for (int i = 0; i < count; i++) {
+                    int slot = slotOf(firstMinute + i);
+                    BigDecimal value = minuteOfSlot[slot] == firstMinute + i ? revenue[kind.ordinal()][slot] : null;
+                    series[i] = value != null ? value : BigDecimal.ZERO;
+                }
+                revenueSeries.put(kind.name(), series);
+            }
+            for (int i = 0; i < count; i++) {
+                int slot = slotOf(firstMinute + i);
+                if (minuteOfSlot[slot] == firstMinute + i) {
+                    salesSeries[i] = sales[slot];
+                }
+            }
+        }
+
+        LiveMetricsDTO dto = LiveMetricsDTO.builder()
+                .from(OffsetDateTime.ofInstant(Instant.ofEpochSecond(firstMinute * 60), ZoneOffset.UTC))
+                .minutes(count)
+                .checkIns(checkInSeries)
+                .revenue(revenueSeries)
+                .sales(salesSeries)
+                .build();
+        if (count == MINUTES) {
+            cachedSnapshot = new CachedSnapshot(nowMinute, snapshotVersion, dto);
+        }
+        return dto;
+    }
+
+    /**
+     * Nạp 24h gần nhất từ DB khi khởi động (3 truy vấn gom nhóm theo phút).
+     * Các phút trước mốc nạp được thay bằng số liệu từ DB để không cộng trùng sự kiện ghi nhận trong lúc khởi động.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void seed() {
+        long untilMinute = currentMinute();
+        long fromMinute = untilMinute - MINUTES + 1;
+        OffsetDateTime since = OffsetDateTime.ofInstant(Instant.ofEpochSecond(fromMinute * 60), ZoneOffset.UTC);
+        OffsetDateTime until = OffsetDateTime.ofInstant(Instant.ofEpochSecond(untilMinute * 60), ZoneOffset.UTC);
+
+        long[][] freshCheckIns = new long[STATUSES.length][MINUTES];
+        BigDecimal[][] freshRevenue = new BigDecimal[KINDS.length][MINUTES];
+        long[] freshSales = new long[MINUTES];
+        for (Object[] row : checkInLogRepository.countByMinuteAndStatus(since, until)) {
+            freshCheckIns[CheckInStatus.valueOf((String) row[1]).ordinal()][slotOf(((Number) row[0]).longValue())] = ((Number) row[2]).longValue();
+        }
+        for (Object[] row : transactionRepository.sumCompletedAmountByMinuteAndKind(since, until)) {
+            freshRevenue[TransactionKind.valueOf((String) row[1]).ordinal()][slotOf(((Number) row[0]).longValue())] = (BigDecimal) row[2];
+        }
+        for (Object[] row : saleRepository.countPaidByMinute(since, until)) {
+            freshSales[slotOf(((Number) row[0]).longValue())] = ((Number) row[1]).longValue();
+        }
+
+        synchronized (lock) {
+            for (long minute = fromMinute; minute < untilMinute; minute++) {
+                int slot = slotOf(minute);
+                minuteOfSlot[slot] = minute;
+                for (int s = 0; s < STATUSES.length; s++) {
+                    checkIns[s][slot] = freshCheckIns[s][slot];
+                }
+                for (int k = 0; k < KINDS.length; k++) {
+                    revenue[k][slot] = freshRevenue[k][slot];
+                }
+                sales[slot] = freshSales[slot];
+            }
+            version++;
+        }
+        log.info("Đã nạp số liệu thời gian thực 24h gần nhất từ DB");
+    }
+
+    private void add(long minute, SlotUpdate update) {
+        long nowMinute = currentMinute();
+        // Chỉ giữ 24h gần nhất (bỏ qua sự kiện quá cũ hoặc ở tương lai do lệch đồng hồ)
+        if (minute <= nowMinute - MINUTES || minute > nowMinute) {
+            return;
+        }
+        int slot = slotOf(minute);
+        synchronized (lock) {
+            if (minuteOfSlot[slot] != minute) {
+                if (minuteOfSlot[slot] > minute) {
+                    return;
+                }
+                resetSlot(slot, minute);
+            }
+            update.apply(slot);
+            version++;
+        }
+    }
+
+    private void resetSlot(int slot, long minute) {
+        minuteOfSlot[slot] = minute;
+        for (long[] series : checkIns) {
+            series[slot] = 0;
+        }
+        for (BigDecimal[] series : revenue) {
+            series[slot] = null;
+        }
+        sales[slot] = 0;
+    }
+
+    private long currentVersion() {
+        synchronized (lock) {
+            return version;
+        }
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private static BigDecimal plus(BigDecimal current, BigDecimal amount) {
+        return current == null ? amount : current.add(amount);
+    }
+
+    private static long currentMinute() {
+        return Math.floorDiv(System.currentTimeMillis(), 60_000L);
+    }
+
+    private static long minuteOf(OffsetDateTime time) {
+        return Math.floorDiv(time.toEpochSecond(), 60L);
+    }
+
+    private static int slotOf(long minute) {
+        return (int) Math.floorMod(minute, (long) MINUTES);
+    }
+
+    private interface SlotUpdate {
+        void apply(int slot);
+    }
+
+    private static final class CachedSnapshot {
+        private final long minute;
+        private final long version;
+        private final LiveMetricsDTO dto;
+
+        private CachedSnapshot(long minute, long version, LiveMetricsDTO dto) {
+            this.minute = minute;
+            this.version = version;
+            this.dto = dto;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.gym.service.gymmanagementservice.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Luồng SSE số liệu thời gian thực cho dashboard quản trị.
+ * Mỗi chu kỳ chỉ dựng và serialize số liệu 1 lần rồi gửi cùng 1 chuỗi JSON cho mọi người xem,
+ * nên chi phí không phụ thuộc số người xem. Người xem còn đang nhận khung trước (mạng chậm) sẽ bị bỏ qua khung này.
+ */
+@Component
+@Slf4j
+public class LiveMetricsStreamService {
+
+    private static final long EMITTER_TIMEOUT_MS = 30 * 60 * 1000L;
+    // Mỗi khung gửi phút hiện tại và phút liền trước (phút trước có thể vừa nhận thêm sự kiện trễ)
+    private static final int UPDATE_MINUTES = 2;
+
+    private final LiveMetricsStore metricsStore;
+    private final ObjectMapper objectMapper;
+    private final Map<Long, Subscriber> subscribers = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberSeq = new AtomicInteger();
+    private final ExecutorService sendExecutor;
+
+    public LiveMetricsStreamService(LiveMetricsStore metricsStore,
+                                    ObjectMapper objectMapper,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${metrics.live.send-threads:2}") int sendThreads) {
+        this.metricsStore = metricsStore;
+        this.objectMapper = objectMapper;
+        AtomicInteger threadSeq = new AtomicInteger();
+        this.sendExecutor = Executors.newFixedThreadPool(sendThreads, r -> {
+            Thread t = new Thread(r, "metrics-sse-sender-" + threadSeq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        meterRegistry.gauge("metrics.live.subscribers", subscribers, Map::size);
+    }
+
+    /**
+     * Đăng ký 1 dashboard: nhận ngay ảnh chụp 24h ("snapshot"), sau đó là các khung cập nhật ("update")
+     */
+    public SseEmitter subscribe() {
+        SseEmitter emitter = new SseEmitter(EMITTER_TIMEOUT_MS);
+        Subscriber subscriber = new Subscriber(subscriberSeq.incrementAndGet(), emitter);
+        emitter.onCompletion(() -> subscribers.remove(subscriber.id));
+        emitter.onTimeout(() -> subscribers.remove(subscriber.id));
+        emitter.onError(e -> subscribers.remove(subscriber.id));
+        subscribers.put(subscriber.id, subscriber);
+        send(subscriber, "snapshot", toJson(metricsStore.snapshot(LiveMetricsStore.MINUTES)));
+        return emitter;
+    }
+
+    @Scheduled(fixedRateString = "${metrics.live.push-ms:5000}")
+    public void push() {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        String json = toJson(metricsStore.snapshot(UPDATE_MINUTES));
+        for (Subscriber subscriber : subscribers.values()) {
+            send(subscriber, "update", json);
+        }
+    }
+
+    private void send(Subscriber subscriber, String name, String json) {
+        if (json == null || !subscriber.sending.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            sendExecutor.execute(() -> {
+                try {
+                    subscriber.emitter.send(SseEmitter.event().name(name).data(json, MediaType.APPLICATION_JSON));
+                } catch (Exception e) {
+                    evict(subscriber);
+                } finally {
+                    subscriber.sending.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            subscriber.sending.set(false);
+        }
+    }
+
+    private String toJson(Object data) {
+        try {
+            return objectMapper.writeValueAsString(data);
+        } catch (JsonProcessingException e) {
+            log.error("Không serialize được số liệu thời gian thực", e);
+            return null;
+        }
+    }
+
+    private void evict(Subscriber subscriber) {
+        if (subscribers.remove(subscriber.id) != null) {
+            try {
+                subscriber.emitter.complete();
+            } catch (Exception ignored) {}
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        subscribers.values().forEach(s -> {
+            try {
+                s.emitter.complete();
+            } catch (Exception ignored) {}
+        });
+        subscribers.clear();
+        sendExecutor.shutdownNow();
+    }
+
+    @RequiredArgsConstructor
+    private static class Subscriber {
+        private final long id;
+        private final SseEmitter emitter;
+        private final AtomicBoolean sending = new AtomicBoolean(false);
+    }
+}
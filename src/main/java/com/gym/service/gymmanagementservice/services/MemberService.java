@@ -38,6 +38,8 @@ public class MemberService {
     private final PtSessionLogRepository ptSessionLogRepository;
     private final PtBookingRepository ptBookingRepository;
     private final CloudinaryService cloudinaryService;
+    private final AnalyticsService analyticsService;
+    private final AnalyticsCache analyticsCache;
 
     @Transactional
     public MemberResponseDTO createMember(MemberRequestDTO request) {
@@ -219,6 +221,17 @@ public class MemberService {
         // Xóa tất cả CheckInLog bằng native query (trước khi xóa MemberPackage)
         checkInLogRepository.deleteAllByMemberId(memberId);
         checkInLogRepository.flush();
+        // Số liệu thống kê đã cache (kể cả khoảng quá khứ) có thể chứa dữ liệu vừa xoá (áp dụng sau khi commit)
+        org.springframework.transaction.support.TransactionSynchronizationManager.registerSynchronization(
+                new org.springframework.transaction.support.TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        analyticsService.clearClosedWeekCheckIns();
+                        analyticsCache.invalidateAll(AnalyticsCache.Source.CHECK_INS);
+                        analyticsCache.invalidateAll(AnalyticsCache.Source.TRANSACTIONS);
+                        analyticsCache.invalidateAll(AnalyticsCache.Source.SALES);
+                    }
+                });
         
         // Xóa tất cả MemberPackage (kể cả đã CANCELLED) bằng native query
         memberPackageRepository.deleteAllByMemberId(memberId);
@@ -0,0 +1,142 @@
+package com.gym.service.gymmanagementservice.services;
+
+import com.gym.service.gymmanagementservice.dtos.OccupancyDTO;
+import com.gym.service.gymmanagementservice.models.MemberPackage;
+import com.gym.service.gymmanagementservice.models.PackageType;
+import com.gym.service.gymmanagementservice.repositories.CheckInLogRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.OffsetDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Số người đang có mặt trong phòng tập (số ca check-in chưa check-out), giữ trong bộ nhớ.
+ * Được cộng/trừ khi transaction check-in/check-out commit, dựng lại từ DB khi khởi động
+ * và đối chiếu định kỳ để sửa sai lệch (xoá hội viên, sửa tay dữ liệu...).
+ * Đọc số liệu không bao giờ chạm tới DB.
+ */
+@Component
+@Slf4j
+public class OccupancyTracker {
+
+    private static final PackageType[] TYPES = PackageType.values();
+    private static final int NO_PACKAGE = TYPES.length; // Ca không gắn gói tập
+
+    private final CheckInLogRepository checkInLogRepository;
+    private final CheckInEventDispatcher eventDispatcher;
+    private final AtomicIntegerArray counts = new AtomicIntegerArray(TYPES.length + 1);
+    private volatile OffsetDateTime updatedAt = OffsetDateTime.now();
+
+    public OccupancyTracker(CheckInLogRepository checkInLogRepository,
+                            CheckInEventDispatcher eventDispatcher,
+                            MeterRegistry meterRegistry) {
+        this.checkInLogRepository = checkInLogRepository;
+        this.eventDispatcher = eventDispatcher;
+        meterRegistry.gauge("checkin.occupancy", this, OccupancyTracker::getTotal);
+    }
+
+    /**
+     * Ghi nhận 1 ca mới được mở (áp dụng sau khi transaction hiện tại commit)
+     */
+    public void sessionOpened(MemberPackage memberPackage) {
+        afterCommit(slotOf(memberPackage), 1);
+    }
+
+    public void sessionClosed(MemberPackage memberPackage) {
+        afterCommit(slotOf(memberPackage), -1);
+    }
+
+    public int getTotal() {
+        int total = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    public OccupancyDTO snapshot() {
+        Map<String, Integer> byType = new LinkedHashMap<>();
+        int total = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            int count = counts.get(i);
+            byType.put(i == NO_PACKAGE ? "NONE" : TYPES[i].name(), count);
+            total += count;
+        }
+        return OccupancyDTO.builder()
+                .total(total)
+                .byPackageType(byType)
+                .updatedAt(updatedAt)
+                .build();
+    }
+
+    /**
+     * Dựng lại bộ đếm từ DB (1 truy vấn gom nhóm trên các ca đang mở)
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${checkin.occupancy.resync-ms:600000}", fixedDelayString = "${checkin.occupancy.resync-ms:600000}")
+    public synchronized void rebuild() {
+        int[] fresh = new int[counts.length()];
+        for (Object[] row : checkInLogRepository.countOpenSessionsByPackageType()) {
+            PackageType type = (PackageType) row[0];
+            fresh[type != null ? type.ordinal() : NO_PACKAGE] += ((Number) row[1]).intValue();
+        }
+        boolean changed = false;
+        for (int i = 0; i < fresh.length; i++) {
+            if (counts.getAndSet(i, fresh[i]) != fresh[i]) {
+                changed = true;
+            }
+        }
+        if (changed) {
+            touch();
+            log.info("Đã đồng bộ số người đang tập từ DB: {}", getTotal());
+        }
+    }
+
+    /**
+     * Đẩy định kỳ số người đang tập lên luồng SSE của kiosk (không lưu vào vòng đệm phát lại)
+     */
+    @Scheduled(fixedRateString = "${checkin.occupancy.push-ms:5000}")
+    public void push() {
+        if (eventDispatcher.getSubscriberCount() > 0) {
+            eventDispatcher.broadcast("occupancy", snapshot());
+        }
+    }
+
+    private void afterCommit(int slot, int delta) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apply(slot, delta);
+                }
+            });
+        } else {
+            apply(slot, delta);
+        }
+    }
+
+    private void apply(int slot, int delta) {
+        counts.getAndUpdate(slot, c -> Math.max(0, c + delta));
+        touch();
+    }
+
+    private void touch() {
+        updatedAt = OffsetDateTime.now();
+    }
+
+    private static int slotOf(MemberPackage memberPackage) {
+        if (memberPackage == null || memberPackage.getGymPackage() == null || memberPackage.getGymPackage().getPackageType() == null) {
+            return NO_PACKAGE;
+        }
+        return memberPackage.getGymPackage().getPackageType().ordinal();
+    }
+}
@@ -0,0 +1,231 @@
+package com.gym.service.gymmanagementservice.services;
+
+import com.gym.service.gymmanagementservice.dtos.CheckInResponseDTO;
+import com.gym.service.gymmanagementservice.dtos.OfflineCheckInBatchRequestDTO;
+import com.gym.service.gymmanagementservice.dtos.OfflineCheckInBatchResponseDTO;
+import com.gym.service.gymmanagementservice.dtos.OfflineScanDTO;
+import com.gym.service.gymmanagementservice.models.CheckInStatus;
+import com.gym.service.gymmanagementservice.models.OfflineScan;
+import com.gym.service.gymmanagementservice.repositories.MemberRepository;
+import com.gym.service.gymmanagementservice.repositories.OfflineScanRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.*;
+
+/**
+ * Nhận các lần quét mà cổng đã lưu tạm trong lúc mất mạng và xử lý bù.
+ * Các lần quét được sắp theo thời điểm quét của thiết bị, gom theo hội viên (mã vạch hoặc token QR),
+ * mỗi nhóm được đánh giá trong 1 transaction riêng (lỗi của 1 hội viên không làm hỏng cả lô).
+ * Lần quét có scanId đã xử lý trước đó (cổng gửi lại lô vì mất phản hồi) không được đánh giá lại,
+ * mà trả về kết quả đã lưu.
+ */
+@Service
+@Slf4j
+public class OfflineCheckInService {
+
+    private final CheckInService checkInService;
+    private final DailyQrService dailyQrService;
+    private final MemberRepository memberRepository;
+    private final OfflineScanRepository offlineScanRepository;
+    private final Duration maxAge;
+    private final Duration maxClockSkew;
+
+    public OfflineCheckInService(CheckInService checkInService,
+                                 DailyQrService dailyQrService,
+                                 MemberRepository memberRepository,
+                                 OfflineScanRepository offlineScanRepository,
+                                 @Value("${checkin.offline.max-age-hours:72}") long maxAgeHours,
+                                 @Value("${checkin.offline.max-clock-skew-seconds:300}") long maxClockSkewSeconds) {
+        this.checkInService = checkInService;
+        this.dailyQrService = dailyQrService;
+        this.memberRepository = memberRepository;
+        this.offlineScanRepository = offlineScanRepository;
+        this.maxAge = Duration.ofHours(maxAgeHours);
+        this.maxClockSkew = Duration.ofSeconds(maxClockSkewSeconds);
+    }
+
+    public OfflineCheckInBatchResponseDTO ingest(OfflineCheckInBatchRequestDTO request) {
+        List<OfflineScanDTO> scans = request.getScans();
+        OfflineCheckInBatchResponseDTO.ScanResult[] results = new OfflineCheckInBatchResponseDTO.ScanResult[scans.size()];
+
+        // Lần quét đã xử lý ở lô trước: trả lại kết quả đã lưu. Trùng trong cùng lô: dùng kết quả của lần đầu
+        Map<String, OfflineScan> stored = storedScans(request.getDeviceId(), scans);
+        Map<String, Integer> firstIndexByScanId = new HashMap<>();
+        Map<Integer, Integer> duplicateOf = new HashMap<>();
+
+        // Loại các lần quét có thời điểm bất hợp lý (đồng hồ thiết bị sai hoặc lưu quá lâu)
+        OffsetDateTime now = OffsetDateTime.now();
+        OffsetDateTime earliest = now.minus(maxAge);
+        OffsetDateTime latest = now.plus(maxClockSkew);
+        List<Integer> accepted = new ArrayList<>(scans.size());
+        for (int i = 0; i < scans.size(); i++) {
+            OfflineScanDTO scan = scans.get(i);
+            String scanId = scan.getScanId();
+            if (scanId != null && stored.containsKey(scanId)) {
+                results[i] = replayed(i, scan, stored.get(scanId));
+            } else if (scanId != null && firstIndexByScanId.containsKey(scanId)) {
+                duplicateOf.put(i, firstIndexByScanId.get(scanId));
+            } else if (scan.getScannedAt().isAfter(latest)) {
+                results[i] = rejected(i, scan, "Thời điểm quét nằm ở tương lai, kiểm tra đồng hồ thiết bị.");
+            } else if (scan.getScannedAt().isBefore(earliest)) {
+                results[i] = rejected(i, scan, "Lần quét đã quá hạn gửi bù.");
+            } else {
+                accepted.add(i);
+            }
+            if (scanId != null) {
+                firstIndexByScanId.putIfAbsent(scanId, i);
+            }
+        }
+
+        // Sắp theo thời điểm quét (giữ thứ tự gửi lên nếu trùng), rồi gom theo hội viên
+        accepted.sort(Comparator.comparing((Integer i) -> scans.get(i).getScannedAt()).thenComparing(i -> i));
+        Map<Integer, String> groupKeys = groupKeys(scans, accepted);
+        Map<String, List<Integer>> groups = new LinkedHashMap<>();
+        for (Integer i : accepted) {
+            groups.computeIfAbsent(groupKeys.get(i), k -> new ArrayList<>()).add(i);
+        }
+
+        for (List<Integer> group : groups.values()) {
+            List<OfflineScanDTO> groupScans = new ArrayList<>(group.size());
+            for (Integer i : group) {
+                groupScans.add(scans.get(i));
+            }
+            try {
+                List<CheckInResponseDTO> outcomes = checkInService.performOfflineCheckIns(request.getDeviceId(), groupScans);
+                for (int k = 0; k < group.size(); k++) {
+                    int i = group.get(k);
+                    results[i] = OfflineCheckInBatchResponseDTO.ScanResult.builder()
+                            .index(i)
+                            .scanId(scans.get(i).getScanId())
+                            .scannedAt(scans.get(i).getScannedAt())
+                            .result(outcomes.get(k))
+                            .build();
+                }
+            } catch (Exception e) {
+                log.error("Lỗi khi xử lý {} lần quét offline của thiết bị {}", group.size(), request.getDeviceId(), e);
+                for (Integer i : group) {
+                    results[i] = rejected(i, scans.get(i), "Lỗi hệ thống khi xử lý lần quét, vui lòng gửi lại.");
+                }
+            }
+        }
+
+        duplicateOf.forEach((i, first) -> results[i] = OfflineCheckInBatchResponseDTO.ScanResult.builder()
+                .index(i)
+                .scanId(scans.get(i).getScanId())
+                .scannedAt(scans.get(i).getScannedAt())
+                .result(results[first].getResult())
+                .error(results[first].getError())
+                .duplicate(true)
+                .build());
+
+        int succeeded = 0;
+        int rejectedCount = 0;
+        int duplicates = 0;
+        for (OfflineCheckInBatchResponseDTO.ScanResult result : results) {
+            if (result.isDuplicate()) {
+                duplicates++;
+            }
+            if (result.getError() != null) {
+                rejectedCount++;
+            } else if (result.getResult().getStatus() == CheckInStatus.SUCCESS) {
+                succeeded++;
+            }
+        }
+        log.info("Thiết bị {} gửi bù {} lần quét: {} thành công, {} bị từ chối, {} đã xử lý trước đó",
+                request.getDeviceId(), scans.size(), succeeded, rejectedCount, duplicates);
+
+        return OfflineCheckInBatchResponseDTO.builder()
+                .deviceId(request.getDeviceId())
+                .received(scans.size())
+                .succeeded(succeeded)
+                .rejected(rejectedCount)
+                .duplicates(duplicates)
+                .results(Arrays.asList(results))
+                .build();
+    }
+
+    /**
+     * Khoá nhóm của từng lần quét: ID hội viên nếu xác định được (token QR kiểm tra bằng HMAC,
+     * mã vạch tra 1 lần cho cả lô), nếu không thì chính mã quét
+     */
+    private Map<Integer, String> groupKeys(List<OfflineScanDTO> scans, List<Integer> accepted) {
+        Map<Integer, String> keys = new HashMap<>(accepted.size() * 2);
+        Set<String> barcodes = new HashSet<>();
+        for (Integer i : accepted) {
+            OfflineScanDTO scan = scans.get(i);
+            Long memberId = dailyQrService.verifyAndExtractMemberIdAt(scan.getBarcode(), scan.getScannedAt());
+            if (memberId != null) {
+                keys.put(i, "M:" + memberId);
+            } else {
+                barcodes.add(scan.getBarcode());
+            }
+        }
+        if (!barcodes.isEmpty()) {
+            Map<String, Long> memberIdByBarcode = new HashMap<>();
+            for (Object[] row : memberRepository.findIdsByBarcodeIn(barcodes)) {
+                memberIdByBarcode.put((String) row[1], (Long) row[0]);
+            }
+            for (Integer i : accepted) {
+                if (!keys.containsKey(i)) {
+                    String barcode = scans.get(i).getBarcode();
+                    Long memberId = memberIdByBarcode.get(barcode);
+                    keys.put(i, memberId != null ? "M:" + memberId : "B:" + barcode);
+                }
+            }
+        }
+        return keys;
+    }
+
+    private Map<String, OfflineScan> storedScans(String deviceId, List<OfflineScanDTO> scans) {
+        Set<String> scanIds = new HashSet<>();
+        for (OfflineScanDTO scan : scans) {
+            if (scan.getScanId() != null) {
+                scanIds.add(scan.getScanId());
+            }
+        }
+        if (scanIds.isEmpty()) {
+            return Map.of();
+        }
+        Map<String, OfflineScan> stored = new HashMap<>();
+        for (OfflineScan scan : offlineScanRepository.findByDeviceIdAndScanIdIn(deviceId, scanIds)) {
+            stored.put(scan.getScanId(), scan);
+        }
+        return stored;
+    }
+
+    /**
+     * Xoá các lần quét đã xử lý mà cổng không còn được phép gửi lại (cũ hơn hạn gửi bù)
+     */
+    public int purgeExpiredScans() {
+        return offlineScanRepository.deleteScannedBefore(OffsetDateTime.now().minus(maxAge).minus(maxClockSkew));
+    }
+
+    private static OfflineCheckInBatchResponseDTO.ScanResult replayed(int index, OfflineScanDTO scan, OfflineScan stored) {
+        return OfflineCheckInBatchResponseDTO.ScanResult.builder()
+                .index(index)
+                .scanId(scan.getScanId())
+                .scannedAt(stored.getScannedAt())
+                .result(CheckInResponseDTO.builder()
+                        .status(stored.getStatus())
+                        .message(stored.getMessage())
+                        .memberFullName(stored.getMemberFullName())
+                        .packageName(stored.getPackageName())
+                        .packageEndDate(stored.getPackageEndDate())
+                        .build())
+                .duplicate(true)
+                .build();
+    }
+
+    private static OfflineCheckInBatchResponseDTO.ScanResult rejected(int index, OfflineScanDTO scan, String error) {
+        return OfflineCheckInBatchResponseDTO.ScanResult.builder()
+                .index(index)
+                .scanId(scan.getScanId())
+                .scannedAt(scan.getScannedAt())
+                .error(error)
+                .build();
+    }
+}
@@ -32,6 +32,8 @@ public class PaymentService {
     private final PendingRenewalRepository pendingRenewalRepository;
     private final PendingUpgradeRepository pendingUpgradeRepository;
     private final SubscriptionService subscriptionService;
+    private final RevenueRollupService revenueRollupService;
+    private final ReceiptCache receiptCache;
 
     @Transactional
     public String createSubscriptionPaymentUrl(HttpServletRequest req, Long memberId, Long packageId) {
@@ -283,6 +285,8 @@ public class PaymentService {
         if ("00".equals(responseCode)) {
             // Thanh toán thành công
             transaction.setStatus(TransactionStatus.COMPLETED);
+            receiptCache.invalidate(ReceiptCache.Kind.TRANSACTION, transaction.getId());
+            revenueRollupService.recordTransaction(transaction);
             log.info("VNPay Transaction {} completed successfully.", transactionId);
 
             // Xử lý Gói tập
@@ -332,7 +336,9 @@ public class PaymentService {
             Sale sale = transaction.getSale();
             if (sale != null && sale.getStatus() == SaleStatus.PENDING_PAYMENT) {
                 sale.setStatus(SaleStatus.PAID);
+                receiptCache.invalidate(ReceiptCache.Kind.SALE, sale.getId());
                 saleRepository.save(sale);
+                revenueRollupService.recordSale(sale);
                 log.info("Updated Sale {} to PAID for Transaction {}.", sale.getId(), transactionId);
 
                 // *** MỚI: TRỪ TỒN KHO KHI THANH TOÁN THÀNH CÔNG ***
@@ -400,6 +406,7 @@ public class PaymentService {
         } else {
             // Thanh toán thất bại
             transaction.setStatus(TransactionStatus.FAILED);
+            receiptCache.invalidate(ReceiptCache.Kind.TRANSACTION, transaction.getId());
             log.error("VNPay Transaction {} failed with code: {}", transactionId, responseCode);
 
             // Xử lý Gói tập
@@ -414,6 +421,7 @@ public class PaymentService {
             Sale sale = transaction.getSale();
             if (sale != null && sale.getStatus() == SaleStatus.PENDING_PAYMENT) {
                 sale.setStatus(SaleStatus.PAYMENT_FAILED);
+                receiptCache.invalidate(ReceiptCache.Kind.SALE, sale.getId());
                 saleRepository.save(sale);
                 log.warn("Updated Sale {} to PAYMENT_FAILED for Transaction {}.", sale.getId(), transactionId);
                 // Không cần hoàn trả tồn kho, vì chúng ta chưa bao giờ trừ nó
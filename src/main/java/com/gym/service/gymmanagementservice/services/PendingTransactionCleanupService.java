@@ -20,6 +20,7 @@ public class PendingTransactionCleanupService {
     private final SaleRepository saleRepository;
     private final PendingRenewalRepository pendingRenewalRepository;
     private final PendingUpgradeRepository pendingUpgradeRepository;
+    private final ReceiptCache receiptCache;
 
     /**
      * Hủy/xóa các transaction PENDING quá 10 phút
@@ -64,6 +65,7 @@ public class PendingTransactionCleanupService {
                         log.info("Hủy Sale PENDING_PAYMENT (ID: {}) liên kết với transaction {}", 
                                 sale.getId(), transaction.getId());
                         sale.setStatus(SaleStatus.CANCELLED);
+                        receiptCache.invalidate(ReceiptCache.Kind.SALE, sale.getId());
                         saleRepository.save(sale);
                     }
                 }
@@ -86,6 +88,7 @@ public class PendingTransactionCleanupService {
 
                 // 5. Xóa transaction
                 transactionRepository.delete(transaction);
+                receiptCache.invalidate(ReceiptCache.Kind.TRANSACTION, transaction.getId());
                 cancelledCount++;
 
                 log.info("Đã hủy transaction PENDING (ID: {}) quá 10 phút", transaction.getId());
@@ -20,6 +20,8 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class PtManagementService {
 
+    private static final String[] WEEKDAY_LABELS = {"Thứ 2", "Thứ 3", "Thứ 4", "Thứ 5", "Thứ 6", "Thứ 7", "CN"};
+
     private final MemberPackageRepository memberPackageRepository;
     private final PtSessionLogRepository ptSessionLogRepository;
     private final TransactionRepository transactionRepository;
@@ -124,23 +126,7 @@ public class PtManagementService {
                     studentInfo.put("allowedWeekdays", mp.getAllowedWeekdays());
                     // Format các thứ để hiển thị
                     if (mp.getAllowedWeekdays() != null && !mp.getAllowedWeekdays().isBlank()) {
-                        String[] days = mp.getAllowedWeekdays().split(",");
-                        java.util.List<String> formattedDays = java.util.Arrays.stream(days)
-                                .map(String::trim)
-                                .map(day -> {
-                                    switch (day) {
-                                        case "MON": return "Thứ 2";
-                                        case "TUE": return "Thứ 3";
-                                        case "WED": return "Thứ 4";
-                                        case "THU": return "Thứ 5";
-                                        case "FRI": return "Thứ 6";
-                                        case "SAT": return "Thứ 7";
-                                        case "SUN": return "CN";
-                                        default: return day;
-                                    }
-                                })
-                                .collect(Collectors.toList());
-                        studentInfo.put("allowedWeekdaysDisplay", String.join(", ", formattedDays));
+                        studentInfo.put("allowedWeekdaysDisplay", mp.getAccessRule().formatWeekdays(WEEKDAY_LABELS, ", "));
                     } else {
                         studentInfo.put("allowedWeekdaysDisplay", "-");
                     }
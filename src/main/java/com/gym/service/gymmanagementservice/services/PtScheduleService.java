@@ -174,20 +174,7 @@ public class PtScheduleService {
                                            (endDate == null || !date.isAfter(endDate));
                         
                         // Kiểm tra ngày này có phải là thứ đã chọn không (nếu có allowedWeekdays)
-                        boolean isAllowedWeekday = true;
-                        if (mp.getAllowedWeekdays() != null && !mp.getAllowedWeekdays().isBlank()) {
-                            String[] allowedDays = mp.getAllowedWeekdays().split(",");
-                            String currentDayFull = date.getDayOfWeek().name(); // MONDAY, TUESDAY,...
-                            String currentDayShort = currentDayFull.substring(0, 3); // MON, TUE,...
-
-                            java.util.List<String> normalizedAllowedDays = java.util.Arrays.stream(allowedDays)
-                                    .map(String::trim)
-                                    .map(String::toUpperCase)
-                                    .collect(Collectors.toList());
-
-                            isAllowedWeekday = normalizedAllowedDays.contains(currentDayFull)
-                                    || normalizedAllowedDays.contains(currentDayShort);
-                        }
+                        boolean isAllowedWeekday = mp.getAccessRule().allowsWeekday(date.getDayOfWeek());
                         
                         // Log để debug
                         if (mp.getMember() != null) {
@@ -18,6 +18,7 @@ public class PtSessionService {
     private final MemberPackageRepository memberPackageRepository;
     private final PtSessionLogRepository ptSessionLogRepository;
     private final AuthenticationService authenticationService;
+    private final SessionConsumptionService sessionConsumptionService;
 
     @Transactional
     public PtSessionLog logPtSession(Long memberPackageId, String notes) {
@@ -45,16 +46,12 @@ public class PtSessionService {
             }
         }
 
-        // 1. Trừ 1 buổi tập
-        ptPackage.setRemainingSessions(ptPackage.getRemainingSessions() - 1);
-
-        // 2. Nếu hết buổi, cập nhật status
-        if (ptPackage.getRemainingSessions() == 0) {
-            ptPackage.setStatus(SubscriptionStatus.EXPIRED);
+        // 1. Trừ 1 buổi tập (nguyên tử, tự chuyển EXPIRED khi hết buổi)
+        if (sessionConsumptionService.consume(ptPackage).isEmpty()) {
+            throw new IllegalStateException("Gói PT đã hết số buổi tập.");
         }
-        memberPackageRepository.save(ptPackage);
 
-        // 3. Tạo log
+        // 2. Tạo log
         PtSessionLog log = PtSessionLog.builder()
                 .memberPackage(ptPackage)
                 .ptUser(currentUser) // Log PT đang đăng nhập là người dạy
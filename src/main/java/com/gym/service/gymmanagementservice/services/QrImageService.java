@@ -0,0 +1,148 @@
+package com.gym.service.gymmanagementservice.services;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.WriterException;
+import com.google.zxing.client.j2se.MatrixToImageWriter;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.*;
+
+/**
+ * Render và cache ảnh PNG của QR hằng ngày.
+ * Token chỉ đổi khi sang ngày mới nên ảnh PNG được cache theo nội dung (giới hạn số lượng, LRU)
+ * và bị xoá toàn bộ khi sang ngày. Ảnh QR chung của phòng gym được render sẵn ngay sau nửa đêm.
+ * Link trong ảnh QR chung chỉ dùng base URL đã cấu hình (qr.gym.base-urls), không tin header Host của request.
+ */
+@Service
+@Slf4j
+public class QrImageService {
+
+    public static final int MEMBER_QR_SIZE = 280;
+    public static final int GYM_QR_SIZE = 512;
+
+    private final DailyQrService dailyQrService;
+    private final Map<String, RenderedQr> cache;
+    // Base URL công khai được phép xuất hiện trong ảnh QR chung (ảnh chứa link /scan tuyệt đối), cái đầu là mặc định
+    private final List<String> gymBaseUrls;
+
+    public QrImageService(DailyQrService dailyQrService,
+                          @Value("${qr.image-cache.max-entries:5000}") int maxEntries,
+                          @Value("${qr.gym.base-urls:}") List<String> gymBaseUrls) {
+        this.dailyQrService = dailyQrService;
+        this.gymBaseUrls = gymBaseUrls.stream()
+                .map(String::trim)
+                .filter(url -> !url.isEmpty())
+                .map(QrImageService::stripTrailingSlash)
+                .distinct()
+                .toList();
+        if (this.gymBaseUrls.isEmpty()) {
+            log.warn("Chưa cấu hình qr.gym.base-urls: link trong QR chung lấy theo Host của request và không được render sẵn");
+        }
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, RenderedQr> eldest) {
+                return size() > maxEntries;
+            }
+        });
+    }
+
+    /**
+     * Lấy ảnh QR đã cache (không render)
+     */
+    public Optional<RenderedQr> getCached(String content, int size) {
+        return Optional.ofNullable(cache.get(cacheKey(content, size)));
+    }
+
+    public RenderedQr render(String content, int size) throws WriterException, IOException {
+        String key = cacheKey(content, size);
+        RenderedQr cached = cache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        QRCodeWriter writer = new QRCodeWriter();
+        BitMatrix matrix = writer.encode(content, BarcodeFormat.QR_CODE, size, size);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        MatrixToImageWriter.writeToStream(matrix, "PNG", baos);
+        RenderedQr rendered = new RenderedQr(baos.toByteArray(), etagOf(key));
+        cache.put(key, rendered);
+        return rendered;
+    }
+
+    /**
+     * Ảnh QR chung của phòng gym (chứa link /scan?token=...)
+     * @param requestBaseUrl Base URL suy ra từ request; chỉ được dùng nếu nằm trong danh sách cấu hình
+     *                       (hoặc khi chưa cấu hình danh sách), nếu không dùng base URL mặc định
+     */
+    public RenderedQr renderGymQr(String requestBaseUrl) throws WriterException, IOException {
+        String requested = stripTrailingSlash(requestBaseUrl);
+        String baseUrl = gymBaseUrls.isEmpty() || gymBaseUrls.contains(requested) ? requested : gymBaseUrls.get(0);
+        return render(gymScanUrl(baseUrl), GYM_QR_SIZE);
+    }
+
+    /**
+     * Thời gian còn lại tới nửa đêm (giờ phòng gym), dùng làm max-age cho HTTP cache
+     */
+    public Duration timeUntilMidnight() {
+        Duration remaining = Duration.between(ZonedDateTime.now(), dailyQrService.nextMidnight());
+        return remaining.isNegative() ? Duration.ZERO : remaining;
+    }
+
+    /**
+     * Sang ngày mới: xoá ảnh của ngày cũ và render sẵn QR chung để không client nào phải chờ encode
+     */
+    @Scheduled(cron = "1 0 0 * * *", zone = "Asia/Ho_Chi_Minh")
+    public void rollOverDay() {
+        cache.clear();
+        for (String baseUrl : gymBaseUrls) {
+            try {
+                render(gymScanUrl(baseUrl), GYM_QR_SIZE);
+            } catch (Exception e) {
+                log.error("Lỗi khi render sẵn QR chung cho {}", baseUrl, e);
+            }
+        }
+        log.info("Đã làm mới cache QR cho ngày mới, render sẵn {} ảnh QR chung", gymBaseUrls.size());
+    }
+
+    private String gymScanUrl(String baseUrl) {
+        return baseUrl + "/scan?token=" + URLEncoder.encode(dailyQrService.generateGymTodayToken(), StandardCharsets.UTF_8);
+    }
+
+    private static String stripTrailingSlash(String url) {
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+
+    private static String cacheKey(String content, int size) {
+        return size + "|" + content;
+    }
+
+    private static String etagOf(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            return "\"" + HexFormat.of().formatHex(digest, 0, 12) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class RenderedQr {
+        private final byte[] png;
+        private final String etag;
+    }
+}
@@ -0,0 +1,232 @@
+package com.gym.service.gymmanagementservice.services;
+
+import com.gym.service.gymmanagementservice.dtos.ReceiptDTO;
+import com.gym.service.gymmanagementservice.dtos.TransactionReportFilterDTO;
+import com.gym.service.gymmanagementservice.repositories.TransactionRepository;
+import com.gym.service.gymmanagementservice.utils.NativeQueryUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.multipdf.PDFMergerUtility;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Xuất hàng loạt biên nhận giao dịch theo bộ lọc báo cáo (đối soát cuối tháng): 1 file ZIP gồm từng PDF,
+ * hoặc 1 PDF nhiều trang.
+ * Id được đọc theo từng lô keyset, mỗi biên nhận được nạp bằng 1 truy vấn fetch join rồi render PDF
+ * ngoài transaction trên pool cỡ số CPU (không vượt quá nửa connection pool, để cổng check-in vẫn có kết nối).
+ * Biên nhận có sẵn trong ReceiptCache được dùng lại, nhưng bản render mới không được ghi vào cache.
+ * Chỉ một cửa sổ cố định biên nhận nằm trong bộ nhớ cùng lúc, kết quả được ghi ra theo đúng thứ tự ngày giao dịch.
+ */
+@Service
+@Slf4j
+public class ReceiptBulkExportService {
+
+    public enum Format { ZIP, PDF }
+
+    private static final int ID_BATCH_SIZE = 500;
+    private static final DateTimeFormatter FILE_DATE = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    private final TransactionRepository transactionRepository;
+    private final ReceiptService receiptService;
+    private final ReceiptCache receiptCache;
+    private final ExecutorService renderExecutor;
+    private final int window;
+    private final int maxPdfReceipts;
+    private final MeterRegistry meterRegistry;
+
+    public ReceiptBulkExportService(TransactionRepository transactionRepository,
+                                    ReceiptService receiptService,
+                                    ReceiptCache receiptCache,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${receipt.bulk.threads:0}") int threads,
+                                    @Value("${spring.datasource.hikari.maximum-pool-size:10}") int dbPoolSize,
+                                    @Value("${receipt.bulk.max-pdf-receipts:2000}") int maxPdfReceipts) {
+        this.transactionRepository = transactionRepository;
+        this.receiptService = receiptService;
+        this.receiptCache = receiptCache;
+        this.meterRegistry = meterRegistry;
+        this.maxPdfReceipts = maxPdfReceipts;
+        int poolSize = Math.min(threads > 0 ? threads : Runtime.getRuntime().availableProcessors(),
+                Math.max(1, dbPoolSize / 2));
+        this.window = poolSize * 2;
+        AtomicInteger threadSeq = new AtomicInteger();
+        this.renderExecutor = Executors.newFixedThreadPool(poolSize, r -> {
+            Thread t = new Thread(r, "receipt-render-" + threadSeq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Số biên nhận khớp bộ lọc (1 truy vấn gom nhóm), để chặn PDF gộp quá lớn trước khi bắt đầu ghi
+     */
+    public long count(TransactionReportFilterDTO filter) {
+        long count = 0;
+        for (Object[] row : transactionRepository.summarizeReport(ReportService.ZONE.getId(), startOf(filter), endOf(filter),
+                ReportService.kindsOf(filter.getKinds()), statusOf(filter), methodOf(filter), filter.getStaffId(),
+                ReportService.linkOf(filter))) {
+            count += ((Number) row[3]).longValue();
+        }
+        return count;
+    }
+
+    /**
+     * PDF gộp vẫn phải giữ cấu trúc trang trong heap tới khi lưu, nên bị giới hạn số biên nhận; ZIP thì không
+     */
+    public boolean fitsInOnePdf(TransactionReportFilterDTO filter) {
+        return count(filter) <= maxPdfReceipts;
+    }
+
+    public void export(TransactionReportFilterDTO filter, Format format, OutputStream out) throws IOException {
+        long startedAt = System.nanoTime();
+        int written;
+        if (format == Format.ZIP) {
+            try (ZipOutputStream zip = new ZipOutputStream(out)) {
+                // PDF đã nén sẵn bên trong, nén thêm chỉ tốn CPU
+                zip.setLevel(Deflater.BEST_SPEED);
+                written = render(filter, (ref, pdf) -> {
+                    zip.putNextEntry(new ZipEntry(ref.date.atZoneSameInstant(ReportService.ZONE).format(FILE_DATE)
+                            + "-transaction-" + ref.id + ".pdf"));
+                    zip.write(pdf);
+                    zip.closeEntry();
+                });
+            }
+        } else {
+            // Luồng nội dung của các trang nằm trong file tạm, heap chỉ giữ cấu trúc trang
+            try (PDDocument merged = new PDDocument(MemoryUsageSetting.setupTempFileOnly())) {
+                PDFMergerUtility merger = new PDFMergerUtility();
+                written = render(filter, (ref, pdf) -> {
+                    try (PDDocument receipt = PDDocument.load(pdf)) {
+                        merger.appendDocument(merged, receipt);
+                    }
+                });
+                merged.save(out);
+            }
+        }
+        meterRegistry.counter("report.export.rows", "type", "receipts-" + format.name().toLowerCase()).increment(written);
+        log.info("Đã xuất {} biên nhận ({}) trong {} ms", written, format, (System.nanoTime() - startedAt) / 1_000_000);
+    }
+
+    /**
+     * Render song song, ghi tuần tự theo thứ tự id; tối đa {@code window} biên nhận đang chờ ghi
+     */
+    private int render(TransactionReportFilterDTO filter, ReceiptSink sink) throws IOException {
+        OffsetDateTime end = endOf(filter);
+        List<String> kinds = ReportService.kindsOf(filter.getKinds());
+        String status = statusOf(filter);
+        String method = methodOf(filter);
+        String link = ReportService.linkOf(filter);
+        // Lô đầu: (ngày, id) > (start, 0) tương đương ngày >= start
+        OffsetDateTime afterDate = startOf(filter);
+        long afterId = 0;
+
+        ArrayDeque<Pending> pending = new ArrayDeque<>(window);
+        int written = 0;
+        try {
+            while (true) {
+                List<Object[]> batch = transactionRepository.findReportIdsAfter(afterDate, afterId, end, kinds,
+                        status, method, filter.getStaffId(), link, ID_BATCH_SIZE);
+                for (Object[] row : batch) {
+                    Ref ref = new Ref(((Number) row[0]).longValue(), NativeQueryUtil.toOffsetDateTime(row[1]));
+                    if (pending.size() >= window) {
+                        Pending head = pending.poll();
+                        sink.write(head.ref, await(head));
+                        written++;
+                    }
+                    pending.add(new Pending(ref, renderExecutor.submit(() -> renderOne(ref.id))));
+                    afterDate = ref.date;
+                    afterId = ref.id;
+                }
+                if (batch.size() < ID_BATCH_SIZE) {
+                    break;
+                }
+            }
+            while (!pending.isEmpty()) {
+                Pending head = pending.poll();
+                sink.write(head.ref, await(head));
+                written++;
+            }
+            return written;
+        } finally {
+            // Client ngắt kết nối giữa chừng: bỏ các biên nhận chưa ghi
+            pending.forEach(p -> p.future.cancel(true));
+        }
+    }
+
+    private byte[] renderOne(long transactionId) {
+        try {
+            String status = transactionRepository.findStatusById(transactionId)
+                    .orElseThrow(() -> new IllegalArgumentException("Không tìm thấy giao dịch: " + transactionId))
+                    .name();
+            Optional<ReceiptCache.Receipt> cached = receiptCache.peek(ReceiptCache.Kind.TRANSACTION, transactionId, status);
+            if (cached.isPresent()) {
+                return cached.get().toBytes();
+            }
+            // Nạp bằng 1 truy vấn fetch join; render PDF không giữ connection
+            ReceiptDTO receipt = receiptService.buildTransactionReceipt(transactionId);
+            return receiptService.renderPdf(receipt);
+        } catch (IOException | RuntimeException e) {
+            // 1 biên nhận lỗi không làm hỏng cả file: thay bằng trang báo lỗi
+            log.warn("Không render được biên nhận giao dịch {}", transactionId, e);
+            return receiptService.generateErrorReceipt("BIEN NHAN", "Khong the xuat hoa don #" + transactionId + ": " + e.getMessage());
+        }
+    }
+
+    private static byte[] await(Pending pending) throws IOException {
+        try {
+            return pending.future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Xuất biên nhận bị gián đoạn", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Không render được biên nhận giao dịch " + pending.ref.id, e.getCause());
+        }
+    }
+
+    private static OffsetDateTime startOf(TransactionReportFilterDTO filter) {
+        return filter.getStart() != null ? filter.getStart() : ReportService.MIN_DATE;
+    }
+
+    private static OffsetDateTime endOf(TransactionReportFilterDTO filter) {
+        return filter.getEnd() != null ? filter.getEnd() : ReportService.MAX_DATE;
+    }
+
+    private static String statusOf(TransactionReportFilterDTO filter) {
+        return filter.getStatus() != null ? filter.getStatus().name() : null;
+    }
+
+    private static String methodOf(TransactionReportFilterDTO filter) {
+        return filter.getPaymentMethod() != null ? filter.getPaymentMethod().name() : null;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        renderExecutor.shutdownNow();
+    }
+
+    private record Ref(long id, OffsetDateTime date) {}
+
+    private record Pending(Ref ref, Future<byte[]> future) {}
+
+    @FunctionalInterface
+    private interface ReceiptSink {
+        void write(Ref ref, byte[] pdf) throws IOException;
+    }
+}
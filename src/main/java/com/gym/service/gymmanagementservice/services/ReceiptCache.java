@@ -0,0 +1,307 @@
+package com.gym.service.gymmanagementservice.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Cache PDF biên nhận theo (loại, id, phiên bản nội dung). Phiên bản gồm trạng thái của giao dịch/hoá đơn
+ * và phiên bản bố cục, nên biên nhận đổi trạng thái sẽ không bao giờ trả về bản cũ.
+ * Hai tầng: bộ nhớ (LRU, giới hạn theo tổng byte) cho bản vừa render/in lại, và thư mục cục bộ
+ * (ghi xuyên, LRU theo tổng byte) cho phần còn lại; bản trên đĩa được gửi thẳng từ file ánh xạ bộ nhớ.
+ */
+@Component
+@Slf4j
+public class ReceiptCache {
+
+    public enum Kind { TRANSACTION, SALE }
+
+    // Tăng khi đổi bố cục/font biên nhận để bỏ toàn bộ bản đã cache
+    private static final String RENDER_VERSION = "r1";
+    private static final String SUFFIX = ".pdf";
+
+    private final Path directory;
+    private final long memoryMaxBytes;
+    private final long diskMaxBytes;
+    private final Counter memoryHits;
+    private final Counter diskHits;
+    private final Counter misses;
+
+    private final Object lock = new Object();
+    private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(256, 0.75f, true);
+    private final LinkedHashMap<String, Long> disk = new LinkedHashMap<>(1024, 0.75f, true);
+    private long memoryBytes;
+    private long diskBytes;
+
+    public ReceiptCache(MeterRegistry meterRegistry,
+                        @Value("${receipt.cache.dir:${java.io.tmpdir}/gym-receipts}") String directory,
+                        @Value("${receipt.cache.memory-max-bytes:16777216}") long memoryMaxBytes,
+                        @Value("${receipt.cache.disk-max-bytes:536870912}") long diskMaxBytes) {
+        this.directory = Path.of(directory);
+        this.memoryMaxBytes = memoryMaxBytes;
+        this.diskMaxBytes = diskMaxBytes;
+        this.memoryHits = meterRegistry.counter("receipt.cache.hits", "tier", "memory");
+        this.diskHits = meterRegistry.counter("receipt.cache.hits", "tier", "disk");
+        this.misses = meterRegistry.counter("receipt.cache.misses");
+    }
+
+    /**
+     * Nạp lại chỉ mục tầng đĩa (file cũ nhất xếp trước để bị loại trước)
+     */
+    @PostConstruct
+    void loadDiskIndex() {
+        try {
+            Files.createDirectories(directory);
+            List<Path> files;
+            try (Stream<Path> stream = Files.list(directory)) {
+                files = stream.filter(p -> p.getFileName().toString().endsWith(SUFFIX)).toList();
+            }
+            List<Map.Entry<Path, Long>> sorted = new ArrayList<>(files.size());
+            for (Path file : files) {
+                sorted.add(Map.entry(file, Files.getLastModifiedTime(file).toMillis()));
+            }
+            sorted.sort(Map.Entry.comparingByValue());
+            synchronized (lock) {
+                for (Map.Entry<Path, Long> entry : sorted) {
+                    String name = entry.getKey().getFileName().toString();
+                    long size = Files.size(entry.getKey());
+                    disk.put(name.substring(0, name.length() - SUFFIX.length()), size);
+                    diskBytes += size;
+                }
+                evictDisk();
+            }
+            log.info("Cache biên nhận: {} file ({} KB) trong {}", disk.size(), diskBytes / 1024, directory);
+        } catch (IOException e) {
+            log.warn("Không đọc được thư mục cache biên nhận {}", directory, e);
+        }
+    }
+
+    /**
+     * Lấy biên nhận từ cache, render và lưu lại nếu chưa có
+     * @param status Trạng thái hiện tại của giao dịch/hoá đơn (một phần của phiên bản nội dung)
+     */
+    public Receipt get(Kind kind, long id, String status, Renderer renderer) throws IOException {
+        String key = keyOf(kind, id, status);
+        Receipt cached = lookup(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        misses.increment();
+        byte[] pdf = renderer.render();
+        putMemory(key, pdf);
+        putDisk(key, pdf);
+        return new Receipt(key, ByteBuffer.wrap(pdf));
+    }
+
+    /**
+     * Chỉ đọc cache, không render và không ghi lại (dùng cho xuất hàng loạt để không đẩy các bản in lại ra khỏi cache)
+     */
+    public Optional<Receipt> peek(Kind kind, long id, String status) throws IOException {
+        return Optional.ofNullable(lookup(keyOf(kind, id, status)));
+    }
+
+    private Receipt lookup(String key) throws IOException {
+        byte[] cached;
+        boolean onDisk;
+        synchronized (lock) {
+            cached = memory.get(key);
+            onDisk = cached == null && disk.get(key) != null;
+        }
+        if (cached != null) {
+            memoryHits.increment();
+            return new Receipt(key, ByteBuffer.wrap(cached));
+        }
+        if (onDisk) {
+            try (FileChannel channel = FileChannel.open(fileOf(key), StandardOpenOption.READ)) {
+                // Vùng ánh xạ vẫn đọc được kể cả khi file bị loại khỏi cache ngay sau đó
+                ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                diskHits.increment();
+                return new Receipt(key, mapped);
+            } catch (NoSuchFileException e) {
+                synchronized (lock) {
+                    Long size = disk.remove(key);
+                    if (size != null) diskBytes -= size;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Bỏ mọi bản cache của 1 giao dịch/hoá đơn (áp dụng sau khi transaction hiện tại commit)
+     */
+    public void invalidate(Kind kind, long id) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evict(kind, id);
+                }
+            });
+        } else {
+            evict(kind, id);
+        }
+    }
+
+    private void evict(Kind kind, long id) {
+        String prefix = kind.name() + "-" + id + "-";
+        List<String> removed = new ArrayList<>();
+        synchronized (lock) {
+            Iterator<Map.Entry<String, byte[]>> it = memory.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, byte[]> entry = it.next();
+                if (entry.getKey().startsWith(prefix)) {
+                    memoryBytes -= entry.getValue().length;
+                    it.remove();
+                }
+            }
+            Iterator<Map.Entry<String, Long>> diskIt = disk.entrySet().iterator();
+            while (diskIt.hasNext()) {
+                Map.Entry<String, Long> entry = diskIt.next();
+                if (entry.getKey().startsWith(prefix)) {
+                    diskBytes -= entry.getValue();
+                    removed.add(entry.getKey());
+                    diskIt.remove();
+                }
+            }
+        }
+        deleteFiles(removed);
+    }
+
+    private void putMemory(String key, byte[] pdf) {
+        if (pdf.length > memoryMaxBytes) {
+            return;
+        }
+        synchronized (lock) {
+            byte[] previous = memory.put(key, pdf);
+            memoryBytes += pdf.length - (previous != null ? previous.length : 0);
+            Iterator<byte[]> it = memory.values().iterator();
+            while (memoryBytes > memoryMaxBytes && it.hasNext()) {
+                memoryBytes -= it.next().length;
+                it.remove();
+            }
+        }
+    }
+
+    private void putDisk(String key, byte[] pdf) {
+        if (pdf.length > diskMaxBytes) {
+            return;
+        }
+        Path file = fileOf(key);
+        try {
+            Path tmp = Files.createTempFile(directory, key, ".tmp");
+            Files.write(tmp, pdf);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Không ghi được biên nhận {} vào cache đĩa", key, e);
+            return;
+        }
+        List<String> removed;
+        synchronized (lock) {
+            Long previous = disk.put(key, (long) pdf.length);
+            diskBytes += pdf.length - (previous != null ? previous : 0);
+            removed = evictDisk();
+        }
+        deleteFiles(removed);
+    }
+
+    // Gọi khi đang giữ lock
+    private List<String> evictDisk() {
+        List<String> removed = new ArrayList<>();
+        Iterator<Map.Entry<String, Long>> it = disk.entrySet().iterator();
+        while (diskBytes > diskMaxBytes && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            diskBytes -= eldest.getValue();
+            removed.add(eldest.getKey());
+            it.remove();
+        }
+        return removed;
+    }
+
+    private void deleteFiles(List<String> keys) {
+        for (String key : keys) {
+            try {
+                Files.deleteIfExists(fileOf(key));
+            } catch (IOException e) {
+                log.warn("Không xoá được file cache biên nhận {}", key, e);
+            }
+        }
+    }
+
+    private static String keyOf(Kind kind, long id, String status) {
+        return kind.name() + "-" + id + "-" + status + "-" + RENDER_VERSION;
+    }
+
+    private Path fileOf(String key) {
+        return directory.resolve(key + SUFFIX);
+    }
+
+    @FunctionalInterface
+    public interface Renderer {
+        byte[] render() throws IOException;
+    }
+
+    /**
+     * 1 biên nhận đã render: nội dung nằm trong bộ nhớ heap hoặc vùng ánh xạ của file trên đĩa
+     */
+    public static final class Receipt {
+        private final String etag;
+        private final ByteBuffer content;
+
+        private Receipt(String key, ByteBuffer content) {
+            this.etag = "\"" + key + "\"";
+            this.content = content;
+        }
+
+        public int getLength() {
+            return content.remaining();
+        }
+
+        public byte[] toBytes() {
+            byte[] bytes = new byte[content.remaining()];
+            content.duplicate().get(bytes);
+            return bytes;
+        }
+
+        /**
+         * Ghi PDF ra response (304 nếu client đã có đúng phiên bản)
+         */
+        public void writeTo(HttpServletRequest request, HttpServletResponse response, String filename) throws IOException {
+            response.setHeader(HttpHeaders.ETAG, etag);
+            if (etag.equals(request.getHeader(HttpHeaders.IF_NONE_MATCH))) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+            response.setContentType(MediaType.APPLICATION_PDF_VALUE);
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + filename);
+            response.setContentLength(content.remaining());
+            OutputStream out = response.getOutputStream();
+            WritableByteChannel channel = Channels.newChannel(out);
+            ByteBuffer buffer = content.duplicate();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            out.flush();
+        }
+    }
+}
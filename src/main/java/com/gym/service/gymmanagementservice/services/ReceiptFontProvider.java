@@ -0,0 +1,69 @@
+package com.gym.service.gymmanagementservice.services;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.fontbox.ttf.TTFParser;
+import org.apache.fontbox.ttf.TrueTypeFont;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Font Unicode dùng chung cho biên nhận PDF, đóng gói sẵn trong classpath (mặc định DejaVu Sans, đủ dấu tiếng Việt).
+ * File TTF được parse đúng 1 lần khi khởi động; các bảng (cmap, metrics, glyph) được đọc sẵn và fontbox
+ * đồng bộ hoá việc đọc nên 1 TrueTypeFont dùng chung được cho mọi luồng.
+ * Mỗi tài liệu chỉ nhúng tập con glyph thực sự dùng tới.
+ */
+@Component
+@Slf4j
+public class ReceiptFontProvider {
+
+    private final Resource fontResource;
+    private volatile TrueTypeFont font;
+
+    public ReceiptFontProvider(@Value("${receipt.font.location:classpath:fonts/DejaVuSans.ttf}") Resource fontResource) {
+        this.fontResource = fontResource;
+    }
+
+    @PostConstruct
+    void init() {
+        long startedAt = System.nanoTime();
+        try (InputStream in = fontResource.getInputStream()) {
+            TrueTypeFont parsed = new TTFParser().parse(in);
+            // Đọc sẵn các bảng để biên nhận đầu tiên không phải chờ
+            parsed.getUnicodeCmapLookup();
+            parsed.getHorizontalMetrics();
+            parsed.getGlyph();
+            parsed.getOS2Windows();
+            parsed.getPostScript();
+            parsed.getNaming();
+            font = parsed;
+            log.info("Đã nạp font biên nhận {} trong {} ms", fontResource.getFilename(), (System.nanoTime() - startedAt) / 1_000_000);
+        } catch (IOException e) {
+            log.warn("Không nạp được font biên nhận {}, dùng Helvetica (bỏ dấu tiếng Việt)", fontResource, e);
+        }
+    }
+
+    /**
+     * Font Unicode cho 1 tài liệu (nhúng tập con), hoặc null nếu không có font
+     */
+    public PDType0Font load(PDDocument doc) throws IOException {
+        TrueTypeFont shared = font;
+        return shared != null ? PDType0Font.load(doc, shared, true) : null;
+    }
+
+    @PreDestroy
+    void close() throws IOException {
+        TrueTypeFont shared = font;
+        font = null;
+        if (shared != null) {
+            shared.close();
+        }
+    }
+}
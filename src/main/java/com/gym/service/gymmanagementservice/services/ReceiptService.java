@@ -1,5 +1,6 @@
 package com.gym.service.gymmanagementservice.services;
 
+import com.gym.service.gymmanagementservice.dtos.ReceiptDTO;
 import com.gym.service.gymmanagementservice.models.Sale;
 import com.gym.service.gymmanagementservice.models.Transaction;
 import com.gym.service.gymmanagementservice.repositories.SaleRepository;
@@ -17,6 +18,8 @@ import java.text.Normalizer;
 import java.io.IOException;
 import java.math.BigDecimal;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
 
 @Service
 @RequiredArgsConstructor
@@ -24,141 +27,133 @@ public class ReceiptService {
 
     private final TransactionRepository transactionRepository;
     private final SaleRepository saleRepository;
+    private final ReceiptFontProvider receiptFontProvider;
+    private final ReceiptCache receiptCache;
+    private final EscPosReceiptRenderer escPosReceiptRenderer;
 
-    public byte[] generateTransactionReceipt(Long transactionId) throws IOException {
-        Transaction tx = transactionRepository.findById(transactionId)
-                .orElseThrow(() -> new IllegalArgumentException("Không tìm thấy giao dịch: " + transactionId));
-
-        // Tính số dòng sản phẩm (có thể có nhiều dòng nếu tên dài)
-        int itemCount = tx.getSale() != null && tx.getSale().getSaleDetails() != null ? tx.getSale().getSaleDetails().size() : (tx.getMemberPackage() != null ? 1 : 0);
-        int estimatedRows = itemCount * 2; // Ước tính mỗi item có thể chiếm 2 dòng nếu tên dài
-        
-        float width = 400f; // Tăng width để có không gian cho padding
-        float height = 280f + estimatedRows * 24f; // Tăng height để có padding và khoảng cách
+    /**
+     * Biên nhận giao dịch qua cache (phiên bản theo trạng thái hiện tại của giao dịch)
+     */
+    public ReceiptCache.Receipt getTransactionReceipt(Long transactionId) throws IOException {
+        String status = transactionRepository.findStatusById(transactionId)
+                .orElseThrow(() -> new IllegalArgumentException("Không tìm thấy giao dịch: " + transactionId))
+                .name();
+        return receiptCache.get(ReceiptCache.Kind.TRANSACTION, transactionId, status, () -> generateTransactionReceipt(transactionId));
+    }
 
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        try (PDDocument doc = new PDDocument()) {
-            PDPage page = new PDPage(new org.apache.pdfbox.pdmodel.common.PDRectangle(width, height));
-            doc.addPage(page);
+    /**
+     * Biên nhận hoá đơn bán hàng qua cache (phiên bản theo trạng thái hiện tại của hoá đơn)
+     */
+    public ReceiptCache.Receipt getSaleReceipt(Long saleId) throws IOException {
+        String status = saleRepository.findStatusById(saleId)
+                .orElseThrow(() -> new IllegalArgumentException("Không tìm thấy hóa đơn: " + saleId))
+                .name();
+        return receiptCache.get(ReceiptCache.Kind.SALE, saleId, status, () -> generateSaleReceipt(saleId));
+    }
 
-            try (PDPageContentStream cs = new PDPageContentStream(doc, page)) {
-                PDType0Font font = loadUnicodeFont(doc);
-                PDType0Font mono = font;
-                if (mono == null) mono = loadSpecificFont(doc, "C:/Windows/Fonts/cour.ttf");
+    public byte[] generateTransactionReceipt(Long transactionId) throws IOException {
+        return renderPdf(buildTransactionReceipt(transactionId));
+    }
 
-                // Padding 16px = 12pt (1px ≈ 0.75pt)
-                float padding = 12f;
-                float tablePadding = 6f; // 8px = 6pt
-                float tableLeft = padding;
-                float tableRight = width - padding;
-                float tableWidth = tableRight - tableLeft;
+    public byte[] generateSaleReceipt(Long saleId) throws IOException {
+        return renderPdf(buildSaleReceipt(saleId));
+    }
 
-                // === PHẦN THÔNG TIN CHUNG ===
-                float headerSize = 18f;
-                if (font == null) cs.setFont(PDType1Font.HELVETICA_BOLD, headerSize); else cs.setFont(font, headerSize);
-                String brand = text(font, "MOUSE GYM");
-                float headerX = (width - textWidth((font != null ? font : PDType1Font.HELVETICA_BOLD), headerSize, brand)) / 2f;
-                cs.beginText();
-                cs.newLineAtOffset(headerX, height - padding - 20);
-                cs.showText(brand);
-                cs.endText();
+    /**
+     * Biên nhận giao dịch dạng lệnh ESC/POS cho máy in nhiệt
+     */
+    public byte[] generateTransactionReceiptEscPos(Long transactionId) {
+        return escPosReceiptRenderer.render(buildTransactionReceipt(transactionId));
+    }
 
-                float bodySize = 11f;
-                if (font == null) cs.setFont(PDType1Font.HELVETICA, bodySize); else cs.setFont(font, bodySize);
-                float y = height - padding - 50;
-                
-                y = writeLine(cs, (int)padding, (int)y, text(font, "PHIẾU THU"));
-                DateTimeFormatter fmt = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
-                String memberName = tx.getMemberPackage() != null && tx.getMemberPackage().getMember() != null ? tx.getMemberPackage().getMember().getFullName() : (tx.getSale() != null && tx.getSale().getMember() != null ? tx.getSale().getMember().getFullName() : "-");
-                y = writeLine(cs, (int)padding, (int)y, text(font, "Ngày: " + formatDate(tx.getTransactionDate(), fmt)));
-                y = writeLine(cs, (int)padding, (int)y, text(font, "Mã GD: " + tx.getId()));
-                y = writeLine(cs, (int)padding, (int)y, text(font, "Hình thức: " + vnPayment(tx.getPaymentMethod())));
-                y = writeLine(cs, (int)padding, (int)y, text(font, "Loại: " + vnKind(tx.getKind())));
-                if (!"-".equals(memberName)) y = writeLine(cs, (int)padding, (int)y, text(font, "Khách: " + memberName));
+    /**
+     * Biên nhận hoá đơn bán hàng dạng lệnh ESC/POS cho máy in nhiệt
+     */
+    public byte[] generateSaleReceiptEscPos(Long saleId) {
+        return escPosReceiptRenderer.render(buildSaleReceipt(saleId));
+    }
 
-                // Đường kẻ ngăn cách
-                y -= 12;
-                cs.setLineWidth(0.5f);
-                cs.setStrokingColor(0.88f, 0.88f, 0.88f); // #E0E0E0
-                cs.moveTo(tableLeft, y);
-                cs.lineTo(tableRight, y);
-                cs.stroke();
-                cs.setStrokingColor(0f, 0f, 0f); // Reset về đen
+    /**
+     * Nội dung biên nhận giao dịch. Mọi quan hệ được fetch join trong 1 truy vấn nên gọi được ngoài transaction.
+     */
+    public ReceiptDTO buildTransactionReceipt(Long transactionId) {
+        Transaction tx = transactionRepository.findForReceiptById(transactionId)
+                .orElseThrow(() -> new IllegalArgumentException("Không tìm thấy giao dịch: " + transactionId));
 
-                // === BẢNG SẢN PHẨM ===
-                y -= 20;
-                float rowHeight = 20f;
-                float fontSize = 11f;
-                if (mono != null) cs.setFont(mono, fontSize); else cs.setFont(PDType1Font.COURIER, fontSize);
+        DateTimeFormatter fmt = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
+        String memberName = tx.getMemberPackage() != null && tx.getMemberPackage().getMember() != null ? tx.getMemberPackage().getMember().getFullName() : (tx.getSale() != null && tx.getSale().getMember() != null ? tx.getSale().getMember().getFullName() : "-");
+        List<String> info = new ArrayList<>();
+        info.add("Ngày: " + formatDate(tx.getTransactionDate(), fmt));
+        info.add("Mã GD: " + tx.getId());
+        info.add("Hình thức: " + vnPayment(tx.getPaymentMethod()));
+        info.add("Loại: " + vnKind(tx.getKind()));
+        if (!"-".equals(memberName)) info.add("Khách: " + memberName);
+
+        List<ReceiptDTO.Item> items = new ArrayList<>();
+        if (tx.getMemberPackage() != null) {
+            String name = tx.getMemberPackage().getGymPackage() != null ? tx.getMemberPackage().getGymPackage().getName() : "Gói tập";
+            items.add(ReceiptDTO.Item.builder().name(name).quantity(1).unitPrice(tx.getAmount()).amount(tx.getAmount()).build());
+        } else if (tx.getSale() != null) {
+            items.addAll(itemsOf(tx.getSale()));
+        }
 
-                // Header của bảng - tính vị trí các cột
-                float col1Right = tableLeft + tableWidth * 0.50f; // Kết thúc cột Tên
-                float col2Left = col1Right + 10f; // Bắt đầu cột SL
-                float col2Right = tableLeft + tableWidth * 0.65f; // Kết thúc cột SL
-                float col3Left = col2Right + 10f; // Bắt đầu cột Đơn giá
-                float col3Right = tableLeft + tableWidth * 0.80f; // Kết thúc cột Đơn giá
-                float col4Left = col3Right + 10f; // Bắt đầu cột Thành tiền
-                float col4Right = tableRight - tablePadding; // Kết thúc cột Thành tiền
-                
-                float col1Center = tableLeft + tablePadding; // Tên (căn trái)
-                float col2Center = (col2Left + col2Right) / 2f; // SL (căn giữa)
-                float col3Center = col3Right; // Đơn giá (căn phải)
-                float col4Center = col4Right; // Thành tiền (căn phải)
+        return ReceiptDTO.builder()
+                .title("PHIẾU THU")
+                .infoLines(info)
+                .items(items)
+                .totalAmount(tx.getAmount())
+                .transactionId(tx.getId())
+                .build();
+    }
 
-                // Vẽ header với border
-                drawTableRowWithBorders(cs, y, tableLeft, tableRight, col1Center, col2Center, col3Center, col4Center,
-                        col1Right, col2Left, col2Right, col3Left, col3Right, col4Left,
-                        text(mono, "Tên"), text(mono, "SL"), text(mono, "Đơn giá"), text(mono, "Thành tiền"), 
-                        mono != null ? mono : PDType1Font.COURIER, fontSize, true);
-                y -= rowHeight;
+    /**
+     * Nội dung biên nhận hoá đơn bán hàng, nạp bằng 1 truy vấn fetch join (không cần transaction)
+     */
+    public ReceiptDTO buildSaleReceipt(Long saleId) {
+        Sale sale = saleRepository.findForReceiptById(saleId)
+                .orElseThrow(() -> new IllegalArgumentException("Không tìm thấy hóa đơn: " + saleId));
 
-                // Dòng sản phẩm
-                if (tx.getMemberPackage() != null) {
-                    String name = tx.getMemberPackage().getGymPackage() != null ? tx.getMemberPackage().getGymPackage().getName() : "Gói tập";
-                    String qty = "1";
-                    String unit = formatMoneyNoCurrency(tx.getAmount());
-                    String total = formatMoneyNoCurrency(tx.getAmount());
-                    y = drawProductRowWithBorders(cs, y, tableLeft, tableRight, col1Center, col2Center, col3Center, col4Center,
-                            col1Right, col2Left, col2Right, col3Left, col3Right, col4Left,
-                            name, qty, unit, total, mono != null ? mono : PDType1Font.COURIER, fontSize, col1Right - col1Center - tablePadding);
-                } else if (tx.getSale() != null && tx.getSale().getSaleDetails() != null) {
-                    for (var d : tx.getSale().getSaleDetails()) {
-                        String name = d.getProduct() != null ? d.getProduct().getName() : "Sản phẩm";
-                        String qty = String.valueOf(d.getQuantity() != null ? d.getQuantity() : 0);
-                        String unit = formatMoneyNoCurrency(d.getPriceAtSale());
-                        java.math.BigDecimal totalVal = (d.getPriceAtSale() != null ? d.getPriceAtSale() : java.math.BigDecimal.ZERO)
-                                .multiply(new java.math.BigDecimal(d.getQuantity() != null ? d.getQuantity() : 0));
-                        String total = formatMoneyNoCurrency(totalVal);
-                        y = drawProductRowWithBorders(cs, y, tableLeft, tableRight, col1Center, col2Center, col3Center, col4Center,
-                                col1Right, col2Left, col2Right, col3Left, col3Right, col4Left,
-                                name, qty, unit, total, mono != null ? mono : PDType1Font.COURIER, fontSize, col1Right - col1Center - tablePadding);
-                        y -= 4;
-                    }
-                }
+        DateTimeFormatter fmt = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
+        String staffName = sale.getUser() != null ? sale.getUser().getFullName() : "-";
+        List<String> info = new ArrayList<>();
+        info.add("NV: " + staffName);
+        info.add("Ngày: " + formatDate(sale.getSaleDate(), fmt));
+        info.add("Mã HĐ: " + sale.getId());
+        if (sale.getMember() != null) info.add("Khách: " + sale.getMember().getFullName());
+
+        return ReceiptDTO.builder()
+                .title("PHIẾU THANH TOÁN")
+                .infoLines(info)
+                .items(itemsOf(sale))
+                .totalAmount(sale.getTotalAmount())
+                .transactionId(transactionRepository.findBySale_Id(saleId).map(Transaction::getId).orElse(null))
+                .build();
+    }
 
-                // === DÒNG TỔNG TIỀN RIÊNG BIỆT ===
-                y -= 16;
-                float totalSize = 12f;
-                if (font == null) cs.setFont(PDType1Font.HELVETICA_BOLD, totalSize); else cs.setFont(font, totalSize);
-                String totalBottom = "TỔNG CỘNG: " + formatMoneyNoCurrency(tx.getAmount()) + "₫";
-                float totalBottomX = tableRight - textWidth((font != null ? font : PDType1Font.HELVETICA_BOLD), totalSize, totalBottom);
-                cs.beginText();
-                cs.newLineAtOffset(totalBottomX, y);
-                cs.showText(text(font, totalBottom));
-                cs.endText();
+    private List<ReceiptDTO.Item> itemsOf(Sale sale) {
+        List<ReceiptDTO.Item> items = new ArrayList<>();
+        if (sale.getSaleDetails() != null) {
+            for (var d : sale.getSaleDetails()) {
+                int quantity = d.getQuantity() != null ? d.getQuantity() : 0;
+                java.math.BigDecimal totalVal = (d.getPriceAtSale() != null ? d.getPriceAtSale() : java.math.BigDecimal.ZERO)
+                        .multiply(new java.math.BigDecimal(quantity));
+                items.add(ReceiptDTO.Item.builder()
+                        .name(d.getProduct() != null ? d.getProduct().getName() : "Sản phẩm")
+                        .quantity(quantity)
+                        .unitPrice(d.getPriceAtSale())
+                        .amount(totalVal)
+                        .build());
             }
-
-            doc.save(baos);
         }
-        return baos.toByteArray();
+        return items;
     }
 
-    public byte[] generateSaleReceipt(Long saleId) throws IOException {
-        Sale sale = saleRepository.findById(saleId)
-                .orElseThrow(() -> new IllegalArgumentException("Không tìm thấy hóa đơn: " + saleId));
-
+    /**
+     * Dựng PDF từ nội dung đã nạp sẵn, không truy cập DB
+     */
+    public byte[] renderPdf(ReceiptDTO receipt) throws IOException {
         // Tính số dòng sản phẩm (có thể có nhiều dòng nếu tên dài)
-        int itemCount = sale.getSaleDetails() != null ? sale.getSaleDetails().size() : 0;
+        int itemCount = receipt.getItems().size();
         int estimatedRows = itemCount * 2; // Ước tính mỗi item có thể chiếm 2 dòng nếu tên dài
         
         float width = 400f; // Tăng width để có không gian cho padding
@@ -170,9 +165,8 @@ public class ReceiptService {
             doc.addPage(page);
 
             try (PDPageContentStream cs = new PDPageContentStream(doc, page)) {
-                PDType0Font font = loadUnicodeFont(doc);
+                PDType0Font font = receiptFontProvider.load(doc);
                 PDType0Font mono = font;
-                if (mono == null) mono = loadSpecificFont(doc, "C:/Windows/Fonts/cour.ttf");
 
                 // Padding 16px = 12pt (1px ≈ 0.75pt)
                 float padding = 12f;
@@ -195,13 +189,10 @@ public class ReceiptService {
                 if (font == null) cs.setFont(PDType1Font.HELVETICA, bodySize); else cs.setFont(font, bodySize);
                 float y = height - padding - 50;
                 
-                y = writeLine(cs, (int)padding, (int)y, text(font, "PHIẾU THANH TOÁN"));
-                DateTimeFormatter fmt = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
-                String staffName = sale.getUser() != null ? sale.getUser().getFullName() : "-";
-                y = writeLine(cs, (int)padding, (int)y, text(font, "NV: " + staffName));
-                y = writeLine(cs, (int)padding, (int)y, text(font, "Ngày: " + formatDate(sale.getSaleDate(), fmt)));
-                y = writeLine(cs, (int)padding, (int)y, text(font, "Mã HĐ: " + sale.getId()));
-                if (sale.getMember() != null) y = writeLine(cs, (int)padding, (int)y, text(font, "Khách: " + sale.getMember().getFullName()));
+                y = writeLine(cs, (int)padding, (int)y, text(font, receipt.getTitle()));
+                for (String line : receipt.getInfoLines()) {
+                    y = writeLine(cs, (int)padding, (int)y, text(font, line));
+                }
 
                 // Đường kẻ ngăn cách
                 y -= 12;
@@ -240,26 +231,22 @@ public class ReceiptService {
                 y -= rowHeight;
 
                 // Dòng sản phẩm
-                if (sale.getSaleDetails() != null) {
-                    for (var d : sale.getSaleDetails()) {
-                        String name = d.getProduct() != null ? d.getProduct().getName() : "Sản phẩm";
-                        String qty = String.valueOf(d.getQuantity() != null ? d.getQuantity() : 0);
-                        String unit = formatMoneyNoCurrency(d.getPriceAtSale());
-                        java.math.BigDecimal totalVal = (d.getPriceAtSale() != null ? d.getPriceAtSale() : java.math.BigDecimal.ZERO)
-                                .multiply(new java.math.BigDecimal(d.getQuantity() != null ? d.getQuantity() : 0));
-                        String total = formatMoneyNoCurrency(totalVal);
-                        y = drawProductRowWithBorders(cs, y, tableLeft, tableRight, col1Center, col2Center, col3Center, col4Center,
-                                col1Right, col2Left, col2Right, col3Left, col3Right, col4Left,
-                                name, qty, unit, total, mono != null ? mono : PDType1Font.COURIER, fontSize, col1Right - col1Center - tablePadding);
-                        y -= 4;
-                    }
+                for (ReceiptDTO.Item item : receipt.getItems()) {
+                    String name = item.getName();
+                    String qty = String.valueOf(item.getQuantity());
+                    String unit = formatMoneyNoCurrency(item.getUnitPrice());
+                    String total = formatMoneyNoCurrency(item.getAmount());
+                    y = drawProductRowWithBorders(cs, y, tableLeft, tableRight, col1Center, col2Center, col3Center, col4Center,
+                            col1Right, col2Left, col2Right, col3Left, col3Right, col4Left,
+                            name, qty, unit, total, mono != null ? mono : PDType1Font.COURIER, fontSize, col1Right - col1Center - tablePadding);
+                    y -= 4;
                 }
 
                 // === DÒNG TỔNG TIỀN RIÊNG BIỆT ===
                 y -= 16;
                 float totalSize = 12f;
                 if (font == null) cs.setFont(PDType1Font.HELVETICA_BOLD, totalSize); else cs.setFont(font, totalSize);
-                String totalBottom = "TỔNG CỘNG: " + formatMoneyNoCurrency(sale.getTotalAmount()) + "₫";
+                String totalBottom = "TỔNG CỘNG: " + formatMoneyNoCurrency(receipt.getTotalAmount()) + "₫";
                 float totalBottomX = tableRight - textWidth((font != null ? font : PDType1Font.HELVETICA_BOLD), totalSize, totalBottom);
                 cs.beginText();
                 cs.newLineAtOffset(totalBottomX, y);
@@ -308,13 +295,13 @@ public class ReceiptService {
         return nf.format(amount != null ? amount : java.math.BigDecimal.ZERO) + " VNĐ";
     }
 
-    private String formatMoneyNoCurrency(BigDecimal amount) {
+    static String formatMoneyNoCurrency(BigDecimal amount) {
         java.text.NumberFormat nf = java.text.NumberFormat.getInstance(new java.util.Locale("vi", "VN"));
         nf.setMaximumFractionDigits(0);
         return nf.format(amount != null ? amount : java.math.BigDecimal.ZERO);
     }
 
-    private String sanitize(String input) {
+    static String sanitize(String input) {
         String n = Normalizer.normalize(input, Normalizer.Form.NFD);
         n = n.replaceAll("\\p{InCombiningDiacriticalMarks}+", "");
         n = n.replace('Đ', 'D').replace('đ', 'd');
@@ -326,31 +313,6 @@ public class ReceiptService {
         return dt.atZoneSameInstant(java.time.ZoneId.of("Asia/Ho_Chi_Minh")).format(fmt);
     }
 
-    private PDType0Font loadUnicodeFont(PDDocument doc) {
-        String[] candidates = {
-                "C:/Windows/Fonts/arial.ttf",
-                "C:/Windows/Fonts/tahoma.ttf",
-                "C:/Windows/Fonts/segoeui.ttf"
-        };
-        for (String path : candidates) {
-            try {
-                java.io.File f = new java.io.File(path);
-                if (f.exists()) {
-                    return PDType0Font.load(doc, f);
-                }
-            } catch (IOException ignored) { }
-        }
-        return null;
-    }
-
-    private PDType0Font loadSpecificFont(PDDocument doc, String path) {
-        try {
-            java.io.File f = new java.io.File(path);
-            if (f.exists()) return PDType0Font.load(doc, f);
-        } catch (IOException ignored) {}
-        return null;
-    }
-
     private String text(PDType0Font unicode, String s) {
         return unicode != null ? s : sanitize(s);
     }
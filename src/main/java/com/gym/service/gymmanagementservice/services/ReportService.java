@@ -1,50 +1,170 @@
 package com.gym.service.gymmanagementservice.services;
 
 import com.gym.service.gymmanagementservice.dtos.TransactionReportDTO;
-import com.gym.service.gymmanagementservice.models.Transaction;
+import com.gym.service.gymmanagementservice.dtos.TransactionReportFilterDTO;
+import com.gym.service.gymmanagementservice.dtos.TransactionReportPageDTO;
+import com.gym.service.gymmanagementservice.models.TransactionKind;
+import com.gym.service.gymmanagementservice.models.TransactionStatus;
 import com.gym.service.gymmanagementservice.repositories.TransactionRepository;
 import lombok.RequiredArgsConstructor;
-import org.springframework.data.domain.Sort; // <-- IMPORT MỚI
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.util.List;
-import java.util.stream.Collectors;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.*;
 
 @Service
 @RequiredArgsConstructor
 public class ReportService {
 
+    public static final int MAX_PAGE_SIZE = 200;
+    static final ZoneId ZONE = ZoneId.of("Asia/Ho_Chi_Minh");
+    // Khoảng ngày không giới hạn: dùng cận cố định để truy vấn luôn là 1 khoảng trên index
+    static final OffsetDateTime MIN_DATE = OffsetDateTime.of(1970, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+    static final OffsetDateTime MAX_DATE = OffsetDateTime.of(9999, 12, 31, 0, 0, 0, 0, ZoneOffset.UTC);
+
     private final TransactionRepository transactionRepository;
 
     /**
-     * Lấy tất cả các giao dịch (để đơn giản)
-     * (Thực tế nên lọc theo ngày và phân trang)
+     * 1 trang báo cáo giao dịch, mới nhất trước. Bộ lọc chạy trong DB, phân trang theo keyset (transaction_date, id)
+     * nên trang sau không phải bỏ qua các dòng của trang trước.
+     * @param cursor Con trỏ trả về ở trang trước (null = trang đầu)
+     * @param includeTotals Có tính tổng hợp của toàn bộ tập đã lọc hay không (1 truy vấn gom nhóm)
      */
-    @Transactional(readOnly = true) // Chỉ đọc
-    public List<TransactionReportDTO> getFullTransactionReport() {
+    @Transactional(readOnly = true)
+    public TransactionReportPageDTO getTransactionReport(TransactionReportFilterDTO filter, String cursor, int limit, boolean includeTotals) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        OffsetDateTime start = filter.getStart() != null ? filter.getStart() : MIN_DATE;
+        OffsetDateTime end = filter.getEnd() != null ? filter.getEnd() : MAX_DATE;
+        List<String> kinds = kindsOf(filter.getKinds());
+        String status = filter.getStatus() != null ? filter.getStatus().name() : null;
+        String method = filter.getPaymentMethod() != null ? filter.getPaymentMethod().name() : null;
+        String link = linkOf(filter);
 
-        // Lấy tất cả, sắp xếp theo ngày mới nhất
-        List<Transaction> transactions = transactionRepository.findAll(
-                Sort.by(Sort.Direction.DESC, "transactionDate")
-        );
+        // Trang đầu: (ngày, id) < (end, 0) tương đương ngày < end
+        OffsetDateTime beforeDate = end;
+        long beforeId = 0;
+        if (cursor != null && !cursor.isBlank()) {
+            Cursor decoded = Cursor.decode(cursor);
+            if (decoded.date.isBefore(end)) {
+                beforeDate = decoded.date;
+                beforeId = decoded.id;
+            }
+        }
 
-        return transactions.stream()
-                .map(TransactionReportDTO::fromTransaction)
-                .collect(Collectors.toList());
+        List<Object[]> rows = transactionRepository.findReportPage(start, beforeDate, beforeId, kinds,
+                status, method, filter.getStaffId(), link, pageSize + 1);
+        TransactionReportPageDTO page = toPage(rows, pageSize);
+        if (includeTotals) {
+            page.setTotals(summarize(transactionRepository.summarizeReport(ZONE.getId(), start, end, kinds,
+                    status, method, filter.getStaffId(), link)));
+        }
+        return page;
     }
 
+    /**
+     * Lịch sử giao dịch của 1 hội viên (gói tập + hoá đơn bán lẻ), mới nhất trước, phân trang theo keyset.
+     * Tên gói / danh sách sản phẩm được JOIN sẵn trong cùng truy vấn.
+     * @param cursor Con trỏ trả về ở trang trước (null = trang đầu)
+     */
     @Transactional(readOnly = true)
-    public List<TransactionReportDTO> getMemberTimeline(Long memberId) {
-        List<Transaction> transactions = transactionRepository.findAll(
-                Sort.by(Sort.Direction.DESC, "transactionDate")
-        );
-        return transactions.stream()
-                .filter(tx ->
-                        (tx.getMemberPackage() != null && tx.getMemberPackage().getMember() != null && tx.getMemberPackage().getMember().getId().equals(memberId))
-                                || (tx.getSale() != null && tx.getSale().getMember() != null && tx.getSale().getMember().getId().equals(memberId))
-                )
-                .map(TransactionReportDTO::fromTransaction)
-                .collect(Collectors.toList());
+    public TransactionReportPageDTO getMemberTimeline(Long memberId, String cursor, int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        OffsetDateTime beforeDate = MAX_DATE;
+        long beforeId = 0;
+        if (cursor != null && !cursor.isBlank()) {
+            Cursor decoded = Cursor.decode(cursor);
+            beforeDate = decoded.date;
+            beforeId = decoded.id;
+        }
+        return toPage(transactionRepository.findMemberTimelinePage(memberId, beforeDate, beforeId, pageSize + 1), pageSize);
+    }
+
+    // Dòng thứ pageSize + 1 (nếu có) chỉ để biết còn trang sau
+    private static TransactionReportPageDTO toPage(List<Object[]> rows, int pageSize) {
+        List<TransactionReportDTO> items = new ArrayList<>(Math.min(rows.size(), pageSize));
+        for (int i = 0; i < rows.size() && i < pageSize; i++) {
+            items.add(TransactionReportDTO.fromReportRow(rows.get(i)));
+        }
+        String nextCursor = null;
+        if (rows.size() > pageSize) {
+            TransactionReportDTO last = items.get(items.size() - 1);
+            nextCursor = new Cursor(last.getTransactionDate(), last.getId()).encode();
+        }
+        return TransactionReportPageDTO.builder()
+                .items(items)
+                .nextCursor(nextCursor)
+                .build();
+    }
+
+    private static TransactionReportPageDTO.Totals summarize(List<Object[]> rows) {
+        long count = 0;
+        BigDecimal completedAmount = BigDecimal.ZERO;
+        BigDecimal refundedAmount = BigDecimal.ZERO;
+        Map<String, Long> countByStatus = new LinkedHashMap<>();
+        Map<String, BigDecimal> byMethod = new LinkedHashMap<>();
+        Map<String, BigDecimal> byDay = new LinkedHashMap<>();
+        for (Object[] row : rows) {
+            String day = row[0].toString();
+            String status = (String) row[1];
+            String method = (String) row[2];
+            long rowCount = ((Number) row[3]).longValue();
+            BigDecimal amount = (BigDecimal) row[4];
+            count += rowCount;
+            countByStatus.merge(status, rowCount, Long::sum);
+            if (TransactionStatus.COMPLETED.name().equals(status)) {
+                completedAmount = completedAmount.add(amount);
+                refundedAmount = refundedAmount.add((BigDecimal) row[5]);
+                byMethod.merge(method, amount, BigDecimal::add);
+                byDay.merge(day, amount, BigDecimal::add);
+            }
+        }
+        return TransactionReportPageDTO.Totals.builder()
+                .count(count)
+                .countByStatus(countByStatus)
+                .completedAmount(completedAmount)
+                .refundedAmount(refundedAmount)
+                .completedAmountByPaymentMethod(byMethod)
+                .completedAmountByDay(byDay)
+                .build();
+    }
+
+    static String linkOf(TransactionReportFilterDTO filter) {
+        return filter.getLink() != null ? filter.getLink().name() : null;
+    }
+
+    static List<String> kindsOf(Set<TransactionKind> kinds) {
+        Collection<TransactionKind> selected = kinds == null || kinds.isEmpty() ? EnumSet.allOf(TransactionKind.class) : kinds;
+        List<String> names = new ArrayList<>(selected.size());
+        for (TransactionKind kind : selected) {
+            names.add(kind.name());
+        }
+        return names;
+    }
+
+    /**
+     * Con trỏ trang: (ngày giao dịch, id) của dòng cuối trang trước, mã hoá base64url
+     */
+    private record Cursor(OffsetDateTime date, long id) {
+
+        String encode() {
+            String raw = date.toInstant() + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Cursor decode(String value) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8);
+                int sep = raw.indexOf('|');
+                return new Cursor(Instant.parse(raw.substring(0, sep)).atOffset(ZoneOffset.UTC), Long.parseLong(raw.substring(sep + 1)));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Con trỏ trang không hợp lệ.", e);
+            }
+        }
     }
 }
@@ -0,0 +1,181 @@
+package com.gym.service.gymmanagementservice.services;
+
+import com.gym.service.gymmanagementservice.models.Sale;
+import com.gym.service.gymmanagementservice.models.SaleDetail;
+import com.gym.service.gymmanagementservice.models.SaleStatus;
+import com.gym.service.gymmanagementservice.models.Transaction;
+import com.gym.service.gymmanagementservice.models.TransactionStatus;
+import com.gym.service.gymmanagementservice.repositories.DailyProductSalesRollupRepository;
+import com.gym.service.gymmanagementservice.repositories.DailyRevenueRollupRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Duy trì các bảng tổng hợp doanh thu theo ngày (ngày × loại giao dịch × hình thức thanh toán)
+ * và bán hàng theo ngày (ngày × sản phẩm) để thống kê không phải quét lại toàn bộ giao dịch.
+ * Số liệu được cộng dồn ngay trong transaction ghi giao dịch/hóa đơn, và được đối chiếu hằng đêm:
+ * ngày nào lệch với dữ liệu gốc (xoá hội viên, sửa tay DB...) sẽ được dựng lại từ đầu.
+ * Đồng thời chuyển sự kiện hoàn tất sang bộ đếm thời gian thực của dashboard và xoá kết quả thống kê đã cache bị ảnh hưởng.
+ */
+@Service
+@Slf4j
+public class RevenueRollupService {
+
+    private final DailyRevenueRollupRepository revenueRollupRepository;
+    private final DailyProductSalesRollupRepository productRollupRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final LiveMetricsStore liveMetricsStore;
+    private final AnalyticsCache analyticsCache;
+    private final int rebuildChunkDays;
+    private final Counter rebuiltDaysCounter;
+
+    // Múi giờ của phòng gym (dùng để cắt ngày)
+    private final ZoneId gymTimeZone = ZoneId.of("Asia/Ho_Chi_Minh");
+
+    public RevenueRollupService(DailyRevenueRollupRepository revenueRollupRepository,
+                                DailyProductSalesRollupRepository productRollupRepository,
+                                TransactionTemplate transactionTemplate,
+                                LiveMetricsStore liveMetricsStore,
+                                AnalyticsCache analyticsCache,
+                                MeterRegistry meterRegistry,
+                                @Value("${analytics.rollup.rebuild-chunk-days:31}") int rebuildChunkDays) {
+        this.revenueRollupRepository = revenueRollupRepository;
+        this.productRollupRepository = productRollupRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.liveMetricsStore = liveMetricsStore;
+        this.analyticsCache = analyticsCache;
+        this.rebuildChunkDays = Math.max(1, rebuildChunkDays);
+        this.rebuiltDaysCounter = meterRegistry.counter("analytics.rollup.rebuilt_days");
+    }
+
+    /**
+     * Cộng giao dịch vừa hoàn tất (kể cả REFUND mang số âm) vào bảng tổng hợp.
+     * Gọi sau khi giao dịch đã ở trạng thái COMPLETED, trong cùng transaction ghi giao dịch.
+     */
+    @Transactional
+    public void recordTransaction(Transaction transaction) {
+        if (transaction.getStatus() != TransactionStatus.COMPLETED) {
+            return;
+        }
+        revenueRollupRepository.addDelta(dayOf(transaction.getTransactionDate()),
+                transaction.getKind().name(), transaction.getPaymentMethod().name(), 1, transaction.getAmount());
+        liveMetricsStore.recordRevenue(transaction.getKind(), transaction.getAmount(), transaction.getTransactionDate());
+        analyticsCache.invalidate(AnalyticsCache.Source.TRANSACTIONS, transaction.getTransactionDate());
+    }
+
+    /**
+     * Cộng các dòng của hóa đơn vừa chuyển sang PAID vào bảng tổng hợp theo sản phẩm
+     */
+    @Transactional
+    public void recordSale(Sale sale) {
+        if (sale.getStatus() != SaleStatus.PAID) {
+            return;
+        }
+        // Gộp các dòng cùng sản phẩm trước để mỗi sản phẩm chỉ cần 1 câu upsert
+        Map<Long, long[]> quantityByProduct = new LinkedHashMap<>();
+        Map<Long, BigDecimal> revenueByProduct = new LinkedHashMap<>();
+        for (SaleDetail detail : sale.getSaleDetails()) {
+            Long productId = detail.getProduct().getId();
+            quantityByProduct.computeIfAbsent(productId, k -> new long[1])[0] += detail.getQuantity();
+            revenueByProduct.merge(productId, detail.getPriceAtSale().multiply(BigDecimal.valueOf(detail.getQuantity())), BigDecimal::add);
+        }
+        LocalDate day = dayOf(sale.getSaleDate());
+        for (Map.Entry<Long, long[]> e : quantityByProduct.entrySet()) {
+            productRollupRepository.addDelta(day, e.getKey(), e.getValue()[0], revenueByProduct.get(e.getKey()));
+        }
+        liveMetricsStore.recordSale(sale.getSaleDate());
+        analyticsCache.invalidate(AnalyticsCache.Source.SALES, sale.getSaleDate());
+    }
+
+    /**
+     * Đối chiếu 2 bảng tổng hợp với dữ liệu gốc và dựng lại các ngày bị lệch
+     * @return Số ngày đã dựng lại
+     */
+    public int reconcile() {
+        return reconcile(true, true);
+    }
+
+    /**
+     * Dựng lần đầu các bảng tổng hợp còn trống (lần khởi động đầu tiên sau khi triển khai), bỏ qua bảng đã có dữ liệu
+     * @return Số ngày đã dựng lại
+     */
+    public int backfillIfEmpty() {
+        boolean revenueEmpty = revenueRollupRepository.count() == 0;
+        boolean productsEmpty = productRollupRepository.count() == 0;
+        if (!revenueEmpty && !productsEmpty) {
+            return 0;
+        }
+        return reconcile(revenueEmpty, productsEmpty);
+    }
+
+    private int reconcile(boolean revenue, boolean products) {
+        List<LocalDate> revenueDays = revenue
+                ? toLocalDates(revenueRollupRepository.findDriftedDays(gymTimeZone.getId()))
+                : List.of();
+        int rebuilt = rebuildInChunks(revenueDays, day -> {
+            revenueRollupRepository.deleteByDay(day);
+            revenueRollupRepository.insertDayFromTransactions(day, startOfDay(day), startOfDay(day.plusDays(1)));
+        }, revenueRollupRepository::lockForRebuild);
+
+        List<LocalDate> productDays = products
+                ? toLocalDates(productRollupRepository.findDriftedDays(gymTimeZone.getId()))
+                : List.of();
+        rebuilt += rebuildInChunks(productDays, day -> {
+            productRollupRepository.deleteByDay(day);
+            productRollupRepository.insertDayFromSales(day, startOfDay(day), startOfDay(day.plusDays(1)));
+        }, productRollupRepository::lockForRebuild);
+
+        if (!revenueDays.isEmpty()) {
+            analyticsCache.invalidateAll(AnalyticsCache.Source.TRANSACTIONS);
+        }
+        if (!productDays.isEmpty()) {
+            analyticsCache.invalidateAll(AnalyticsCache.Source.SALES);
+        }
+        if (rebuilt > 0) {
+            rebuiltDaysCounter.increment(rebuilt);
+            log.info("Đã dựng lại bảng tổng hợp doanh thu: {} ngày doanh thu, {} ngày bán hàng bị lệch",
+                    revenueDays.size(), productDays.size());
+        }
+        return rebuilt;
+    }
+
+    // Mỗi lô ngày dựng lại trong 1 transaction riêng, giữ khoá bảng tổng hợp trong thời gian ngắn.
+    // Giao dịch ghi đồng thời sẽ chờ khoá rồi cộng dồn lên số liệu vừa dựng nên không bị mất hay cộng trùng.
+    private int rebuildInChunks(List<LocalDate> days, Consumer<LocalDate> rebuildDay, Runnable lock) {
+        for (int from = 0; from < days.size(); from += rebuildChunkDays) {
+            List<LocalDate> chunk = days.subList(from, Math.min(days.size(), from + rebuildChunkDays));
+            transactionTemplate.executeWithoutResult(status -> {
+                lock.run();
+                chunk.forEach(rebuildDay);
+            });
+        }
+        return days.size();
+    }
+
+    private static List<LocalDate> toLocalDates(List<java.sql.Date> dates) {
+        return dates.stream().map(java.sql.Date::toLocalDate).collect(Collectors.toList());
+    }
+
+    public LocalDate dayOf(OffsetDateTime time) {
+        return time.atZoneSameInstant(gymTimeZone).toLocalDate();
+    }
+
+    public OffsetDateTime startOfDay(LocalDate day) {
+        return day.atStartOfDay(gymTimeZone).toOffsetDateTime();
+    }
+}
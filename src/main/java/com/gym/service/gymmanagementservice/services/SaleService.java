@@ -22,6 +22,7 @@ public class SaleService {
     private final AuthenticationService authenticationService;
     private final TransactionRepository transactionRepository;
     private final PromotionService promotionService;
+    private final RevenueRollupService revenueRollupService;
 
     /**
      * MỚI: Hàm private để xử lý logic trừ tồn kho.
@@ -122,6 +123,10 @@ public class SaleService {
                 .build();
         transactionRepository.save(transaction);
 
+        // 4. Cộng vào bảng tổng hợp doanh thu/bán hàng theo ngày
+        revenueRollupService.recordTransaction(transaction);
+        revenueRollupService.recordSale(savedSale);
+
         return savedSale;
     }
 
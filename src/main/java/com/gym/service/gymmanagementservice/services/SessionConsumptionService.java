@@ -0,0 +1,33 @@
+package com.gym.service.gymmanagementservice.services;
+
+import com.gym.service.gymmanagementservice.models.MemberPackage;
+import com.gym.service.gymmanagementservice.repositories.MemberPackageRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.OptionalInt;
+
+/**
+ * Điểm duy nhất để trừ buổi/lượt của gói PER_VISIT và PT_SESSION.
+ * Dùng UPDATE có điều kiện nên 2 lần quét đồng thời không thể cùng trừ lượt cuối cùng.
+ */
+@Service
+@RequiredArgsConstructor
+public class SessionConsumptionService {
+
+    private final MemberPackageRepository memberPackageRepository;
+
+    /**
+     * Trừ 1 buổi/lượt của gói. Entity truyền vào KHÔNG được cập nhật (remainingSessions/status vẫn là giá trị cũ),
+     * người gọi dùng giá trị trả về để hiển thị.
+     * @return Số buổi còn lại sau khi trừ, rỗng nếu gói không còn ACTIVE hoặc đã hết buổi
+     */
+    @Transactional
+    public OptionalInt consume(MemberPackage memberPackage) {
+        // Không gán lại vào entity: entity bị "bẩn" sẽ sinh thêm 1 lệnh UPDATE toàn bộ hàng khi flush
+        return memberPackageRepository.consumeSession(memberPackage.getId())
+                .map(OptionalInt::of)
+                .orElse(OptionalInt.empty());
+    }
+}
@@ -0,0 +1,64 @@
+package com.gym.service.gymmanagementservice.services;
+
+import com.gym.service.gymmanagementservice.repositories.CheckInLogRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+
+/**
+ * Đóng các ca check-in bị bỏ quên (hội viên không check-out) sau một thời lượng tối đa.
+ * Mỗi lô là 1 câu UPDATE trong transaction riêng, giờ ra và thời lượng ca được tính ngay trong SQL,
+ * nên job không nạp entity nào và không giữ khoá lâu trên bảng check_in_logs.
+ */
+@Service
+@Slf4j
+public class StaleSessionSweepService {
+
+    private final CheckInLogRepository checkInLogRepository;
+    private final OccupancyTracker occupancyTracker;
+    private final Duration maxDuration;
+    private final int chunkSize;
+    private final Counter closedCounter;
+
+    public StaleSessionSweepService(CheckInLogRepository checkInLogRepository,
+                                    OccupancyTracker occupancyTracker,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${checkin.stale-session.max-hours:12}") long maxHours,
+                                    @Value("${checkin.stale-session.chunk-size:500}") int chunkSize) {
+        this.checkInLogRepository = checkInLogRepository;
+        this.occupancyTracker = occupancyTracker;
+        this.maxDuration = Duration.ofHours(maxHours);
+        this.chunkSize = chunkSize;
+        this.closedCounter = meterRegistry.counter("checkin.stale_sessions.closed");
+    }
+
+    /**
+     * @return Số ca đã được đóng tự động
+     */
+    public int closeStaleSessions() {
+        OffsetDateTime cutoff = OffsetDateTime.now().minus(maxDuration);
+        long maxSeconds = maxDuration.getSeconds();
+        int total = 0;
+        int closed;
+        do {
+            closed = checkInLogRepository.closeStaleSessions(cutoff, maxSeconds, chunkSize);
+            total += closed;
+        } while (closed == chunkSize);
+
+        if (total > 0) {
+            closedCounter.increment(total);
+            // Số người đang tập đã giảm: đồng bộ lại bộ đếm trong bộ nhớ
+            occupancyTracker.rebuild();
+        }
+        return total;
+    }
+
+    public Duration getMaxDuration() {
+        return maxDuration;
+    }
+}
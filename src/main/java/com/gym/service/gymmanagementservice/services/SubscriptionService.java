@@ -6,13 +6,23 @@ import com.gym.service.gymmanagementservice.dtos.SubscriptionResponseDTO;
 import com.gym.service.gymmanagementservice.models.*;
 import com.gym.service.gymmanagementservice.repositories.*;
 import jakarta.persistence.EntityNotFoundException;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.JoinType;
+import jakarta.persistence.criteria.Predicate;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
@@ -26,6 +36,10 @@ public class SubscriptionService {
     private final TransactionRepository transactionRepository;
     private final UserRepository userRepository;
     private final PromotionService promotionService;
+    private final RevenueRollupService revenueRollupService;
+
+    public static final int SEARCH_MAX_PAGE_SIZE = 200;
+    private static final Set<String> SEARCH_SORTABLE = Set.of("startDate", "endDate", "id");
 
     /**
      * Tính giá chỉ áp dụng Promotion/Voucher từ database:
@@ -239,6 +253,8 @@ public class SubscriptionService {
 
         transactionRepository.save(transaction);
 
+        revenueRollupService.recordTransaction(transaction);
+
         return SubscriptionResponseDTO.fromMemberPackage(savedSubscription);
     }
 
@@ -252,21 +268,85 @@ public class SubscriptionService {
                 .collect(Collectors.toList());
     }
 
-    public List<SubscriptionResponseDTO> searchSubscriptions(Long memberId,
+    /**
+     * Tìm kiếm/lọc đăng ký gói tập, phân trang và sắp xếp trong DB (1 truy vấn trang + 1 truy vấn đếm).
+     * Hội viên, gói tập và PT được JOIN FETCH sẵn trong truy vấn trang.
+     * Chỉ cho sắp xếp theo startDate / endDate / id (các cột có index); mặc định startDate giảm dần.
+     */
+    @Transactional(readOnly = true)
+    public Page<SubscriptionResponseDTO> searchSubscriptions(Long memberId,
                                                              String status,
                                                              String packageType,
                                                              OffsetDateTime startFrom,
                                                              OffsetDateTime endTo,
-                                                             Long assignedPtId) {
-        return memberPackageRepository.findAll().stream()
-                .filter(mp -> memberId == null || (mp.getMember() != null && mp.getMember().getId().equals(memberId)))
-                .filter(mp -> status == null || mp.getStatus().name().equalsIgnoreCase(status))
-                .filter(mp -> packageType == null || (mp.getGymPackage() != null && mp.getGymPackage().getPackageType().name().equalsIgnoreCase(packageType)))
-                .filter(mp -> startFrom == null || (mp.getStartDate() != null && !mp.getStartDate().isBefore(startFrom)))
-                .filter(mp -> endTo == null || (mp.getEndDate() != null && !mp.getEndDate().isAfter(endTo)))
-                .filter(mp -> assignedPtId == null || (mp.getAssignedPt() != null && mp.getAssignedPt().getId().equals(assignedPtId)))
-                .map(SubscriptionResponseDTO::fromMemberPackage)
-                .collect(Collectors.toList());
+                                                             Long assignedPtId,
+                                                             Pageable pageable) {
+        Pageable page = searchPage(pageable);
+        SubscriptionStatus statusFilter = null;
+        PackageType typeFilter = null;
+        try {
+            if (status != null && !status.isBlank()) statusFilter = SubscriptionStatus.valueOf(status.trim().toUpperCase());
+            if (packageType != null && !packageType.isBlank()) typeFilter = PackageType.valueOf(packageType.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            // Giá trị lọc không tồn tại: không có kết quả nào khớp
+            return Page.empty(page);
+        }
+        return memberPackageRepository.findAll(searchSpec(memberId, statusFilter, typeFilter, startFrom, endTo, assignedPtId), page)
+                .map(SubscriptionResponseDTO::fromMemberPackage);
+    }
+
+    private static Pageable searchPage(Pageable pageable) {
+        int size = Math.max(1, Math.min(pageable.getPageSize(), SEARCH_MAX_PAGE_SIZE));
+        Sort.Order order = pageable.getSort().stream()
+                .filter(o -> SEARCH_SORTABLE.contains(o.getProperty()))
+                .findFirst()
+                .orElse(Sort.Order.desc("startDate"));
+        Sort sort = "id".equals(order.getProperty())
+                ? Sort.by(order)
+                : Sort.by(order, new Sort.Order(order.getDirection(), "id"));
+        return PageRequest.of(pageable.getPageNumber(), size, sort);
+    }
+
+    private static Specification<MemberPackage> searchSpec(Long memberId,
+                                                           SubscriptionStatus status,
+                                                           PackageType packageType,
+                                                           OffsetDateTime startFrom,
+                                                           OffsetDateTime endTo,
+                                                           Long assignedPtId) {
+        return (root, query, cb) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            Join<MemberPackage, GymPackage> gymPackage = null;
+            boolean countQuery = Long.class == query.getResultType() || long.class == query.getResultType();
+            if (!countQuery) {
+                // Truy vấn trang: lấy luôn hội viên, gói tập, PT (tránh N+1 khi dựng DTO).
+                // User.memberProfile là phía mappedBy của OneToOne nên luôn bị nạp, JOIN luôn để khỏi thêm 1 truy vấn mỗi PT
+                root.fetch("member");
+                gymPackage = (Join<MemberPackage, GymPackage>) root.<MemberPackage, GymPackage>fetch("gymPackage");
+                root.fetch("assignedPt", JoinType.LEFT).fetch("memberProfile", JoinType.LEFT);
+            }
+            if (memberId != null) {
+                predicates.add(cb.equal(root.get("member").get("id"), memberId));
+            }
+            if (status != null) {
+                predicates.add(cb.equal(root.get("status"), status));
+            }
+            if (packageType != null) {
+                if (gymPackage == null) {
+                    gymPackage = root.join("gymPackage");
+                }
+                predicates.add(cb.equal(gymPackage.get("packageType"), packageType));
+            }
+            if (startFrom != null) {
+                predicates.add(cb.greaterThanOrEqualTo(root.get("startDate"), startFrom));
+            }
+            if (endTo != null) {
+                predicates.add(cb.lessThanOrEqualTo(root.get("endDate"), endTo));
+            }
+            if (assignedPtId != null) {
+                predicates.add(cb.equal(root.get("assignedPt").get("id"), assignedPtId));
+            }
+            return cb.and(predicates.toArray(new Predicate[0]));
+        };
     }
 
     // Gia hạn gói tập
@@ -345,6 +425,7 @@ public class SubscriptionService {
                         .sale(null)
                         .build();
                 transactionRepository.save(tx);
+                revenueRollupService.recordTransaction(tx);
 
                 return SubscriptionResponseDTO.fromMemberPackage(savedSubscription);
             }
@@ -440,6 +521,7 @@ public class SubscriptionService {
                 .sale(null)
                 .build();
         transactionRepository.save(tx2);
+        revenueRollupService.recordTransaction(tx2);
 
         return SubscriptionResponseDTO.fromMemberPackage(savedSubscription);
     }
@@ -583,6 +665,7 @@ public class SubscriptionService {
                 .sale(null)
                 .build();
         transactionRepository.save(tx);
+        revenueRollupService.recordTransaction(tx);
         
         System.out.println("Refund transaction saved successfully");
 
@@ -778,6 +861,7 @@ public class SubscriptionService {
                 .sale(null)
                 .build();
         transactionRepository.save(tx);
+        revenueRollupService.recordTransaction(tx);
 
         return SubscriptionResponseDTO.fromMemberPackage(upgraded);
     }
@@ -0,0 +1,30 @@
+package com.gym.service.gymmanagementservice.tasks;
+
+import com.gym.service.gymmanagementservice.services.OfflineCheckInService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class OfflineScanCleanupTask {
+
+    private final OfflineCheckInService offlineCheckInService;
+
+    /**
+     * Mỗi giờ xoá các lần quét offline đã xử lý cũ hơn hạn gửi bù (checkin.offline.max-age-hours)
+     */
+    @Scheduled(fixedDelay = 3600000)
+    public void purgeExpiredScans() {
+        try {
+            int deleted = offlineCheckInService.purgeExpiredScans();
+            if (deleted > 0) {
+                log.info("Đã xoá {} lần quét offline quá hạn gửi bù", deleted);
+            }
+        } catch (Exception e) {
+            log.error("Lỗi khi chạy scheduled task xoá lần quét offline quá hạn", e);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.gym.service.gymmanagementservice.tasks;
+
+import com.gym.service.gymmanagementservice.services.RevenueRollupService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class RevenueRollupReconcileTask {
+
+    private final RevenueRollupService rollupService;
+
+    // Lần dựng lúc khởi động và lần đối chiếu hằng đêm không chạy chồng lên nhau
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    /**
+     * Khi khởi động chỉ dựng lần đầu các bảng tổng hợp còn trống, trên luồng nền để không chặn ApplicationReadyEvent.
+     * Các lần triển khai sau (bảng đã có dữ liệu) không chạy gì, độ lệch để lần đối chiếu hằng đêm xử lý.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillOnStartup() {
+        Thread thread = new Thread(() -> runExclusively("dựng lần đầu", rollupService::backfillIfEmpty), "revenue-rollup-backfill");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Đối chiếu bảng tổng hợp doanh thu với dữ liệu gốc mỗi đêm.
+     * Mặc định chạy lúc 02:30 giờ phòng gym, có thể đổi qua analytics.rollup.reconcile-cron.
+     */
+    @Scheduled(cron = "${analytics.rollup.reconcile-cron:0 30 2 * * *}", zone = "Asia/Ho_Chi_Minh")
+    public void reconcile() {
+        runExclusively("đối chiếu", rollupService::reconcile);
+    }
+
+    private void runExclusively(String name, java.util.function.IntSupplier job) {
+        if (!running.compareAndSet(false, true)) {
+            log.info("Bỏ qua {} bảng tổng hợp doanh thu vì lần trước vẫn đang chạy", name);
+            return;
+        }
+        try {
+            int rebuiltDays = job.getAsInt();
+            log.debug("{} bảng tổng hợp doanh thu xong, {} ngày được dựng lại", name, rebuiltDays);
+        } catch (Exception e) {
+            log.error("Lỗi khi {} bảng tổng hợp doanh thu", name, e);
+        } finally {
+            running.set(false);
+        }
+    }
+}
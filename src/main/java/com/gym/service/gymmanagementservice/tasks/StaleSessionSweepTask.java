@@ -0,0 +1,31 @@
+package com.gym.service.gymmanagementservice.tasks;
+
+import com.gym.service.gymmanagementservice.services.StaleSessionSweepService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class StaleSessionSweepTask {
+
+    private final StaleSessionSweepService sweepService;
+
+    /**
+     * Định kỳ đóng các ca check-in mở lâu hơn checkin.stale-session.max-hours.
+     * Uses fixedDelay: runs checkin.stale-session.sweep-ms after the previous run completes.
+     */
+    @Scheduled(fixedDelayString = "${checkin.stale-session.sweep-ms:900000}")
+    public void closeStaleSessions() {
+        try {
+            int closedCount = sweepService.closeStaleSessions();
+            if (closedCount > 0) {
+                log.info("Đã tự động đóng {} ca check-in mở quá {} giờ", closedCount, sweepService.getMaxDuration().toHours());
+            }
+        } catch (Exception e) {
+            log.error("Lỗi khi chạy scheduled task đóng ca check-in bị bỏ quên", e);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.gym.service.gymmanagementservice.utils;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Chuyển giá trị cột từ kết quả native query (Object[]) sang kiểu Java
+ */
+public final class NativeQueryUtil {
+
+    private NativeQueryUtil() {}
+
+    /**
+     * Cột timestamptz: tuỳ phiên bản driver/Hibernate trả về OffsetDateTime, Instant hoặc Timestamp
+     */
+    public static OffsetDateTime toOffsetDateTime(Object value) {
+        if (value instanceof OffsetDateTime odt) {
+            return odt;
+        }
+        if (value instanceof Instant instant) {
+            return instant.atOffset(ZoneOffset.UTC);
+        }
+        return ((Timestamp) value).toInstant().atOffset(ZoneOffset.UTC);
+    }
+}
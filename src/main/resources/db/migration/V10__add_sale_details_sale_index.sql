@@ -0,0 +1,7 @@
+-- Migration: Index cho thống kê sản phẩm bán chạy
+-- Gom các dòng hóa đơn theo sale_id chỉ cần quét index (kèm sản phẩm, số lượng, giá bán)
+
+CREATE INDEX IF NOT EXISTS idx_sale_details_sale_id
+    ON sale_details (sale_id) INCLUDE (product_id, quantity, price_at_sale);
+
+SELECT 'Migration V10 completed: Đã thêm index cho thống kê sản phẩm bán chạy' AS status;
@@ -0,0 +1,7 @@
+-- Migration: Index cho thống kê check-in theo khoảng thời gian (bản đồ nhiệt, số lượt theo trạng thái)
+-- Kèm status để truy vấn gom nhóm chỉ cần quét index
+
+CREATE INDEX IF NOT EXISTS idx_check_in_logs_check_in_time
+    ON check_in_logs (check_in_time) INCLUDE (status);
+
+SELECT 'Migration V11 completed: Đã thêm index check_in_time cho check_in_logs' AS status;
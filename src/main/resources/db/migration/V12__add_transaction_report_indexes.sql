@@ -0,0 +1,10 @@
+-- Migration: Index cho báo cáo giao dịch (lọc theo khoảng ngày, phân trang keyset theo (transaction_date, id))
+-- Index thứ 2 phục vụ lọc theo nhân viên tạo giao dịch
+
+CREATE INDEX IF NOT EXISTS idx_transactions_date_id
+    ON transactions (transaction_date, id);
+
+CREATE INDEX IF NOT EXISTS idx_transactions_created_by_date_id
+    ON transactions (created_by_user_id, transaction_date, id);
+
+SELECT 'Migration V12 completed: Đã thêm index cho báo cáo giao dịch' AS status;
@@ -0,0 +1,14 @@
+-- Migration: Index cho lịch sử giao dịch của 1 hội viên
+-- Hội viên → gói tập / hoá đơn của hội viên → giao dịch (theo thứ tự transaction_date, id)
+-- transactions.sale_id đã có index unique
+
+CREATE INDEX IF NOT EXISTS idx_member_packages_member_id
+    ON member_packages (member_id);
+
+CREATE INDEX IF NOT EXISTS idx_sales_member_id
+    ON sales (member_id);
+
+CREATE INDEX IF NOT EXISTS idx_transactions_member_package_date_id
+    ON transactions (member_package_id, transaction_date, id);
+
+SELECT 'Migration V13 completed: Đã thêm index cho lịch sử giao dịch hội viên' AS status;
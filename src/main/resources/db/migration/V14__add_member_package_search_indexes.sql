@@ -0,0 +1,20 @@
+-- Migration: Index cho tìm kiếm đăng ký gói tập (lọc + phân trang, mặc định sắp xếp start_date giảm dần, id)
+-- Lọc theo hội viên dùng idx_member_packages_member_id (V13); lọc theo loại gói đi qua package_id
+
+CREATE INDEX IF NOT EXISTS idx_member_packages_start_date_id
+    ON member_packages (start_date DESC, id DESC);
+
+CREATE INDEX IF NOT EXISTS idx_member_packages_status_start_date_id
+    ON member_packages (status, start_date DESC, id DESC);
+
+CREATE INDEX IF NOT EXISTS idx_member_packages_package_start_date_id
+    ON member_packages (package_id, start_date DESC, id DESC);
+
+CREATE INDEX IF NOT EXISTS idx_member_packages_assigned_pt_start_date_id
+    ON member_packages (assigned_pt_id, start_date DESC, id DESC)
+    WHERE assigned_pt_id IS NOT NULL;
+
+CREATE INDEX IF NOT EXISTS idx_member_packages_end_date
+    ON member_packages (end_date);
+
+SELECT 'Migration V14 completed: Đã thêm index cho tìm kiếm đăng ký gói tập' AS status;
@@ -0,0 +1,20 @@
+-- Migration: Bảng lưu các lần quét offline đã xử lý để chống xử lý trùng khi cổng gửi lại lô
+-- Khoá (device_id, scan_id) do thiết bị sinh; dòng cũ hơn hạn gửi bù được xoá định kỳ theo scanned_at
+
+CREATE TABLE IF NOT EXISTS offline_scans (
+    id BIGSERIAL PRIMARY KEY,
+    device_id VARCHAR(100) NOT NULL,
+    scan_id VARCHAR(100) NOT NULL,
+    scanned_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    status VARCHAR(255) NOT NULL,
+    message VARCHAR(255),
+    member_full_name VARCHAR(255),
+    package_name VARCHAR(255),
+    package_end_date TIMESTAMP WITH TIME ZONE,
+    CONSTRAINT uk_offline_scans_device_scan UNIQUE (device_id, scan_id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_offline_scans_scanned_at
+    ON offline_scans (scanned_at);
+
+SELECT 'Migration V15 completed: Đã thêm bảng chống xử lý trùng lần quét offline' AS status;
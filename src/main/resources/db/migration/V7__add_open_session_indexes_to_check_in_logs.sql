@@ -0,0 +1,17 @@
+-- Migration: Partial index cho các ca check-in đang mở (log SUCCESS chưa check-out)
+-- Index chỉ chứa số ca đang mở (vài chục dòng) thay vì toàn bộ lịch sử check-in,
+-- dùng cho tra cứu ca đang mở theo hội viên/gói tập và cho job dọn ca bị bỏ quên.
+
+CREATE INDEX IF NOT EXISTS idx_check_in_logs_open
+    ON check_in_logs (check_in_time)
+    WHERE status = 'SUCCESS' AND check_out_time IS NULL;
+
+CREATE INDEX IF NOT EXISTS idx_check_in_logs_open_member
+    ON check_in_logs (member_id, check_in_time DESC)
+    WHERE status = 'SUCCESS' AND check_out_time IS NULL;
+
+CREATE INDEX IF NOT EXISTS idx_check_in_logs_open_member_package
+    ON check_in_logs (member_package_id, check_in_time DESC)
+    WHERE status = 'SUCCESS' AND check_out_time IS NULL;
+
+SELECT 'Migration V7 completed: Đã thêm partial index cho các ca check-in đang mở' AS status;
@@ -0,0 +1,8 @@
+-- Migration: Index cho thống kê doanh thu theo kỳ
+-- Chỉ chứa giao dịch COMPLETED, kèm kind và amount để truy vấn gom nhóm chỉ cần quét index
+
+CREATE INDEX IF NOT EXISTS idx_transactions_completed_date
+    ON transactions (transaction_date) INCLUDE (kind, amount)
+    WHERE status = 'COMPLETED';
+
+SELECT 'Migration V8 completed: Đã thêm index cho thống kê doanh thu' AS status;
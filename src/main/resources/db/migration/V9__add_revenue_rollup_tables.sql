@@ -0,0 +1,27 @@
+-- Migration: Bảng tổng hợp doanh thu và bán hàng theo ngày (giờ phòng gym)
+-- Được cộng dồn khi giao dịch hoàn tất / hóa đơn PAID và đối chiếu lại hằng đêm,
+-- bảng sẽ được dựng đầy đủ từ dữ liệu cũ ở lần đối chiếu đầu tiên sau khi khởi động
+
+CREATE TABLE IF NOT EXISTS daily_revenue_rollups (
+    id BIGSERIAL PRIMARY KEY,
+    day DATE NOT NULL,
+    kind VARCHAR(255) NOT NULL,
+    payment_method VARCHAR(255) NOT NULL,
+    tx_count BIGINT NOT NULL,
+    amount NUMERIC(14, 2) NOT NULL,
+    CONSTRAINT uk_daily_revenue_rollups_day_kind_method UNIQUE (day, kind, payment_method)
+);
+
+CREATE TABLE IF NOT EXISTS daily_product_sales_rollups (
+    id BIGSERIAL PRIMARY KEY,
+    day DATE NOT NULL,
+    product_id BIGINT NOT NULL,
+    quantity BIGINT NOT NULL,
+    revenue NUMERIC(14, 2) NOT NULL,
+    CONSTRAINT uk_daily_product_sales_rollups_day_product UNIQUE (day, product_id)
+);
+
+-- Index cho bước dựng lại bảng tổng hợp bán hàng (lọc hóa đơn PAID theo ngày bán)
+CREATE INDEX IF NOT EXISTS idx_sales_paid_sale_date ON sales (sale_date) WHERE status = 'PAID';
+
+SELECT 'Migration V9 completed: Đã thêm bảng tổng hợp doanh thu và bán hàng theo ngày' AS status;
@@ -0,0 +1,84 @@
+package com.gym.service.gymmanagementservice.services;
+
+import com.gym.service.gymmanagementservice.dtos.CheckInResponseDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CheckInDebouncerTest {
+
+    @Test
+    void concurrentScansRunActionOneAtATimeAndShareResult() throws Exception {
+        CheckInDebouncer debouncer = new CheckInDebouncer(new SimpleMeterRegistry(), 3000, 1000);
+        AtomicInteger calls = new AtomicInteger();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        // 2 lần quét đầu lỗi, lần thứ 3 thành công
+        Callable<CheckInResponseDTO> scan = () -> debouncer.debounce("M:1", () -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(50);
+                int call = calls.incrementAndGet();
+                if (call <= 2) {
+                    throw new IllegalStateException("lỗi lần " + call);
+                }
+                return CheckInResponseDTO.builder().message("ok").build();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            } finally {
+                running.decrementAndGet();
+            }
+        });
+
+        ExecutorService pool = Executors.newFixedThreadPool(10);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<CheckInResponseDTO>> futures = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    return scan.call();
+                }));
+            }
+            start.countDown();
+
+            List<CheckInResponseDTO> results = new ArrayList<>();
+            int failures = 0;
+            for (Future<CheckInResponseDTO> future : futures) {
+                try {
+                    results.add(future.get(10, TimeUnit.SECONDS));
+                } catch (ExecutionException e) {
+                    assertInstanceOf(IllegalStateException.class, e.getCause());
+                    failures++;
+                }
+            }
+
+            assertEquals(3, calls.get());
+            assertEquals(1, maxRunning.get());
+            // Chỉ 2 lần quét đầu bị lỗi nhận lỗi, mọi lần quét chờ nhận cùng 1 kết quả
+            assertEquals(2, failures);
+            assertEquals(8, results.size());
+            results.forEach(r -> assertSame(results.get(0), r));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void zeroWindowDisablesDebounce() {
+        CheckInDebouncer debouncer = new CheckInDebouncer(new SimpleMeterRegistry(), 0, 1000);
+        AtomicInteger calls = new AtomicInteger();
+
+        debouncer.debounce("M:1", () -> CheckInResponseDTO.builder().message("ok" + calls.incrementAndGet()).build());
+        debouncer.debounce("M:1", () -> CheckInResponseDTO.builder().message("ok" + calls.incrementAndGet()).build());
+
+        assertEquals(2, calls.get());
+    }
+}
@@ -0,0 +1,106 @@
+package com.gym.service.gymmanagementservice.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CheckInEventDispatcherTest {
+
+    private static final long EPOCH = 1_700_000_000_000L;
+
+    @Test
+    void replayReturnsEventsAfterLastIdInOrder() {
+        CheckInEventDispatcher.ReplayRing ring = new CheckInEventDispatcher.ReplayRing(4, EPOCH);
+        for (int i = 1; i <= 6; i++) {
+            ring.append("check-in", i);
+        }
+
+        List<CheckInEventDispatcher.Event> missed = ring.after(EPOCH + "-3");
+
+        assertNotNull(missed);
+        assertEquals(List.of(EPOCH + "-4", EPOCH + "-5", EPOCH + "-6"), missed.stream().map(e -> e.id).toList());
+        assertEquals(List.of(4, 5, 6), missed.stream().map(e -> e.data).toList());
+    }
+
+    @Test
+    void replayIsEmptyWhenUpToDate() {
+        CheckInEventDispatcher.ReplayRing ring = new CheckInEventDispatcher.ReplayRing(4, EPOCH);
+        ring.append("check-in", 1);
+        ring.append("check-in", 2);
+
+        assertEquals(List.of(), ring.after(EPOCH + "-2"));
+    }
+
+    @Test
+    void replayCoversWholeRing() {
+        CheckInEventDispatcher.ReplayRing ring = new CheckInEventDispatcher.ReplayRing(4, EPOCH);
+        for (int i = 1; i <= 6; i++) {
+            ring.append("check-in", i);
+        }
+
+        List<CheckInEventDispatcher.Event> missed = ring.after(EPOCH + "-2");
+
+        assertNotNull(missed);
+        assertEquals(List.of(EPOCH + "-3", EPOCH + "-4", EPOCH + "-5", EPOCH + "-6"), missed.stream().map(e -> e.id).toList());
+    }
+
+    @Test
+    void replayReportsGapWhenEventsWereOverwritten() {
+        CheckInEventDispatcher.ReplayRing ring = new CheckInEventDispatcher.ReplayRing(4, EPOCH);
+        for (int i = 1; i <= 6; i++) {
+            ring.append("check-in", i);
+        }
+
+        assertNull(ring.after(EPOCH + "-1"));
+    }
+
+    @Test
+    void replayReportsGapWhenLastIdIsAheadOfRing() {
+        CheckInEventDispatcher.ReplayRing ring = new CheckInEventDispatcher.ReplayRing(4, EPOCH);
+        ring.append("check-in", 1);
+
+        assertNull(ring.after(EPOCH + "-500"));
+    }
+
+    @Test
+    void replayReportsGapWhenLastIdIsFromBeforeRestart() {
+        // ID cũ nhỏ hơn số thứ tự hiện tại vẫn phải bị từ chối vì khác epoch
+        CheckInEventDispatcher.ReplayRing ring = new CheckInEventDispatcher.ReplayRing(4, EPOCH);
+        for (int i = 1; i <= 6; i++) {
+            ring.append("check-in", i);
+        }
+
+        assertNull(ring.after((EPOCH - 60_000) + "-4"));
+        assertNull(ring.after("4"));
+        assertNull(ring.after("abc-4"));
+    }
+
+    @Test
+    void rejectsQueueSmallerThanReplay() {
+        assertThrows(IllegalStateException.class,
+                () -> new CheckInEventDispatcher(new SimpleMeterRegistry(), 200, 100, 1));
+        assertThrows(IllegalStateException.class,
+                () -> new CheckInEventDispatcher(new SimpleMeterRegistry(), 200, 200, 1));
+    }
+
+    @Test
+    void reconnectFromOtherBootIsNotRegistered() {
+        CheckInEventDispatcher dispatcher = new CheckInEventDispatcher(new SimpleMeterRegistry(), 4, 5, 1);
+        try {
+            for (int i = 1; i <= 10; i++) {
+                dispatcher.publish("check-in", i);
+            }
+
+            dispatcher.subscribe("0-8");
+            assertEquals(0, dispatcher.getSubscriberCount());
+
+            dispatcher.subscribe(null);
+            assertEquals(1, dispatcher.getSubscriberCount());
+        } finally {
+            dispatcher.shutdown();
+        }
+    }
+}